@@ -0,0 +1,409 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.message;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Generates the typed message classes in the types package from
+ * msg_definitions.xml. It runs in the generate-sources phase of the maven
+ * build (see pom.xml), so the classes are never checked in:
+ *
+ * <pre>
+ * java org.openhab.binding.smartenitzbplm.internal.message.MsgTypesGenerator msg_definitions.xml target/generated-sources/msgtypes
+ * </pre>
+ *
+ * It only needs the JDK, so that it can be compiled and run before the
+ * binding itself. The xml is read the same way as by XMLMessageReader.
+ *
+ * @author jpowers
+ */
+public class MsgTypesGenerator {
+	static final String PACKAGE = "org.openhab.binding.smartenitzbplm.internal.message.types";
+
+	private static final String USER_DATA = "userData";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			throw new IllegalArgumentException("usage: MsgTypesGenerator <msg_definitions.xml> <source root>");
+		}
+		File dir = packageDir(new File(args[1]));
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("cannot create " + dir);
+		}
+		for (File f : dir.listFiles()) {
+			if (f.getName().endsWith(".java")) {
+				Files.delete(f.toPath());
+			}
+		}
+		TreeMap<String, String> sources = generateAll(readTemplates(new File(args[0])));
+		for (String name : sources.keySet()) {
+			Files.write(new File(dir, name + ".java").toPath(), sources.get(name).getBytes(StandardCharsets.UTF_8));
+		}
+		System.out.println("generated " + sources.size() + " message types in " + dir);
+	}
+
+	static File packageDir(File sourceRoot) {
+		return new File(sourceRoot, PACKAGE.replace('.', File.separatorChar));
+	}
+
+	/**
+	 * A message as defined in the xml
+	 */
+	static class Template {
+		final String name;
+		final boolean toModem;
+		int length;
+		int headerLength;
+		byte command;
+		final List<FieldDef> fields = new ArrayList<FieldDef>();
+
+		Template(String name, boolean toModem) {
+			this.name = name;
+			this.toModem = toModem;
+		}
+	}
+
+	/**
+	 * A named field of a message
+	 */
+	static class FieldDef {
+		final String name;
+		final boolean address;
+		final int offset;
+
+		FieldDef(String name, boolean address, int offset) {
+			this.name = name;
+			this.address = address;
+			this.offset = offset;
+		}
+	}
+
+	/**
+	 * Reads the message templates from the xml
+	 *
+	 * @param xml msg_definitions.xml
+	 * @return the templates, in the order of the file
+	 * @throws IOException if the file cannot be read or is malformed
+	 */
+	static List<Template> readTemplates(File xml) throws IOException {
+		Document doc;
+		try {
+			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(xml);
+		} catch (SAXException | ParserConfigurationException e) {
+			throw new IOException("cannot parse " + xml, e);
+		}
+		doc.getDocumentElement().normalize();
+		List<Template> templates = new ArrayList<Template>();
+		for (Element msg : children(doc.getDocumentElement())) {
+			if (msg.getNodeName().equals("msg")) {
+				templates.add(readTemplate(msg));
+			}
+		}
+		return templates;
+	}
+
+	private static Template readTemplate(Element msg) throws IOException {
+		String name = msg.getAttribute("name");
+		Template t = new Template(name, "TO_MODEM".equals(msg.getAttribute("direction")));
+		int offset = 0;
+		for (Element e : children(msg)) {
+			if (e.getNodeName().equals("header")) {
+				t.headerLength = Integer.parseInt(e.getAttribute("length"));
+				for (Element f : children(e)) {
+					if (offset == 1) {
+						t.command = (byte) Integer.decode(f.getTextContent().trim()).intValue();
+					}
+					offset = readField(t, f, offset);
+				}
+				if (offset != t.headerLength) {
+					throw new IOException(name + ": header is " + offset + " bytes, not " + t.headerLength);
+				}
+			} else {
+				offset = readField(t, e, offset);
+			}
+		}
+		t.length = msg.hasAttribute("length") ? Integer.parseInt(msg.getAttribute("length")) : offset;
+		if (offset != t.length) {
+			throw new IOException(name + ": message is " + offset + " bytes, not " + t.length);
+		}
+		return t;
+	}
+
+	private static int readField(Template t, Element f, int offset) throws IOException {
+		int size;
+		switch (f.getTagName()) {
+			case "byte":
+				size = 1;
+				break;
+			case "address":
+				size = 3;
+				break;
+			default:
+				throw new IOException(t.name + ": unsupported field type " + f.getTagName());
+		}
+		String name = f.getAttribute("name");
+		if (!name.isEmpty()) {
+			t.fields.add(new FieldDef(name, size == 3, offset));
+		}
+		return offset + size;
+	}
+
+	private static List<Element> children(Node parent) {
+		List<Element> elements = new ArrayList<Element>();
+		NodeList nodes = parent.getChildNodes();
+		for (int i = 0; i < nodes.getLength(); i++) {
+			if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+				elements.add((Element) nodes.item(i));
+			}
+		}
+		return elements;
+	}
+
+	/**
+	 * @param templates the message templates
+	 * @return the source of every message type, by class name
+	 */
+	static TreeMap<String, String> generateAll(List<Template> templates) {
+		TreeMap<String, String> sources = new TreeMap<String, String>();
+		for (Template template : templates) {
+			sources.put(template.name, generate(template));
+		}
+		return sources;
+	}
+
+	/**
+	 * Generates the source of the typed message class of a template
+	 *
+	 * @param template the message template
+	 * @return java source
+	 */
+	static String generate(Template template) {
+		String cls = template.name;
+		List<FieldDef> fields = template.fields;
+		Set<String> seen = new HashSet<String>();
+		List<FieldDef> accessors = new ArrayList<FieldDef>();
+		int userData = 0;
+		for (FieldDef f : fields) {
+			if (f.offset == 1) {
+				continue; // the command byte, see CMD
+			}
+			String id = identifier(f.name);
+			if (!seen.add(id)) {
+				throw new IllegalStateException(cls + ": fields clash on name " + id);
+			}
+			if (f.name.equals(USER_DATA + (userData + 1))) {
+				userData++;
+			} else {
+				accessors.add(f);
+			}
+		}
+		boolean hasAddress = false;
+		for (FieldDef f : fields) {
+			hasAddress |= f.address;
+		}
+
+		StringBuilder b = new StringBuilder();
+		b.append("/**\n");
+		b.append(" * Copyright (c) 2010-2020 Contributors to the openHAB project\n");
+		b.append(" *\n");
+		b.append(" * See the NOTICE file(s) distributed with this work for additional\n");
+		b.append(" * information.\n");
+		b.append(" *\n");
+		b.append(" * This program and the accompanying materials are made available under the\n");
+		b.append(" * terms of the Eclipse Public License 2.0 which is available at\n");
+		b.append(" * http://www.eclipse.org/legal/epl-2.0\n");
+		b.append(" *\n");
+		b.append(" * SPDX-License-Identifier: EPL-2.0\n");
+		b.append(" */\n");
+		b.append("package ").append(PACKAGE).append(";\n\n");
+		b.append("import java.io.IOException;\n\n");
+		if (hasAddress) {
+			b.append("import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;\n");
+		}
+		b.append("import org.openhab.binding.smartenitzbplm.internal.message.Msg;\n\n");
+		b.append("/**\n");
+		b.append(" * Typed access to the ").append(cls).append(" message (").append(hex(template.command))
+				.append(", ").append(template.length).append(" bytes, ")
+				.append(template.toModem ? "to" : "from").append(" modem).\n");
+		b.append(" *\n");
+		b.append(" * Generated from msg_definitions.xml by MsgTypesGenerator, do not edit.\n");
+		b.append(" *\n");
+		b.append(" * @author jpowers\n");
+		b.append(" */\n");
+		b.append("public final class ").append(cls).append(" {\n");
+		b.append("    public static final String NAME = \"").append(cls).append("\";\n");
+		b.append("    public static final byte CMD = (byte) ").append(hex(template.command)).append(";\n");
+		b.append("    public static final int LENGTH = ").append(template.length).append(";\n");
+		b.append("    public static final int HEADER_LENGTH = ").append(template.headerLength).append(";\n");
+		if (!fields.isEmpty()) {
+			b.append("\n");
+		}
+		for (FieldDef f : fields) {
+			if (f.offset == 1) {
+				continue;
+			}
+			b.append("    public static final int ").append(constant(identifier(f.name))).append(" = ")
+					.append(f.offset).append(";\n");
+		}
+		if (userData > 0) {
+			b.append("    public static final int USER_DATA_COUNT = ").append(userData).append(";\n");
+		}
+		b.append("\n");
+		b.append("    private final Msg msg;\n\n");
+		b.append("    private ").append(cls).append("(Msg msg) {\n");
+		b.append("        this.msg = msg;\n");
+		b.append("    }\n\n");
+		b.append("    /**\n");
+		b.append("     * @param msg the message\n");
+		b.append("     * @return true if the message is a ").append(cls).append("\n");
+		b.append("     */\n");
+		b.append("    public static boolean matches(Msg msg) {\n");
+		b.append("        return msg.getCommandNumber() == CMD && msg.getLength() == LENGTH;\n");
+		b.append("    }\n\n");
+		b.append("    /**\n");
+		b.append("     * @param msg the message\n");
+		b.append("     * @return typed view of the message\n");
+		b.append("     * @throws IllegalArgumentException if the message is not a ").append(cls).append("\n");
+		b.append("     */\n");
+		b.append("    public static ").append(cls).append(" of(Msg msg) {\n");
+		b.append("        if (!matches(msg)) {\n");
+		b.append("            throw new IllegalArgumentException(\"not a \" + NAME + \": \" + msg);\n");
+		b.append("        }\n");
+		b.append("        return new ").append(cls).append("(msg);\n");
+		b.append("    }\n\n");
+		b.append("    /**\n");
+		b.append("     * @return a new message, filled in from the template\n");
+		b.append("     * @throws IOException if the template is missing\n");
+		b.append("     */\n");
+		b.append("    public static ").append(cls).append(" create() throws IOException {\n");
+		b.append("        return new ").append(cls).append("(Msg.makeMessage(NAME));\n");
+		b.append("    }\n\n");
+		b.append("    public Msg msg() {\n");
+		b.append("        return msg;\n");
+		b.append("    }\n");
+		for (FieldDef f : accessors) {
+			String id = identifier(f.name);
+			String off = constant(id);
+			if (f.address) {
+				b.append("\n");
+				b.append("    public DeviceAddress ").append(id).append("() {\n");
+				b.append("        return msg.getAddressAt(").append(off).append(");\n");
+				b.append("    }\n\n");
+				b.append("    public ").append(cls).append(" ").append(id).append("(DeviceAddress value) {\n");
+				b.append("        msg.setAddressAt(").append(off).append(", value);\n");
+				b.append("        return this;\n");
+				b.append("    }\n");
+			} else {
+				b.append("\n");
+				b.append("    public byte ").append(id).append("() {\n");
+				b.append("        return msg.getByteAt(").append(off).append(");\n");
+				b.append("    }\n\n");
+				b.append("    public ").append(cls).append(" ").append(id).append("(byte value) {\n");
+				b.append("        msg.setByteAt(").append(off).append(", value);\n");
+				b.append("        return this;\n");
+				b.append("    }\n");
+			}
+		}
+		if (userData > 0) {
+			b.append("\n");
+			b.append("    /**\n");
+			b.append("     * @param n number of the user data byte, 1 to USER_DATA_COUNT\n");
+			b.append("     * @return the user data byte\n");
+			b.append("     */\n");
+			b.append("    public byte userData(int n) {\n");
+			b.append("        return msg.getByteAt(userDataOffset(n));\n");
+			b.append("    }\n\n");
+			b.append("    /**\n");
+			b.append("     * @param n number of the user data byte, 1 to USER_DATA_COUNT\n");
+			b.append("     * @param value the byte to put\n");
+			b.append("     * @return this message\n");
+			b.append("     */\n");
+			b.append("    public ").append(cls).append(" userData(int n, byte value) {\n");
+			b.append("        msg.setByteAt(userDataOffset(n), value);\n");
+			b.append("        return this;\n");
+			b.append("    }\n\n");
+			b.append("    private static int userDataOffset(int n) {\n");
+			b.append("        if (n < 1 || n > USER_DATA_COUNT) {\n");
+			b.append("            throw new IndexOutOfBoundsException(\"no user data byte \" + n);\n");
+			b.append("        }\n");
+			b.append("        return USER_DATA1 + n - 1;\n");
+			b.append("    }\n");
+		}
+		b.append("}\n");
+		return b.toString();
+	}
+
+	/**
+	 * Turns a field name from the xml into a java identifier, e.g. "IMAddress"
+	 * into "imAddress" and "ACK/NACK" into "ackNack"
+	 */
+	static String identifier(String name) {
+		StringBuilder b = new StringBuilder();
+		for (String part : name.split("[^A-Za-z0-9]+")) {
+			if (part.isEmpty()) {
+				continue;
+			}
+			if (b.length() > 0) {
+				b.append(Character.toUpperCase(part.charAt(0))).append(part.substring(1).toLowerCase());
+				continue;
+			}
+			int upper = 0;
+			while (upper < part.length() && Character.isUpperCase(part.charAt(upper))) {
+				upper++;
+			}
+			if (upper > 1 && upper < part.length() && Character.isLowerCase(part.charAt(upper))) {
+				upper--; // keep the first letter of the next word
+			}
+			b.append(part.substring(0, Math.max(upper, 1)).toLowerCase()).append(part.substring(Math.max(upper, 1)));
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Turns an identifier into a constant name, e.g. "allLinkGroup" into
+	 * "ALL_LINK_GROUP"
+	 */
+	static String constant(String identifier) {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < identifier.length(); i++) {
+			char c = identifier.charAt(i);
+			if (i > 0 && Character.isUpperCase(c) && !Character.isUpperCase(identifier.charAt(i - 1))) {
+				b.append('_');
+			}
+			b.append(Character.toUpperCase(c));
+		}
+		return b.toString();
+	}
+
+	private static String hex(byte b) {
+		return String.format("0x%02x", b & 0xff);
+	}
+}
@@ -10,9 +10,10 @@ import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
 import org.openhab.binding.smartenitzbplm.internal.device.InsteonDevice;
 import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.ModemDBEntry;
 import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.ZBPLMHandler;
-import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
+import org.openhab.binding.smartenitzbplm.internal.message.Fields;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgListener;
+import org.openhab.binding.smartenitzbplm.internal.message.types.X10Received;
 import org.openhab.binding.smartenitzbplm.internal.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,12 +94,11 @@ public class PortListener implements MsgListener {
     }
 
     private void handleInsteonMessage(Msg msg, ZBPLMHandler handler) {
-        DeviceAddress toAddr = msg.getAddr("toAddress");
         if (!msg.isBroadcast()) {
             // not for one of our modems, do not process
             return;
         }
-        DeviceAddress fromAddr = msg.getAddr("fromAddress");
+        DeviceAddress fromAddr = msg.getAddr(Fields.FROM_ADDRESS);
         if (fromAddr == null) {
             logger.debug("invalid fromAddress, ignoring msg {}", msg);
             return;
@@ -107,22 +107,22 @@ public class PortListener implements MsgListener {
     }
 
     private void handleX10Message(Msg msg, ZBPLMHandler handler) {
-        try {
-            int x10Flag = msg.getByte("X10Flag") & 0xff;
-            int rawX10 = msg.getByte("rawX10") & 0xff;
-            if (x10Flag == 0x80) { // actual command
-                if (x10HouseUnit != -1) {
-                    InsteonAddress fromAddr = new InsteonAddress((byte) x10HouseUnit);
-                    handleMessage(handler, fromAddr, msg);
-                }
-            } else if (x10Flag == 0) {
-                // what unit the next cmd will apply to
-                x10HouseUnit = rawX10 & 0xFF;
-            }
-        } catch (FieldException e) {
-            logger.error("got bad X10 message: {}", msg, e);
+        if (!X10Received.matches(msg)) {
+            logger.error("got bad X10 message: {}", msg);
             return;
         }
+        X10Received x10 = X10Received.of(msg);
+        int x10Flag = x10.x10Flag() & 0xff;
+        int rawX10 = x10.rawX10() & 0xff;
+        if (x10Flag == 0x80) { // actual command
+            if (x10HouseUnit != -1) {
+                InsteonAddress fromAddr = new InsteonAddress((byte) x10HouseUnit);
+                handleMessage(handler, fromAddr, msg);
+            }
+        } else if (x10Flag == 0) {
+            // what unit the next cmd will apply to
+            x10HouseUnit = rawX10 & 0xFF;
+        }
     }
 
     private void handleMessage(ZBPLMHandler handler, DeviceAddress fromAddr, Msg msg) {
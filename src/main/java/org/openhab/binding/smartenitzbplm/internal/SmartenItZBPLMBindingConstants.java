@@ -28,6 +28,9 @@ public class SmartenItZBPLMBindingConstants {
 	// threadpool names
 	public static final String SCHEDULED_POOL = "smartenitzbplm-scheduled-pool";
 	public static final String COMMAND_POOL = "smartenitzbplm-thinghandler-commands";
+	public static final String DISPATCH_POOL = "smartenitzbplm-message-dispatch";
+	// the most message listeners that run at once
+	public static final int DISPATCH_STRIPES = 8;
 	
     static final String BINDING_ID = "smartenitzbplm";
 
@@ -62,6 +65,32 @@ public class SmartenItZBPLMBindingConstants {
     public static final String MODEM_BYTES_SENT = "modem_bytes_sent";
     public static final String MODEM_BYTES_RECEIVED = "modem_bytes_received";
     public static final String MODEM_MSG_BUFFER_SIZE = "modem_msg_buffer_size";
+    public static final String MODEM_RX_READ_SIZE = "modem_rx_read_size";
+    public static final String MODEM_RX_BUFFER_REUSE = "modem_rx_buffer_reuse";
+    public static final String MODEM_RX_EVENT_RATE = "modem_rx_event_rate";
+    public static final String MODEM_DISCARDED_BYTES = "modem_discarded_bytes";
+    public static final String MODEM_RESYNC_EVENTS = "modem_resync_events";
+    public static final String MODEM_RESYNC_TIME = "modem_resync_time";
+    public static final String MODEM_CRC_ERRORS = "modem_crc_errors";
+    public static final String MODEM_ECHO_LATENCY = "modem_echo_latency";
+    public static final String MODEM_QUIET_TIME = "modem_quiet_time";
+    public static final String MODEM_COALESCED = "modem_coalesced";
+    public static final String MODEM_QUEUE_DEPTH = "modem_queue_depth";
+    public static final String MODEM_QUEUE_OLDEST = "modem_queue_oldest";
+    public static final String MODEM_QUEUE_DROPS = "modem_queue_drops";
+    public static final String MODEM_GROUP_BATCHED = "modem_group_batched";
+    public static final String MODEM_GROUP_FAILED = "modem_group_failed";
+    public static final String MODEM_RETRANSMITS = "modem_retransmits";
+    public static final String MODEM_RETRY_GIVEUPS = "modem_retry_giveups";
+    public static final String MODEM_OPEN_CIRCUITS = "modem_open_circuits";
+    public static final String MODEM_CIRCUIT_DROPS = "modem_circuit_drops";
+    public static final String MODEM_DEDUPLICATED = "modem_deduplicated";
+    public static final String MODEM_INBOUND_DROPS = "modem_inbound_drops";
+    // followed by the name of the lane, e.g. modem_lane_depth_poll
+    public static final String MODEM_LANE_DEPTH = "modem_lane_depth_";
+    public static final String MODEM_LANE_WAIT = "modem_lane_wait_";
+    // followed by the name of the stage, e.g. modem_stage_latency_route
+    public static final String MODEM_STAGE_LATENCY = "modem_stage_latency_";
     
     
     
@@ -83,6 +112,17 @@ public class SmartenItZBPLMBindingConstants {
     public static final String ZBPLM_PORT = "zbplm_port";
 	public static final String ZBPLM_BAUD = "zbplm_baud";
 	public static final String ZBPLM_FLOWCONTROL =  "zbplm_flowcontrol";
+	public static final String ZBPLM_HOST = "zbplm_host";
+	public static final String ZBPLM_TCP_PORT = "zbplm_tcp_port";
+	public static final String ZBPLM_CAPTURE_DIR = "zbplm_capture_dir";
+	public static final String ZBPLM_CRC_CHECK = "zbplm_crc_check";
+	public static final String ZBPLM_ADAPTIVE_PACING = "zbplm_adaptive_pacing";
+	public static final String ZBPLM_QUEUE_CAPACITY = "zbplm_queue_capacity";
+	public static final String ZBPLM_QUEUE_OVERFLOW = "zbplm_queue_overflow";
+	public static final String ZBPLM_GROUP_WINDOW = "zbplm_group_window";
+	public static final String ZBPLM_RETRANSMIT = "zbplm_retransmit";
+	public static final String ZBPLM_RETRY_BUDGET = "zbplm_retry_budget";
+	public static final String ZBPLM_WAIT_STRATEGY = "zbplm_wait_strategy";
 
 	
 	public static final String INSTEON_ADDRESS = "insteon_address";
@@ -92,53 +132,4 @@ public class SmartenItZBPLMBindingConstants {
     public static final Integer FLOWCONTROL_CONFIG_HARDWARE_CTSRTS = Integer.valueOf(1);
     public static final Integer FLOWCONTROL_CONFIG_SOFTWARE_XONXOFF = Integer.valueOf(2);
 
-
-    // Message Constants
-    public static final String SEND_STANDARD_MESSAGE = "SendStandardMessage";
-    public static final String SEND_EXTENDED_MESSAGE = "SendExtendedMessage";
-    public static final String STANDARD_MESSAGE_RECEIVED = "StandardMessageReceived";
-    public static final String EXTENDED_MESSAGE_RECIEVED = "ExtendedMessageReceived";
-    public static final String READ_DATA_2_RECIEVED = "ReadData2Received";
-    
-    public static final String START_ALL_LINKING = "StartALLLinking";
-    public static final String CANCEL_ALL_LINKING = "CancelALLLinking";
-    
-    public static final String GET_IM_INFO_REPLY = "GetIMInfoReply";
-	public static final String FIRMWARE_VERSION = "FirmwareVersion";
-	public static final String DEVICE_SUB_CATEGORY = "DeviceSubCategory";
-	public static final String DEVICE_CATEGORY = "DeviceCategory";
-	public static final String IM_ADDRESS = "IMAddress";
-	
-	public static final String TO_ADDRESS = "toAddress";
-	public static final String FROM_ADDRESS = "fromAddress";
-	
-	public static final String MESSAGE_FLAGS = "messageFlags";
-	public static final String RECORD_FLAGS = "recordFlags";
-	public static final String CONTROL_CODE = "controlCode";
-	
-	public static final String COMMAND_1 = "command1";
-	public static final String COMMAND_2 = "command2";
-	
-	public static final String USER_DATA_1 = "userData1";
-	public static final String USER_DATA_2 = "userData2";
-	public static final String USER_DATA_3 = "userData3";
-	public static final String USER_DATA_4 = "userData4";
-	public static final String USER_DATA_5 = "userData5";
-	public static final String USER_DATA_6 = "userData6";
-	public static final String USER_DATA_7 = "userData7";
-	public static final String USER_DATA_8 = "userData8";
-	public static final String USER_DATA_9 = "userData9";
-	public static final String USER_DATA_10 = "userData10";
-	public static final String USER_DATA_11 = "userData11";
-	public static final String USER_DATA_12 = "userData12";
-	public static final String USER_DATA_13 = "userData13";
-	public static final String USER_DATA_14 = "userData14";
-	
-	public static final String LINK_DATA_1 = "LinkData1";
-	public static final String LINK_DATA_2 = "LinkData2";
-	public static final String LINK_DATA_3 = "LinkData3";
-	
-	public static final String LINK_CODE = "LinkCode";
-	public static final String ALL_LINK_GROUP = "ALLLinkGroup";
-	
 }
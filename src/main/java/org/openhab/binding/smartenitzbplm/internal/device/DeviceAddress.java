@@ -6,4 +6,11 @@ public interface DeviceAddress {
 	public byte getHighByte();
 	public byte getMiddleByte();
 	public byte getLowByte();
+
+	/**
+	 * @return the three address bytes packed into an int, as 0xHHMMLL
+	 */
+	public default int toInt() {
+		return ((getHighByte() & 0xff) << 16) | ((getMiddleByte() & 0xff) << 8) | (getLowByte() & 0xff);
+	}
 }
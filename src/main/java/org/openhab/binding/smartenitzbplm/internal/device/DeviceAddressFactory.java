@@ -9,7 +9,7 @@ public class DeviceAddressFactory {
 		byte lowByte = 0;
 		if (X10.isValidAddress(address)) {
 			lowByte = X10.addressToByte(address);
-			return new X10Address(lowByte);
+			return X10Address.of(lowByte);
 		} else {
 			String[] parts = address.split("\\.");
 			if (parts.length != 3) {
@@ -18,20 +18,27 @@ public class DeviceAddressFactory {
 			highByte = (byte) Utils.fromHexString(parts[0]);
 			middleByte = (byte) Utils.fromHexString(parts[1]);
 			lowByte = (byte) Utils.fromHexString(parts[2]);
-			return new InsteonAddress(highByte, middleByte, lowByte);
+			return InsteonAddress.of(highByte, middleByte, lowByte);
 		}
 	}
 
 	public static DeviceAddress fromBytes(byte[] bytes, int offset) {
-		byte highByte = bytes[offset];
-		byte middleByte = bytes[offset + 1];
-		byte lowByte = bytes[offset + 2];
-		
-		if(highByte == 0x00 && lowByte == 0x00) {
-			return new X10Address(lowByte);
-		} else {
-			return new InsteonAddress(highByte, middleByte, lowByte);
-		}
+		return fromInt(((bytes[offset] & 0xff) << 16) | ((bytes[offset + 1] & 0xff) << 8) | (bytes[offset + 2] & 0xff));
+	}
+
+	/**
+	 * Finds the address for a packed int, without allocating. Address fields of
+	 * messages only ever hold Insteon addresses, X10 codes travel in the rawX10
+	 * field instead, so the result is always an InsteonAddress. Since
+	 * X10Address.toInt() packs the code as 0x0000LL, fromInt(x10.toInt()) does
+	 * not give back the X10 address; use X10Address.of(x10.getLowByte()) for
+	 * that.
+	 * 
+	 * @param address the address as 0xHHMMLL, see DeviceAddress.toInt()
+	 * @return the canonical address instance
+	 */
+	public static DeviceAddress fromInt(int address) {
+		return InsteonAddress.of(address);
 	}
 	
 	/**
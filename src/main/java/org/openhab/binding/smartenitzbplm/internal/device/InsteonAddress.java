@@ -17,25 +17,32 @@ import org.openhab.binding.smartenitzbplm.internal.utils.Utils;
 /**
  * This class wraps an Insteon Address 'xx.xx.xx'
  *
+ * The address is kept as a 24 bit packed int, which is also its hash code.
+ * Addresses created through of() (and through DeviceAddressFactory) are
+ * interned: the same address is always the same immutable instance, so
+ * decoding the address of a received message does not allocate.
+ *
  * @author Daniel Pfrommer
  * @since 1.5.0
  */
 
 public class InsteonAddress implements DeviceAddress {
-	private final byte highByte;
-	private final byte middleByte;
-	private final byte lowByte;
+	// a noisy line can produce lots of bogus addresses, so stop interning
+	// when there are more than this many
+	private static final int MAX_INTERNED = 4096;
+	private static final Object internLock = new Object();
+	// open addressing table, read without locking
+	private static volatile InsteonAddress[] interned = new InsteonAddress[64];
+	private static int internedCount = 0;
+
+	private final int packed;
 
 	public InsteonAddress(InsteonAddress a) {
-		highByte = a.highByte;
-		middleByte = a.middleByte;
-		lowByte = a.lowByte;
+		packed = a.packed;
 	}
 
 	public InsteonAddress(byte high, byte middle, byte low) {
-		highByte = high;
-		middleByte = middle;
-		lowByte = low;
+		packed = pack(high, middle, low);
 	}
 
 	/**
@@ -45,22 +52,103 @@ public class InsteonAddress implements DeviceAddress {
 	 * @param aX10HouseUnit the house & unit number as encoded by the X10 protocol
 	 */
 	public InsteonAddress(byte aX10HouseUnit) {
-		highByte = 0;
-		middleByte = 0;
-		lowByte = aX10HouseUnit;
+		packed = aX10HouseUnit & 0xff;
+	}
+
+	private InsteonAddress(int packed) {
+		this.packed = packed;
+	}
+
+	/**
+	 * Finds the canonical instance of an address
+	 * 
+	 * @param packed the address as 0xHHMMLL
+	 * @return the address
+	 */
+	public static InsteonAddress of(int packed) {
+		packed &= 0xffffff;
+		InsteonAddress[] table = interned;
+		int mask = table.length - 1;
+		for (int i = slot(packed, mask);; i = (i + 1) & mask) {
+			InsteonAddress a = table[i];
+			if (a == null) {
+				break;
+			}
+			if (a.packed == packed) {
+				return a;
+			}
+		}
+		return intern(packed);
+	}
+
+	public static InsteonAddress of(byte high, byte middle, byte low) {
+		return of(pack(high, middle, low));
+	}
+
+	private static InsteonAddress intern(int packed) {
+		synchronized (internLock) {
+			InsteonAddress[] table = interned;
+			int mask = table.length - 1;
+			int i = slot(packed, mask);
+			for (; table[i] != null; i = (i + 1) & mask) {
+				if (table[i].packed == packed) {
+					return table[i];
+				}
+			}
+			InsteonAddress a = new InsteonAddress(packed);
+			if (internedCount >= MAX_INTERNED) {
+				return a;
+			}
+			internedCount++;
+			if (internedCount * 2 > table.length) {
+				// keep the load low, and publish the bigger table in one go
+				InsteonAddress[] bigger = new InsteonAddress[table.length * 2];
+				int m = bigger.length - 1;
+				for (InsteonAddress e : table) {
+					if (e != null) {
+						int j = slot(e.packed, m);
+						while (bigger[j] != null) {
+							j = (j + 1) & m;
+						}
+						bigger[j] = e;
+					}
+				}
+				int j = slot(packed, m);
+				while (bigger[j] != null) {
+					j = (j + 1) & m;
+				}
+				bigger[j] = a;
+				interned = bigger;
+			} else {
+				table[i] = a;
+			}
+			return a;
+		}
+	}
+
+	private static int slot(int packed, int mask) {
+		return (packed * 0x9e3779b1 >>> 8) & mask;
+	}
+
+	private static int pack(byte high, byte middle, byte low) {
+		return ((high & 0xff) << 16) | ((middle & 0xff) << 8) | (low & 0xff);
 	}
 
-	
 	public byte getHighByte() {
-		return highByte;
+		return (byte) (packed >> 16);
 	}
 
 	public byte getMiddleByte() {
-		return middleByte;
+		return (byte) (packed >> 8);
 	}
 
 	public byte getLowByte() {
-		return lowByte;
+		return (byte) packed;
+	}
+
+	@Override
+	public int toInt() {
+		return packed;
 	}
 
 	public void storeBytes(byte[] bytes, int offset) {
@@ -71,18 +159,14 @@ public class InsteonAddress implements DeviceAddress {
 
 	@Override
 	public String toString() {
-		return Utils.getHexString(highByte) + "." + Utils.getHexString(middleByte) + "." + Utils.getHexString(lowByte);
+		return Utils.getHexString(getHighByte()) + "." + Utils.getHexString(getMiddleByte()) + "."
+				+ Utils.getHexString(getLowByte());
 
 	}
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + highByte;
-		result = prime * result + lowByte;
-		result = prime * result + middleByte;
-		return result;
+		return packed;
 	}
 
 	@Override
@@ -94,14 +178,8 @@ public class InsteonAddress implements DeviceAddress {
 		if (getClass() != obj.getClass())
 			return false;
 		InsteonAddress other = (InsteonAddress) obj;
-		if (highByte != other.highByte)
-			return false;
-		if (lowByte != other.lowByte)
-			return false;
-		if (middleByte != other.middleByte)
-			return false;
-		return true;
+		return packed == other.packed;
 	}
 
 
-}
\ No newline at end of file
+}
@@ -23,6 +23,8 @@ import org.eclipse.smarthome.core.thing.Bridge;
 import org.eclipse.smarthome.core.types.Command;
 import org.openhab.binding.smartenitzbplm.internal.SmartenItZBPLMConfiguration;
 import org.openhab.binding.smartenitzbplm.internal.device.DeviceType.FeatureGroup;
+import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.CircuitBreaker;
+import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.Port;
 import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.ZBPLMHandler;
 import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
@@ -290,6 +292,7 @@ public class InsteonDevice {
 						// mark it as processed
 						logger.trace("handled reply of direct: {}", f);
 						setFeatureQueried(null);
+						wakeRequestQueue();
 						break;
 					}
 				}
@@ -317,15 +320,19 @@ public class InsteonDevice {
 			if (requestQueue.isEmpty()) {
 				return 0L;
 			}
+			Port port = handler == null ? null : handler.getPort();
+			CircuitBreaker breaker = port == null ? null : port.getCircuitBreaker();
 			if (featureQueried != null) {
 				// A feature has been queried, but
 				// the response has not been digested yet.
 				// Must wait for the query to be processed.
 				long dt = timeNow - (lastQueryTime + featureQueried.getDirectAckTimeout());
-				if (dt < 0) {
-					logger.debug("still waiting for query reply from {} for another {} usec", address, -dt);
-					return (timeNow + 2000L); // retry soon
+				if (dt < 0 && (breaker == null || !breaker.isOpen(address.toInt()))) {
+					logger.debug("still waiting for query reply from {} for another {} msec", address, -dt);
+					// the reply wakes the queue up, otherwise check when the wait is over
+					return (timeNow - dt);
 				} else {
+					// the pacer has already told the breaker whether the device answered
 					logger.debug("gave up waiting for query reply from device {}", address);
 				}
 			}
@@ -387,6 +394,19 @@ public class InsteonDevice {
 		RequestQueueManager.s_instance().addQueue(this, now + delay);
 	}
 
+	/**
+	 * Processes the request queue right away, once the reply to the query it
+	 * waited for has come in
+	 */
+	private void wakeRequestQueue() {
+		synchronized (requestQueue) {
+			if (requestQueue.isEmpty()) {
+				return;
+			}
+		}
+		RequestQueueManager.s_instance().addQueue(this, System.currentTimeMillis());
+	}
+
 	private void writeMessage(Msg m) throws IOException {
 		// TODO: JWP Reimplement if needed
 		handler.getPort().writeMessage(m);
@@ -16,6 +16,7 @@ import java.util.HashMap;
 
 import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.ZBPLMHandler;
 import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
+import org.openhab.binding.smartenitzbplm.internal.message.Fields;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.openhab.binding.smartenitzbplm.internal.utils.Utils;
 import org.slf4j.Logger;
@@ -59,13 +60,13 @@ public abstract class MessageDispatcher {
             return false;
         }
         try {
-            DeviceAddress a = msg.getAddress("toAddress");
+            DeviceAddress a = msg.getAddress(Fields.TO_ADDRESS);
             // ALL_LINK_BROADCAST and ALL_LINK_CLEANUP
             // have a valid Command1 field
             // but the CLEANUP_SUCCESS (of type ALL_LINK_BROADCAST!)
             // message has cmd1 = 0x06 and the cmd as the
             // high byte of the toAddress.
-            byte cmd1 = msg.getByte("command1");
+            byte cmd1 = msg.getByte(Fields.COMMAND1);
             if (!msg.isCleanup() && cmd1 == 0x06) {
                 cmd1 = a.getHighByte();
             }
@@ -73,7 +74,7 @@ public abstract class MessageDispatcher {
             // in the low byte of the toAddress. For direct
             // ALL_LINK_CLEANUP, it is in Command2
 
-            int group = (msg.isCleanup() ? msg.getByte("command2") : a.getLowByte()) & 0xff;
+            int group = (msg.isCleanup() ? msg.getByte(Fields.COMMAND2) : a.getLowByte()) & 0xff;
             MessageHandler h = m_feature.getMsgHandlers().get(cmd1 & 0xFF);
             if (h == null) {
                 logger.debug("msg is not for this feature");
@@ -138,8 +139,8 @@ public abstract class MessageDispatcher {
             boolean isConsumed = false;
             int key = -1;
             try {
-                cmd = msg.getByte("Cmd");
-                cmd1 = msg.getByte("command1");
+                cmd = msg.getByte(Fields.CMD);
+                cmd1 = msg.getByte(Fields.COMMAND1);
             } catch (FieldException e) {
                 logger.debug("no command found, dropping msg {}", msg);
                 return false;
@@ -203,8 +204,8 @@ public abstract class MessageDispatcher {
             boolean isConsumed = false;
             int key = -1;
             try {
-                cmd = msg.getByte("Cmd");
-                cmd1 = msg.getByte("command1");
+                cmd = msg.getByte(Fields.CMD);
+                cmd1 = msg.getByte(Fields.COMMAND1);
             } catch (FieldException e) {
                 logger.debug("no command found, dropping msg {}", msg);
                 return false;
@@ -302,7 +303,7 @@ public abstract class MessageDispatcher {
                     // in response to a direct status query message
                     return false;
                 }
-                cmd1 = msg.getByte("command1");
+                cmd1 = msg.getByte(Fields.COMMAND1);
             } catch (FieldException e) {
                 logger.debug("no cmd1 found, dropping msg {}", msg);
                 return false;
@@ -330,7 +331,7 @@ public abstract class MessageDispatcher {
         @Override
         public boolean dispatch(Msg msg, ZBPLMHandler handler) {
             try {
-                byte rawX10 = msg.getByte("rawX10");
+                byte rawX10 = msg.getByte(Fields.RAW_X10);
                 int cmd = (rawX10 & 0x0f);
                 MessageHandler h = m_feature.getMsgHandlers().get(cmd);
                 if (h == null) {
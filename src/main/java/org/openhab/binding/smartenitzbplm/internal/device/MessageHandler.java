@@ -27,9 +27,12 @@ import org.openhab.binding.smartenitzbplm.internal.device.DeviceFeatureListener.
 import org.openhab.binding.smartenitzbplm.internal.device.GroupMessageStateMachine.GroupMessage;
 import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.ZBPLMHandler;
 import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
+import org.openhab.binding.smartenitzbplm.internal.message.Fields;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgType;
+import org.openhab.binding.smartenitzbplm.internal.message.Priority;
+import org.openhab.binding.smartenitzbplm.internal.message.types.ExtendedMessageReceived;
 import org.openhab.binding.smartenitzbplm.internal.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,6 +87,7 @@ public abstract class MessageHandler {
         try {
             Msg m = MsgFactory.makeExtendedMessage(d.getAddress(), (byte) 0x1f, aCmd1, aCmd2);
             m.setQuietTime(500L);
+            m.setPriority(Priority.REPLY);
             d.enqueueMessage(m, f);
         } catch (IOException e) {
             logger.warn("i/o problem sending query message to device {}", d.getAddress());
@@ -187,11 +191,11 @@ public abstract class MessageHandler {
      * 
      * @param param name of parameter to match
      * @param msg message to search
-     * @param field field name to match
+     * @param field field slot to match, see {@link Fields}
      * @return true if parameter matches
      * @throws FieldException if field not there
      */
-    protected boolean testMatch(String param, Msg msg, String field) throws FieldException {
+    protected boolean testMatch(String param, Msg msg, int field) throws FieldException {
         int mp = getIntParameter(param, -1);
         // parameter not filtered for, declare this a match!
         if (mp == -1) {
@@ -214,20 +218,20 @@ public abstract class MessageHandler {
                 if ((msg.isExtended() && ext != 1) || (!msg.isExtended() && ext != 0)) {
                     return (false);
                 }
-                if (!testMatch("match_cmd1", msg, "command1")) {
+                if (!testMatch("match_cmd1", msg, Fields.COMMAND1)) {
                     return (false);
                 }
             }
-            if (!testMatch("match_cmd2", msg, "command2")) {
+            if (!testMatch("match_cmd2", msg, Fields.COMMAND2)) {
                 return (false);
             }
-            if (!testMatch("match_d1", msg, "userData1")) {
+            if (!testMatch("match_d1", msg, Fields.USER_DATA1)) {
                 return (false);
             }
-            if (!testMatch("match_d2", msg, "userData2")) {
+            if (!testMatch("match_d2", msg, Fields.USER_DATA2)) {
                 return (false);
             }
-            if (!testMatch("match_d3", msg, "userData3")) {
+            if (!testMatch("match_d3", msg, Fields.USER_DATA3)) {
                 return (false);
             }
         } catch (FieldException e) {
@@ -246,11 +250,11 @@ public abstract class MessageHandler {
     protected boolean isDuplicate(Msg msg) {
         boolean isDuplicate = false;
         try {
-            MsgType t = MsgType.s_fromValue(msg.getByte("messageFlags"));
             int hops = msg.getHopsLeft();
+            MsgType t = msg.getType();
             if (t == MsgType.ALL_LINK_BROADCAST) {
-                int group = msg.getAddress("toAddress").getLowByte() & 0xff;
-                byte cmd1 = msg.getByte("command1");
+                int group = msg.getAddress(Fields.TO_ADDRESS).getLowByte() & 0xff;
+                byte cmd1 = msg.getByte(Fields.COMMAND1);
                 // if the command is 0x06, then it's success message
                 // from the original broadcaster, with which the device
                 // confirms that it got all cleanup replies successfully.
@@ -259,11 +263,9 @@ public abstract class MessageHandler {
             } else if (t == MsgType.ALL_LINK_CLEANUP) {
                 // the cleanup messages are direct messages, so the
                 // group # is not in the toAddress, but in cmd2
-                int group = msg.getByte("command2") & 0xff;
+                int group = msg.getByte(Fields.COMMAND2) & 0xff;
                 isDuplicate = !updateGroupState(group, hops, GroupMessage.CLEAN);
             }
-        } catch (IllegalArgumentException e) {
-            logger.error("cannot parse msg: {}", msg, e);
         } catch (FieldException e) {
             logger.error("cannot parse msg: {}", msg, e);
         }
@@ -299,8 +301,8 @@ public abstract class MessageHandler {
         // the cleanup messages have the button number in the command2 field
         // the broadcast messages have it as the lsb of the toAddress
         try {
-            int bclean = msg.getByte("command2") & 0xff;
-            int bbcast = msg.getAddress("toAddress").getLowByte() & 0xff;
+            int bclean = msg.getByte(Fields.COMMAND2) & 0xff;
+            int bbcast = msg.getAddress(Fields.TO_ADDRESS).getLowByte() & 0xff;
             int button = msg.isCleanup() ? bclean : bbcast;
             logger.trace("{} button: {} bclean: {} bbcast: {}", f.getDevice().getAddress(), button, bclean, bbcast);
             return button;
@@ -381,6 +383,7 @@ public abstract class MessageHandler {
                 // to switch to e.g. 75% when turned on.
                 Msg m = f.makePollMsg();
                 if (m != null) {
+                    m.setPriority(Priority.REPLY);
                     f.getDevice().enqueueDelayedMessage(m, f, 1000);
                 }
             }
@@ -486,7 +489,7 @@ public abstract class MessageHandler {
 
         private int getLevel(Msg msg) {
             try {
-                byte cmd2 = msg.getByte("command2");
+                byte cmd2 = msg.getByte(Fields.COMMAND2);
                 return (int) Math.round(((cmd2 >> 4) & 0x0f) * (100 / 15d));
             } catch (FieldException e) {
                 logger.error("Can't access command2 byte", e);
@@ -510,7 +513,7 @@ public abstract class MessageHandler {
         public void handleMessage(int group, byte cmd1, Msg msg, DeviceFeature f, ZBPLMHandler handler) {
             try {
                 DeviceAddress a = f.getDevice().getAddress();
-                int cmd2 = msg.getByte("command2") & 0xff;
+                int cmd2 = msg.getByte(Fields.COMMAND2) & 0xff;
                 int button = this.getIntParameter("button", -1);
                 if (button < 0) {
                     handleNoButtons(cmd2, a, msg);
@@ -577,7 +580,7 @@ public abstract class MessageHandler {
         public void handleMessage(int group, byte cmd1, Msg msg, DeviceFeature f, ZBPLMHandler handler) {
             InsteonDevice dev = f.getDevice();
             try {
-                int cmd2 = msg.getByte("command2") & 0xff;
+                int cmd2 = msg.getByte(Fields.COMMAND2) & 0xff;
                 if (cmd2 == 0xfe) {
                     // sometimes dimmer devices are returning 0xfe when on instead of 0xff
                     cmd2 = 0xff;
@@ -618,6 +621,7 @@ public abstract class MessageHandler {
         public void handleMessage(int group, byte cmd1, Msg msg, DeviceFeature f, ZBPLMHandler handler) {
             Msg m = f.makePollMsg();
             if (m != null) {
+                m.setPriority(Priority.REPLY);
                 f.getDevice().enqueueMessage(m, f);
             }
         }
@@ -637,7 +641,7 @@ public abstract class MessageHandler {
         @Override
         public void handleMessage(int group, byte cmd1, Msg msg, DeviceFeature f, ZBPLMHandler handler) {
             try {
-                int cmd2 = msg.getByte("command2") & 0xff;
+                int cmd2 = msg.getByte(Fields.COMMAND2) & 0xff;
                 int upDown = (cmd2 == 0) ? 0 : 2;
                 logger.info("{}: dev {} manual state change: {}", nm(), f.getDevice().getAddress(),
                         (upDown == 0) ? "DOWN" : "UP");
@@ -675,29 +679,27 @@ public abstract class MessageHandler {
         @Override
         public void handleMessage(int group, byte cmd1, Msg msg, DeviceFeature f, ZBPLMHandler handler) {
             InsteonDevice dev = f.getDevice();
-            if (!msg.isExtended()) {
+            if (!ExtendedMessageReceived.matches(msg)) {
                 logger.warn("{} device {} expected extended msg as info reply, got {}", nm(), dev.getAddress(), msg);
                 return;
             }
-            try {
-                int cmd2 = msg.getByte("command2") & 0xff;
-                switch (cmd2) {
-                    case 0x00: // this is a product data response message
-                        int prodKey = msg.getInt24("userData2", "userData3", "userData4");
-                        int devCat = msg.getByte("userData5");
-                        int subCat = msg.getByte("userData6");
-                        logger.info("{} {} got product data: cat: {} subcat: {} key: {} ", nm(), dev.getAddress(),
-                                devCat, subCat, Utils.getHexString(prodKey));
-                        break;
-                    case 0x02: // this is a device text string response message
-                        logger.info("{} {} got text str {} ", nm(), dev.getAddress(), msg);
-                        break;
-                    default:
-                        logger.warn("{} unknown cmd2 = {} in info reply message {}", nm(), cmd2, msg);
-                        break;
-                }
-            } catch (FieldException e) {
-                logger.error("error parsing {}: ", msg, e);
+            ExtendedMessageReceived ext = ExtendedMessageReceived.of(msg);
+            int cmd2 = ext.command2() & 0xff;
+            switch (cmd2) {
+                case 0x00: // this is a product data response message
+                    int prodKey = ((ext.userData(2) & 0xff) << 16) | ((ext.userData(3) & 0xff) << 8)
+                            | (ext.userData(4) & 0xff);
+                    int devCat = ext.userData(5);
+                    int subCat = ext.userData(6);
+                    logger.info("{} {} got product data: cat: {} subcat: {} key: {} ", nm(), dev.getAddress(),
+                            devCat, subCat, Utils.getHexString(prodKey));
+                    break;
+                case 0x02: // this is a device text string response message
+                    logger.info("{} {} got text str {} ", nm(), dev.getAddress(), msg);
+                    break;
+                default:
+                    logger.warn("{} unknown cmd2 = {} in info reply message {}", nm(), cmd2, msg);
+                    break;
             }
         }
     }
@@ -710,28 +712,25 @@ public abstract class MessageHandler {
         @Override
         public void handleMessage(int group, byte cmd1, Msg msg, DeviceFeature f, ZBPLMHandler handler) {
             InsteonDevice dev = f.getDevice();
-            if (!msg.isExtended()) {
+            if (!ExtendedMessageReceived.matches(msg)) {
                 logger.trace("{} device {} ignoring non-extended msg {}", nm(), dev.getAddress(), msg);
                 return;
             }
-            try {
-                int cmd2 = msg.getByte("command2") & 0xff;
-                switch (cmd2) {
-                    case 0x00: // this is a product data response message
-                        int batteryLevel = msg.getByte("userData12") & 0xff;
-                        int lightLevel = msg.getByte("userData11") & 0xff;
-                        logger.debug("{}: {} got light level: {}, battery level: {}", nm(), dev.getAddress(),
-                                lightLevel, batteryLevel);
-                        m_feature.publish(new DecimalType(lightLevel), StateChangeType.CHANGED, "field", "light_level");
-                        m_feature.publish(new DecimalType(batteryLevel), StateChangeType.CHANGED, "field",
-                                "battery_level");
-                        break;
-                    default:
-                        logger.warn("unknown cmd2 = {} in info reply message {}", cmd2, msg);
-                        break;
-                }
-            } catch (FieldException e) {
-                logger.error("error parsing {}: ", msg, e);
+            ExtendedMessageReceived ext = ExtendedMessageReceived.of(msg);
+            int cmd2 = ext.command2() & 0xff;
+            switch (cmd2) {
+                case 0x00: // this is a product data response message
+                    int batteryLevel = ext.userData(12) & 0xff;
+                    int lightLevel = ext.userData(11) & 0xff;
+                    logger.debug("{}: {} got light level: {}, battery level: {}", nm(), dev.getAddress(),
+                            lightLevel, batteryLevel);
+                    m_feature.publish(new DecimalType(lightLevel), StateChangeType.CHANGED, "field", "light_level");
+                    m_feature.publish(new DecimalType(batteryLevel), StateChangeType.CHANGED, "field",
+                            "battery_level");
+                    break;
+                default:
+                    logger.warn("unknown cmd2 = {} in info reply message {}", cmd2, msg);
+                    break;
             }
         }
     }
@@ -744,29 +743,26 @@ public abstract class MessageHandler {
         @Override
         public void handleMessage(int group, byte cmd1, Msg msg, DeviceFeature f, ZBPLMHandler handler) {
             InsteonDevice dev = f.getDevice();
-            if (!msg.isExtended()) {
+            if (!ExtendedMessageReceived.matches(msg)) {
                 logger.trace("{} device {} ignoring non-extended msg {}", nm(), dev.getAddress(), msg);
                 return;
             }
-            try {
-                int cmd2 = msg.getByte("command2") & 0xff;
-                switch (cmd2) {
-                    case 0x00: // this is a product data response message
-                        int batteryLevel = msg.getByte("userData4") & 0xff;
-                        int batteryWatermark = msg.getByte("userData7") & 0xff;
-                        logger.debug("{}: {} got light level: {}, battery level: {}", nm(), dev.getAddress(),
-                                batteryWatermark, batteryLevel);
-                        m_feature.publish(new DecimalType(batteryWatermark), StateChangeType.CHANGED, "field",
-                                "battery_watermark_level");
-                        m_feature.publish(new DecimalType(batteryLevel), StateChangeType.CHANGED, "field",
-                                "battery_level");
-                        break;
-                    default:
-                        logger.warn("unknown cmd2 = {} in info reply message {}", cmd2, msg);
-                        break;
-                }
-            } catch (FieldException e) {
-                logger.error("error parsing {}: ", msg, e);
+            ExtendedMessageReceived ext = ExtendedMessageReceived.of(msg);
+            int cmd2 = ext.command2() & 0xff;
+            switch (cmd2) {
+                case 0x00: // this is a product data response message
+                    int batteryLevel = ext.userData(4) & 0xff;
+                    int batteryWatermark = ext.userData(7) & 0xff;
+                    logger.debug("{}: {} got light level: {}, battery level: {}", nm(), dev.getAddress(),
+                            batteryWatermark, batteryLevel);
+                    m_feature.publish(new DecimalType(batteryWatermark), StateChangeType.CHANGED, "field",
+                            "battery_watermark_level");
+                    m_feature.publish(new DecimalType(batteryLevel), StateChangeType.CHANGED, "field",
+                            "battery_level");
+                    break;
+                default:
+                    logger.warn("unknown cmd2 = {} in info reply message {}", cmd2, msg);
+                    break;
             }
         }
     }
@@ -778,32 +774,29 @@ public abstract class MessageHandler {
 
         @Override
         public void handleMessage(int group, byte cmd1, Msg msg, DeviceFeature f, ZBPLMHandler handler) {
-            if (msg.isExtended()) {
-                try {
-                    // see iMeter developer notes 2423A1dev-072013-en.pdf
-                    int b7 = msg.getByte("userData7") & 0xff;
-                    int b8 = msg.getByte("userData8") & 0xff;
-                    int watts = (b7 << 8) | b8;
-                    if (watts > 32767) {
-                        watts -= 65535;
-                    }
-
-                    int b9 = msg.getByte("userData9") & 0xff;
-                    int b10 = msg.getByte("userData10") & 0xff;
-                    int b11 = msg.getByte("userData11") & 0xff;
-                    int b12 = msg.getByte("userData12") & 0xff;
-                    BigDecimal kwh = BigDecimal.ZERO;
-                    if (b9 < 254) {
-                        int e = (b9 << 24) | (b10 << 16) | (b11 << 8) | b12;
-                        kwh = new BigDecimal(e * 65535.0 / (1000 * 60 * 60 * 60)).setScale(4, RoundingMode.HALF_UP);
-                    }
+            if (ExtendedMessageReceived.matches(msg)) {
+                ExtendedMessageReceived ext = ExtendedMessageReceived.of(msg);
+                // see iMeter developer notes 2423A1dev-072013-en.pdf
+                int b7 = ext.userData(7) & 0xff;
+                int b8 = ext.userData(8) & 0xff;
+                int watts = (b7 << 8) | b8;
+                if (watts > 32767) {
+                    watts -= 65535;
+                }
 
-                    logger.debug("{}:{} watts: {} kwh: {} ", nm(), f.getDevice().getAddress(), watts, kwh);
-                    m_feature.publish(new DecimalType(kwh), StateChangeType.CHANGED, "field", "kwh");
-                    m_feature.publish(new DecimalType(watts), StateChangeType.CHANGED, "field", "watts");
-                } catch (FieldException e) {
-                    logger.error("error parsing {}: ", msg, e);
+                int b9 = ext.userData(9) & 0xff;
+                int b10 = ext.userData(10) & 0xff;
+                int b11 = ext.userData(11) & 0xff;
+                int b12 = ext.userData(12) & 0xff;
+                BigDecimal kwh = BigDecimal.ZERO;
+                if (b9 < 254) {
+                    int e = (b9 << 24) | (b10 << 16) | (b11 << 8) | b12;
+                    kwh = new BigDecimal(e * 65535.0 / (1000 * 60 * 60 * 60)).setScale(4, RoundingMode.HALF_UP);
                 }
+
+                logger.debug("{}:{} watts: {} kwh: {} ", nm(), f.getDevice().getAddress(), watts, kwh);
+                m_feature.publish(new DecimalType(kwh), StateChangeType.CHANGED, "field", "kwh");
+                m_feature.publish(new DecimalType(watts), StateChangeType.CHANGED, "field", "watts");
             }
         }
     }
@@ -821,6 +814,7 @@ public abstract class MessageHandler {
             // poll device to get updated kilowatt hours and watts
             Msg m = f.makePollMsg();
             if (m != null) {
+                m.setPriority(Priority.REPLY);
                 f.getDevice().enqueueMessage(m, f);
             }
         }
@@ -850,8 +844,8 @@ public abstract class MessageHandler {
             byte cmd = 0x00;
             byte cmd2 = 0x00;
             try {
-                cmd = msg.getByte("Cmd");
-                cmd2 = msg.getByte("command2");
+                cmd = msg.getByte(Fields.CMD);
+                cmd2 = msg.getByte(Fields.COMMAND2);
             } catch (FieldException e) {
                 logger.debug("{} no cmd found, dropping msg {}", nm(), msg);
                 return;
@@ -894,7 +888,7 @@ public abstract class MessageHandler {
         @Override
         public void handleMessage(int group, byte cmd1, Msg msg, DeviceFeature f, ZBPLMHandler handler) {
             try {
-                byte cmd2 = msg.getByte("command2");
+                byte cmd2 = msg.getByte(Fields.COMMAND2);
                 switch (cmd1) {
                     case 0x11:
                         switch (cmd2) {
@@ -18,6 +18,7 @@ import java.util.HashMap;
 import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+import org.openhab.binding.smartenitzbplm.internal.message.Priority;
 import org.openhab.binding.smartenitzbplm.internal.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -110,6 +111,7 @@ public abstract class PollHandler {
                     m = MsgFactory.makeStandardMessage(d.getAddress(), (byte) 0x0f, (byte) cmd1, (byte) cmd2);
                 }
                 m.setQuietTime(500L);
+                m.setPriority(Priority.POLL);
             } catch (FieldException e) {
                 logger.warn("error setting field in msg: ", e);
             } catch (IOException e) {
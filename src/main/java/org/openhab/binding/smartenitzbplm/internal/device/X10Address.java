@@ -1,12 +1,36 @@
 package org.openhab.binding.smartenitzbplm.internal.device;
 
 public class X10Address implements DeviceAddress {
+	// there are only 256 of them, so all are interned
+	private static final X10Address[] interned = new X10Address[256];
+
 	private final byte lowByte;
 
 	public X10Address(byte lowByte) {
 		this.lowByte = lowByte;
 	}
 
+	/**
+	 * Finds the canonical instance of an address
+	 * 
+	 * @param lowByte house and unit code
+	 * @return the address
+	 */
+	public static X10Address of(byte lowByte) {
+		X10Address a = interned[lowByte & 0xff];
+		if (a == null) {
+			// racing threads may both create one, that does no harm
+			a = new X10Address(lowByte);
+			interned[lowByte & 0xff] = a;
+		}
+		return a;
+	}
+
+	@Override
+	public int toInt() {
+		return lowByte & 0xff;
+	}
+
 	@Override
 	public void storeBytes(byte[] bytes, int offset) {
 		bytes[offset] = 0;
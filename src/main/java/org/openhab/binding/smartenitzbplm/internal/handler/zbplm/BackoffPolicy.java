@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.Pacer.MsgClass;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+
+/**
+ * Retransmits with exponential backoff and jitter, configured per message
+ * class. The n-th retry waits initial * 2^(n-1) milliseconds, at most max, and
+ * that spread by up to +-25% so that the writer does not fall into step with
+ * whatever keeps the modem busy.
+ *
+ * Each message class has a budget of retries per minute. Once a class has
+ * used it up, its messages are not retried until older retries have left the
+ * window, so a modem that refuses everything costs a bounded amount of time.
+ *
+ * @author jpowers
+ */
+class BackoffPolicy implements RetransmitPolicy {
+	private static final long WINDOW_NANOS = 60 * 1000000000L;
+	private static final double JITTER = 0.25;
+
+	/**
+	 * How a message class is retried
+	 */
+	static class Backoff {
+		final int retries;
+		final long initialMillis;
+		final long maxMillis;
+
+		Backoff(int retries, long initialMillis, long maxMillis) {
+			this.retries = retries;
+			this.initialMillis = initialMillis;
+			this.maxMillis = Math.max(initialMillis, maxMillis);
+		}
+	}
+
+	private final Backoff[] backoff = new Backoff[MsgClass.values().length];
+	// times of the retries in the budget window, per message class
+	private final ArrayDeque<Long>[] spent;
+	private int budget = 20;
+	private final Random random;
+
+	BackoffPolicy() {
+		this(new Random());
+	}
+
+	@SuppressWarnings("unchecked")
+	BackoffPolicy(Random random) {
+		this.random = random;
+		spent = new ArrayDeque[backoff.length];
+		for (int i = 0; i < spent.length; i++) {
+			spent[i] = new ArrayDeque<Long>();
+		}
+		set(MsgClass.DIRECT, new Backoff(3, 500, 4000));
+		set(MsgClass.EXTENDED, new Backoff(3, 500, 4000));
+		set(MsgClass.GROUP, new Backoff(2, 500, 2000));
+		// a repeated X10 bright or dim changes the level again
+		set(MsgClass.X10, new Backoff(1, 1000, 1000));
+		// the link database download depends on every record request
+		set(MsgClass.MODEM, new Backoff(5, 200, 3000));
+	}
+
+	synchronized void set(MsgClass c, Backoff b) {
+		backoff[c.ordinal()] = b;
+	}
+
+	/**
+	 * @param budget the retries per message class and minute
+	 */
+	synchronized void setBudget(int budget) {
+		this.budget = Math.max(0, budget);
+	}
+
+	/**
+	 * Overrides the backoff of message classes, e.g.
+	 * "direct=3/500/4000, modem=5/200/3000" for the retries, the initial and
+	 * the longest delay in milliseconds
+	 *
+	 * @param spec the backoffs, empty or null to keep the defaults
+	 * @throws IllegalArgumentException if the spec cannot be parsed
+	 */
+	void configure(String spec) {
+		if (spec == null || spec.trim().isEmpty()) {
+			return;
+		}
+		for (String entry : spec.split(",")) {
+			String[] kv = entry.split("=");
+			String[] v = kv.length == 2 ? kv[1].trim().split("/") : new String[0];
+			if (v.length != 3) {
+				throw new IllegalArgumentException("expected class=retries/initial/max, got: " + entry.trim());
+			}
+			try {
+				set(MsgClass.valueOf(kv[0].trim().toUpperCase()), new Backoff(Integer.parseInt(v[0]),
+						Long.parseLong(v[1]), Long.parseLong(v[2])));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("bad number in: " + entry.trim());
+			}
+		}
+	}
+
+	@Override
+	public long nextDelay(Msg msg, int attempts) {
+		return nextDelay(Pacer.classify(msg), attempts, System.nanoTime());
+	}
+
+	synchronized long nextDelay(MsgClass c, int attempts, long now) {
+		Backoff b = backoff[c.ordinal()];
+		if (attempts > b.retries) {
+			return GIVE_UP;
+		}
+		ArrayDeque<Long> window = spent[c.ordinal()];
+		while (!window.isEmpty() && now - window.peek() >= WINDOW_NANOS) {
+			window.poll();
+		}
+		if (window.size() >= budget) {
+			return GIVE_UP;
+		}
+		window.add(now);
+		long delay = b.initialMillis << Math.min(attempts - 1, 20);
+		delay = Math.min(delay, b.maxMillis);
+		return Math.round(delay * (1.0 + JITTER * (2 * random.nextDouble() - 1)));
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openhab.binding.smartenitzbplm.internal.message.Priority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the port from spending the powerline on devices that do not answer.
+ * A device that left several direct messages in a row unanswered is taken to
+ * be gone: while its circuit is open, polls, queries and discovery for it are
+ * dropped, only commands from the user still go out. After a cool down one
+ * message is let through as a probe. An answer from the device closes the
+ * circuit again, silence opens it for twice as long, up to half an hour. A
+ * probe the modem never got out to the device restarts the cool down, and a
+ * probe that is never reported on at all is given up after a while.
+ *
+ * The pacer reports whether a device answered each of its direct messages,
+ * and every message heard from a device closes its circuit. Nobody else
+ * reports silence, so one unanswered message counts once.
+ *
+ * @author jpowers
+ */
+public class CircuitBreaker {
+	private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	private static final int THRESHOLD = 3;
+	private static final long COOL_DOWN_MILLIS = 60000;
+	private static final long MAX_COOL_DOWN_MILLIS = 30 * 60000;
+	// longer than the retransmits of a message and the wait for the answer take
+	private static final long PROBE_TIMEOUT_MILLIS = 2 * 60000;
+
+	private static class Circuit {
+		private int silent = 0;
+		private long coolDownMillis = COOL_DOWN_MILLIS;
+		// while open, the time the next probe may go out
+		private long openUntil = 0;
+		private boolean open = false;
+		private boolean probing = false;
+		// while probing, the time the probe is given up
+		private long probeUntil = 0;
+	}
+
+	private final Map<Integer, Circuit> circuits = new HashMap<Integer, Circuit>();
+	// there are circuits, and of those some are open
+	private volatile boolean tracking = false;
+	private volatile boolean tripped = false;
+	private long dropped = 0;
+
+	/**
+	 * Called when a device has answered or sent a message
+	 *
+	 * @param address the device
+	 */
+	public void answered(int address) {
+		if (!tracking || address < 0) {
+			// the reader calls this for every message, most of the time no device is
+			// in trouble
+			return;
+		}
+		synchronized (this) {
+			Circuit c = circuits.remove(address);
+			if (c != null && c.open) {
+				logger.info("device {} answers again", Integer.toHexString(address));
+			}
+			update();
+		}
+	}
+
+	/**
+	 * Called when a device left a message unanswered
+	 *
+	 * @param address the device
+	 */
+	public void silent(int address) {
+		silent(address, System.currentTimeMillis());
+	}
+
+	synchronized void silent(int address, long now) {
+		if (address < 0) {
+			return;
+		}
+		Circuit c = circuits.get(address);
+		if (c == null) {
+			c = new Circuit();
+			circuits.put(address, c);
+			tracking = true;
+		}
+		c.silent++;
+		if (c.probing) {
+			// the probe went unanswered
+			c.coolDownMillis = Math.min(MAX_COOL_DOWN_MILLIS, c.coolDownMillis * 2);
+			c.probing = false;
+			c.openUntil = now + c.coolDownMillis;
+		} else if (!c.open && c.silent >= THRESHOLD) {
+			logger.warn("device {} does not answer, holding back its messages for {} s", Integer.toHexString(address),
+					c.coolDownMillis / 1000);
+			c.open = true;
+			c.openUntil = now + c.coolDownMillis;
+			tripped = true;
+		}
+	}
+
+	/**
+	 * Called when the modem gave up on a direct message, so the device never
+	 * got it
+	 *
+	 * @param address the device
+	 */
+	public void notSent(int address) {
+		notSent(address, System.currentTimeMillis());
+	}
+
+	void notSent(int address, long now) {
+		if (!tracking || address < 0) {
+			return;
+		}
+		synchronized (this) {
+			Circuit c = circuits.get(address);
+			if (c != null && c.probing) {
+				// the device was not asked, so probe again after the same cool down
+				c.probing = false;
+				c.openUntil = now + c.coolDownMillis;
+			}
+		}
+	}
+
+	/**
+	 * Decides if a message to a device may be sent
+	 *
+	 * @param address  the device
+	 * @param priority the lane of the message
+	 * @return false if the message should be dropped
+	 */
+	public boolean allows(int address, Priority priority) {
+		return allows(address, priority, System.currentTimeMillis());
+	}
+
+	boolean allows(int address, Priority priority, long now) {
+		if (!tripped || address < 0) {
+			return true;
+		}
+		synchronized (this) {
+			Circuit c = circuits.get(address);
+			if (c == null || !c.open || priority == Priority.INTERACTIVE) {
+				return true;
+			}
+			if (now >= c.openUntil && (!c.probing || now >= c.probeUntil)) {
+				c.probing = true;
+				c.probeUntil = now + PROBE_TIMEOUT_MILLIS;
+				return true;
+			}
+			dropped++;
+			return false;
+		}
+	}
+
+	/**
+	 * @param address the device
+	 * @return true if the messages to the device are held back
+	 */
+	public synchronized boolean isOpen(int address) {
+		Circuit c = circuits.get(address);
+		return c != null && c.open;
+	}
+
+	/**
+	 * @return the number of devices whose messages are held back
+	 */
+	public synchronized int getOpenCircuits() {
+		int open = 0;
+		for (Circuit c : circuits.values()) {
+			if (c.open) {
+				open++;
+			}
+		}
+		return open;
+	}
+
+	/**
+	 * @return the number of messages that were dropped
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	private void update() {
+		tracking = !circuits.isEmpty();
+		tripped = getOpenCircuits() > 0;
+	}
+}
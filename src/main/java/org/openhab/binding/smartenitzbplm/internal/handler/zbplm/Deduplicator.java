@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.util.Arrays;
+
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+
+/**
+ * Drops the copies of a message from a device that the powerline repeaters
+ * deliver more than once. A repeated copy differs from the original only in
+ * the hops left of its flags, so messages from a device (0x50, 0x51) are
+ * compared with the hop bits masked out, against the ones that came in during
+ * the last half second.
+ *
+ * When the writer sends a direct message to a device, the device is forgotten:
+ * the ACK to a repeated command looks just like the ACK to the one before it,
+ * and must not be dropped.
+ *
+ * @author jpowers
+ */
+class Deduplicator {
+	private static final int HISTORY = 32;
+	private static final long WINDOW_NANOS = 500 * 1000000L;
+	private static final int FLAGS = 8;
+
+	private final long[] hashes = new long[HISTORY];
+	private final int[] addresses = new int[HISTORY];
+	private final long[] times = new long[HISTORY];
+	private int next = 0;
+	private long dropped = 0;
+
+	Deduplicator() {
+		Arrays.fill(times, Long.MIN_VALUE / 2);
+	}
+
+	/**
+	 * @param msg the message from the modem
+	 * @param now System.nanoTime()
+	 * @return true if the message is a copy of one seen within the window
+	 */
+	synchronized boolean isDuplicate(Msg msg, long now) {
+		int cmd = msg.getCommandNumber();
+		if (cmd != 0x50 && cmd != 0x51) {
+			return false;
+		}
+		int address = msg.fromAddressInt();
+		long hash = hash(msg);
+		for (int i = 0; i < HISTORY; i++) {
+			if (hashes[i] == hash && addresses[i] == address && now - times[i] < WINDOW_NANOS) {
+				dropped++;
+				return true;
+			}
+		}
+		hashes[next] = hash;
+		addresses[next] = address;
+		times[next] = now;
+		next = (next + 1) % HISTORY;
+		return false;
+	}
+
+	/**
+	 * Forgets the messages seen from a device, so its answer to a new request
+	 * is never taken for a copy
+	 *
+	 * @param address the device
+	 */
+	synchronized void forget(int address) {
+		for (int i = 0; i < HISTORY; i++) {
+			if (addresses[i] == address) {
+				times[i] = Long.MIN_VALUE / 2;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of copies dropped
+	 */
+	synchronized long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Hashes the bytes in place, an inbound message may still be a view into
+	 * the frame slab of the MsgFactory
+	 */
+	private static long hash(Msg msg) {
+		long h = 1125899906842597L;
+		for (int i = 0; i < msg.getLength(); i++) {
+			int b = msg.getByteAt(i) & (i == FLAGS ? 0xf0 : 0xff);
+			h = 31 * h + b;
+		}
+		return h;
+	}
+}
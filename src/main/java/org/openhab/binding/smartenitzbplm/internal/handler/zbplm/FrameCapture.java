@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Captures the raw modem traffic into append-only segment files, so that it
+ * can be replayed later with the ReplayIOStream.
+ *
+ * Every segment is a memory mapped file of fixed size. It starts with a header
+ * (magic, version, wall clock and nano time when the segment was started),
+ * followed by records of the form
+ *
+ * <pre>
+ * int length, long nanoTime, byte direction, long sequence, byte[length] frame
+ * </pre>
+ *
+ * A record length of 0 marks the end of the segment. The sequence is the write
+ * queue sequence number of the outbound message the frame belongs to (or the
+ * last one sent, for inbound frames). Recording a frame is a plain copy into the
+ * mapped buffer, no strings are ever built.
+ *
+ * @author jpowers
+ */
+public class FrameCapture {
+	private static final Logger logger = LoggerFactory.getLogger(FrameCapture.class);
+
+	public static final byte INBOUND = 0;
+	public static final byte OUTBOUND = 1;
+
+	static final int MAGIC = 0x5a42504c; // "ZBPL"
+	static final int VERSION = 1;
+	static final int SEGMENT_HEADER_SIZE = 4 + 4 + 8 + 8;
+	static final int RECORD_HEADER_SIZE = 4 + 8 + 1 + 8;
+	private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+	private static final String SEGMENT_PREFIX = "capture-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	private final File directory;
+	private final int segmentSize;
+	private MappedByteBuffer segment = null;
+	private int segmentNumber = 0;
+
+	public FrameCapture(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	public FrameCapture(File directory, int segmentSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("cannot create capture directory " + directory);
+		}
+		// continue after any segments that are already there
+		List<File> existing = segments(directory);
+		if (!existing.isEmpty()) {
+			segmentNumber = number(existing.get(existing.size() - 1)) + 1;
+		}
+		nextSegment();
+	}
+
+	/**
+	 * Records a message
+	 *
+	 * @param direction INBOUND or OUTBOUND
+	 * @param sequence  write queue sequence number
+	 * @param msg       the message to record
+	 */
+	public synchronized void record(byte direction, long sequence, Msg msg) {
+		if (segment == null) {
+			return;
+		}
+		long now = System.nanoTime();
+		int length = msg.getLength();
+		if (segment.remaining() < RECORD_HEADER_SIZE + length + 4) {
+			try {
+				nextSegment();
+			} catch (IOException e) {
+				logger.error("cannot start new capture segment, capture stopped", e);
+				segment = null;
+				return;
+			}
+		}
+		segment.putInt(length);
+		segment.putLong(now);
+		segment.put(direction);
+		segment.putLong(sequence);
+		msg.writeTo(segment);
+	}
+
+	public synchronized void close() {
+		if (segment != null) {
+			segment.force();
+			segment = null;
+		}
+	}
+
+	private void nextSegment() throws IOException {
+		if (segment != null) {
+			segment.force();
+		}
+		File file = new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, segmentNumber++, SEGMENT_SUFFIX));
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			segment = raf.getChannel().map(MapMode.READ_WRITE, 0, segmentSize);
+		}
+		segment.putInt(MAGIC);
+		segment.putInt(VERSION);
+		segment.putLong(System.currentTimeMillis());
+		segment.putLong(System.nanoTime());
+		logger.debug("capturing modem traffic to {}", file);
+	}
+
+	/**
+	 * Lists the segment files of a capture in the order they were written
+	 *
+	 * @param directory capture directory
+	 * @return segment files, oldest first
+	 */
+	public static List<File> segments(File directory) {
+		File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX)
+				&& name.endsWith(SEGMENT_SUFFIX));
+		if (files == null) {
+			return new ArrayList<File>();
+		}
+		Arrays.sort(files);
+		return new ArrayList<File>(Arrays.asList(files));
+	}
+
+	private static int number(File segment) {
+		String name = segment.getName();
+		try {
+			return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Maps a segment file for reading, and positions the buffer at the first
+	 * record
+	 *
+	 * @param file segment file
+	 * @return buffer, or null if the file is not a capture segment
+	 * @throws IOException
+	 */
+	static MappedByteBuffer openSegment(File file) throws IOException {
+		MappedByteBuffer buffer;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.remaining() < SEGMENT_HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			return null;
+		}
+		buffer.position(SEGMENT_HEADER_SIZE);
+		return buffer;
+	}
+}
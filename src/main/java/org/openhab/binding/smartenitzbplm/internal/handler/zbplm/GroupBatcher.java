@@ -0,0 +1,332 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
+import org.openhab.binding.smartenitzbplm.internal.message.Fields;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.Priority;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendALLLinkCommand;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendStandardMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Turns on and off commands that are sent to many devices at once, e.g. by a
+ * rule, into ALL-Link group commands. Direct on (full level) and off commands
+ * from the user are held for a short window. When the window closes, the held
+ * commands of the same kind are matched against the groups the modem controls
+ * according to its link database: a group whose responders are all among the
+ * targets gets one ALL-Link command (0x61), for which the modem sends the
+ * broadcast and the cleanups to every responder. Targets left over are sent
+ * their direct message as before.
+ *
+ * Batching is off unless a window is set. Only commands to devices that are a
+ * responder in a group with enough responders to pay off are held.
+ *
+ * There is one window for all held commands, opened by the first one. A
+ * device keeps the order of its commands: a newer on or off replaces the held
+ * one, and any other command to a device with a held command sends the held
+ * one first. Released commands are handed to the sink in order, without the
+ * monitor of the batcher held, so a sink that blocks only holds up the
+ * commands to responders. A command the sink refuses is counted and reported
+ * to the sink, as its sender has long been told it was accepted.
+ *
+ * An ALL-Link on makes the responders go to the on level in their link record,
+ * which is full on unless the link was set up otherwise.
+ *
+ * @author jpowers
+ */
+class GroupBatcher {
+	private static final Logger logger = LoggerFactory.getLogger(GroupBatcher.class);
+
+	// a group command only pays off if it replaces at least this many messages
+	private static final int MIN_RESPONDERS = 2;
+	// the modem needs time for the cleanup of every responder
+	private static final long CLEANUP_QUIET_TIME = 250;
+
+	/**
+	 * Where the batcher sends its messages
+	 */
+	interface Sink {
+		void send(Msg msg) throws IOException;
+
+		/**
+		 * Called when a released command could not be sent
+		 */
+		default void failed(Msg msg, IOException e) {
+		}
+	}
+
+	private final Sink sink;
+	private final ScheduledExecutorService timer;
+	private long windowMillis = 0;
+	// the responders of every group the modem controls, null until the modem
+	// database is complete, and every device that is a responder in one
+	private Map<Integer, Set<Integer>> groups = null;
+	private final Set<Integer> responders = new HashSet<Integer>();
+
+	// held commands by target device, in the order they came in
+	private final LinkedHashMap<Integer, Msg> held = new LinkedHashMap<Integer, Msg>();
+	private boolean windowOpen = false;
+	private long batched = 0;
+	private long failed = 0;
+	// released commands not yet handed to the sink, and how many of those are
+	// still on their way, both guarded by this
+	private final ArrayDeque<Msg> outbox = new ArrayDeque<Msg>();
+	private int unsent = 0;
+	// taken while handing the outbox to the sink, keeps the commands in order
+	private final Object sendLock = new Object();
+
+	GroupBatcher(Sink sink, ScheduledExecutorService timer) {
+		this.sink = sink;
+		this.timer = timer;
+	}
+
+	/**
+	 * @param windowMillis how long to hold commands, 0 to send them right away
+	 */
+	synchronized void setWindow(long windowMillis) {
+		this.windowMillis = windowMillis;
+	}
+
+	/**
+	 * @param modemDB the modem link database, once it is complete
+	 */
+	synchronized void setModemDB(Map<DeviceAddress, ModemDBEntry> modemDB) {
+		responders.clear();
+		if (modemDB == null) {
+			groups = null;
+			return;
+		}
+		groups = new HashMap<Integer, Set<Integer>>();
+		for (Map.Entry<DeviceAddress, ModemDBEntry> e : modemDB.entrySet()) {
+			int address = e.getKey().toInt();
+			for (Byte g : e.getValue().getControls()) {
+				Set<Integer> r = groups.get(g & 0xff);
+				if (r == null) {
+					r = new HashSet<Integer>();
+					groups.put(g & 0xff, r);
+				}
+				r.add(address);
+			}
+		}
+		// a command to a device that is not in any big enough group is never batched
+		for (Set<Integer> r : groups.values()) {
+			if (r.size() >= MIN_RESPONDERS) {
+				responders.addAll(r);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of direct messages replaced by group commands
+	 */
+	synchronized long getBatched() {
+		return batched;
+	}
+
+	/**
+	 * @return the number of released commands the sink refused
+	 */
+	synchronized long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Holds a message if it may be batched. A message that is not held, but
+	 * goes to a responder, waits until the released commands are sent, so that
+	 * an earlier command to the device goes first.
+	 *
+	 * @param msg the message to send
+	 * @return true if the message is held, false if it should be sent now
+	 */
+	boolean offer(Msg msg) {
+		int target = SendStandardMessage.matches(msg) && !msg.isBroadcast() ? msg.getAddressInt(Fields.TO_ADDRESS)
+				: -1;
+		synchronized (this) {
+			if (windowMillis > 0 && groups != null && isBatchable(msg) && responders.contains(target)) {
+				// a newer on or off wins, and goes to the back of the line
+				held.remove(target);
+				held.put(target, msg);
+				if (!windowOpen) {
+					windowOpen = true;
+					timer.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+				}
+				return true;
+			}
+			Msg before = held.remove(target);
+			if (before != null) {
+				release(before);
+			}
+			if (unsent == 0 || !responders.contains(target)) {
+				return false;
+			}
+		}
+		drain();
+		return false;
+	}
+
+	/**
+	 * Sends the held commands, as group commands where possible
+	 */
+	void flush() {
+		synchronized (this) {
+			releaseHeld();
+		}
+		drain();
+	}
+
+	private void releaseHeld() {
+		windowOpen = false;
+		// the held commands by command1 << 8 | command2, then by target device
+		Map<Integer, LinkedHashMap<Integer, Msg>> byCommand = new LinkedHashMap<Integer, LinkedHashMap<Integer, Msg>>();
+		for (Map.Entry<Integer, Msg> e : held.entrySet()) {
+			Msg msg = e.getValue();
+			int key = ((msg.getByteAt(SendStandardMessage.COMMAND1) & 0xff) << 8)
+					| (msg.getByteAt(SendStandardMessage.COMMAND2) & 0xff);
+			LinkedHashMap<Integer, Msg> targets = byCommand.get(key);
+			if (targets == null) {
+				targets = new LinkedHashMap<Integer, Msg>();
+				byCommand.put(key, targets);
+			}
+			targets.put(e.getKey(), msg);
+		}
+		held.clear();
+		for (Map.Entry<Integer, LinkedHashMap<Integer, Msg>> e : byCommand.entrySet()) {
+			int key = e.getKey();
+			for (Msg m : batch((byte) (key >> 8), (byte) key, e.getValue())) {
+				release(m);
+			}
+		}
+	}
+
+	private void release(Msg m) {
+		outbox.add(m);
+		unsent++;
+	}
+
+	/**
+	 * Hands the released commands to the sink. When this returns, every command
+	 * released before the call has been handed over, by this thread or by
+	 * another one that was draining already.
+	 */
+	private void drain() {
+		synchronized (sendLock) {
+			while (true) {
+				Msg m;
+				synchronized (this) {
+					m = outbox.poll();
+				}
+				if (m == null) {
+					return;
+				}
+				try {
+					sink.send(m);
+				} catch (IOException e) {
+					logger.warn("cannot send {}: {}", m, e.getMessage());
+					synchronized (this) {
+						failed++;
+					}
+					sink.failed(m, e);
+				} finally {
+					synchronized (this) {
+						unsent--;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Covers as many targets as possible with groups, biggest first
+	 *
+	 * @return the messages to send: group commands, then the direct messages of
+	 *         the targets that are left
+	 */
+	List<Msg> batch(byte cmd1, byte cmd2, LinkedHashMap<Integer, Msg> targets) {
+		List<Msg> out = new ArrayList<Msg>();
+		// the modem database may have been cleared while the commands were held
+		Map<Integer, Set<Integer>> groups = this.groups == null ? new HashMap<Integer, Set<Integer>>()
+				: new HashMap<Integer, Set<Integer>>(this.groups);
+		Set<Integer> left = new HashSet<Integer>(targets.keySet());
+		while (left.size() >= MIN_RESPONDERS) {
+			int best = -1;
+			int bestCount = 0;
+			for (Map.Entry<Integer, Set<Integer>> g : groups.entrySet()) {
+				Set<Integer> r = g.getValue();
+				if (!targets.keySet().containsAll(r)) {
+					continue; // would switch devices that were not asked to
+				}
+				int count = 0;
+				for (Integer a : r) {
+					if (left.contains(a)) {
+						count++;
+					}
+				}
+				if (count > bestCount) {
+					best = g.getKey();
+					bestCount = count;
+				}
+			}
+			if (best < 0 || bestCount < MIN_RESPONDERS) {
+				break;
+			}
+			Set<Integer> r = groups.remove(best);
+			left.removeAll(r);
+			try {
+				Msg m = SendALLLinkCommand.create().allLinkGroup((byte) best).allLinkCommand(cmd1)
+						.broadcastCommand2(cmd2).msg();
+				m.setPriority(Priority.INTERACTIVE);
+				m.setQuietTime(Math.max(m.getQuietTime(), CLEANUP_QUIET_TIME * r.size()));
+				out.add(m);
+				batched += r.size() - 1;
+				logger.debug("sending group {} to {} responders instead of direct messages", best, r.size());
+			} catch (IOException e) {
+				logger.warn("cannot make group command: {}", e.getMessage());
+				left.addAll(r);
+				break;
+			}
+		}
+		for (Map.Entry<Integer, Msg> t : targets.entrySet()) {
+			if (left.contains(t.getKey())) {
+				out.add(t.getValue());
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Only standard direct full on and off commands from the user are batched
+	 */
+	private static boolean isBatchable(Msg msg) {
+		if (!SendStandardMessage.matches(msg) || msg.isBroadcast() || msg.getPriority() != Priority.INTERACTIVE) {
+			return false;
+		}
+		byte cmd1 = msg.getByteAt(SendStandardMessage.COMMAND1);
+		byte cmd2 = msg.getByteAt(SendStandardMessage.COMMAND2);
+		return cmd1 == 0x13 || (cmd1 == 0x11 && cmd2 == (byte) 0xff);
+	}
+}
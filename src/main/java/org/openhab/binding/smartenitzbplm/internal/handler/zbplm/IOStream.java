@@ -15,8 +15,6 @@ package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
 
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.slf4j.Logger;
@@ -34,7 +32,9 @@ import org.slf4j.LoggerFactory;
 public abstract class IOStream {
     private static final Logger logger = LoggerFactory.getLogger(IOStream.class);
 	
-    protected final BlockingQueue<Msg> inboundQueue = new LinkedBlockingDeque<Msg>();
+    private static final int INBOUND_CAPACITY = 1024;
+
+    protected final InboundRing inboundQueue = new InboundRing(INBOUND_CAPACITY);
 	
     protected OutputStream outputStream = null;
 
@@ -50,6 +50,21 @@ public abstract class IOStream {
         return inboundQueue.take();
     }
 
+    /**
+     * @return the ring the messages from the modem come in on, to read them in
+     *         batches
+     */
+    public InboundRing getInbound() {
+        return inboundQueue;
+    }
+
+    /**
+     * @param strategy how the reader waits for messages from the modem
+     */
+    public void setWaitStrategy(InboundRing.WaitStrategy strategy) {
+        inboundQueue.setWaitStrategy(strategy);
+    }
+
     /**
      * Write data to iostream
      *
@@ -0,0 +1,296 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.util.concurrent.locks.LockSupport;
+
+import org.openhab.binding.smartenitzbplm.internal.message.InboundMsgSink;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+
+/**
+ * Hands the messages decoded from the modem's bytes to the port reader. A
+ * preallocated ring of slots, written by one thread and read by one other, in
+ * the style of the LMAX Disruptor: the writer fills the slot of the next
+ * sequence number and then publishes the sequence, the reader takes every
+ * message published since it last looked in one batch. Neither side takes a
+ * lock or allocates while the other keeps up, and how a side waits when it
+ * does not is up to the WaitStrategy.
+ *
+ * The single writer is the MsgFactory, whose addData() is synchronized. Each
+ * slot also carries the time the bytes of the message arrived and the time the
+ * message was published, so the reader can tell how long decoding and the
+ * handoff took.
+ *
+ * The writer is the thread that reads the port. It waits for room at most
+ * PUBLISH_TIMEOUT, then drops the message, so a reader that is stuck or gone
+ * cannot stall the input from the modem.
+ *
+ * @author jpowers
+ */
+public class InboundRing implements InboundMsgSink {
+	private static final int SPINS = 100;
+	private static final long PARK_NANOS = 50000;
+	private static final long PUBLISH_TIMEOUT = 1000000000L; // nanoseconds
+
+	/**
+	 * How the reader waits for messages, and the writer for room
+	 */
+	public enum WaitStrategy {
+		/** sleep on a monitor until woken, costs a wakeup but no CPU */
+		BLOCKING,
+		/** spin briefly, then yield the CPU to other threads */
+		YIELDING,
+		/** spin briefly, then yield, then sleep in short steps */
+		SLEEPING;
+
+		/**
+		 * @param s the name of a strategy, any case
+		 * @return the strategy, BLOCKING if s is null or unknown
+		 */
+		public static WaitStrategy parse(String s) {
+			if (s != null) {
+				for (WaitStrategy w : values()) {
+					if (w.name().equalsIgnoreCase(s.trim())) {
+						return w;
+					}
+				}
+			}
+			return BLOCKING;
+		}
+	}
+
+	/**
+	 * Gets the messages of a batch, one call per message
+	 */
+	public interface Consumer {
+		/**
+		 * @param msg        the message
+		 * @param sequence   its sequence number, counting from 0
+		 * @param arrived    System.nanoTime() when its bytes arrived
+		 * @param published  System.nanoTime() when it was decoded and published
+		 * @param endOfBatch true for the last message of the batch
+		 */
+		void onEvent(Msg msg, long sequence, long arrived, long published, boolean endOfBatch);
+	}
+
+	private final int mask;
+	private final Msg[] msgs;
+	private final long[] arrived;
+	private final long[] published;
+
+	// the last sequence published by the writer, and consumed by the reader
+	private volatile long cursor = -1;
+	private volatile long gate = -1;
+	private volatile WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+	private volatile boolean readerWaiting = false;
+	private volatile boolean writerWaiting = false;
+	// only written by the writer
+	private volatile long dropped = 0;
+	private final Object lock = new Object();
+
+	/**
+	 * @param capacity the number of slots, rounded up to a power of 2
+	 */
+	public InboundRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		mask = size - 1;
+		msgs = new Msg[size];
+		arrived = new long[size];
+		published = new long[size];
+	}
+
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+
+	public int getCapacity() {
+		return msgs.length;
+	}
+
+	/**
+	 * @return the number of messages dropped because the ring stayed full
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Publishes a message, waiting for room if the ring is full. Only ever
+	 * called by one thread at a time.
+	 *
+	 * @param msg         the message
+	 * @param arrivedNanos System.nanoTime() when its bytes arrived
+	 * @return false if the message was dropped because there was no room
+	 * @throws InterruptedException if interrupted while waiting for room
+	 */
+	@Override
+	public boolean publish(Msg msg, long arrivedNanos) throws InterruptedException {
+		long seq = cursor + 1;
+		long wrap = seq - msgs.length;
+		if (gate < wrap && !waitForRoom(wrap)) {
+			dropped++;
+			return false;
+		}
+		int i = (int) seq & mask;
+		msgs[i] = msg;
+		arrived[i] = arrivedNanos;
+		published[i] = System.nanoTime();
+		cursor = seq;
+		if (readerWaiting) {
+			synchronized (lock) {
+				lock.notifyAll();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Hands every message published since the last call to the consumer,
+	 * waiting for one if there is none
+	 *
+	 * @return the number of messages handed over
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public int drain(Consumer consumer) throws InterruptedException {
+		long next = gate + 1;
+		long available = waitFor(next);
+		for (long seq = next; seq <= available; seq++) {
+			int i = (int) seq & mask;
+			Msg msg = msgs[i];
+			msgs[i] = null;
+			consumer.onEvent(msg, seq, arrived[i], published[i], seq == available);
+		}
+		release(available);
+		return (int) (available - next + 1);
+	}
+
+	/**
+	 * @return the next message, waiting for one if there is none
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Msg take() throws InterruptedException {
+		long next = gate + 1;
+		waitFor(next);
+		return consume(next);
+	}
+
+	/**
+	 * @return the next message, or null if there is none
+	 */
+	public Msg poll() {
+		long next = gate + 1;
+		return cursor < next ? null : consume(next);
+	}
+
+	public int size() {
+		return (int) (cursor - gate);
+	}
+
+	public boolean isEmpty() {
+		return cursor == gate;
+	}
+
+	private Msg consume(long seq) {
+		int i = (int) seq & mask;
+		Msg msg = msgs[i];
+		msgs[i] = null;
+		release(seq);
+		return msg;
+	}
+
+	private void release(long seq) {
+		gate = seq;
+		if (writerWaiting) {
+			synchronized (lock) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return the last published sequence, at least seq
+	 */
+	private long waitFor(long seq) throws InterruptedException {
+		long available;
+		int counter = 0;
+		while ((available = cursor) < seq) {
+			counter = idle(counter, true, seq, 0);
+		}
+		return available;
+	}
+
+	/**
+	 * @return false if there was no room within PUBLISH_TIMEOUT
+	 */
+	private boolean waitForRoom(long wrap) throws InterruptedException {
+		int counter = 0;
+		long deadline = System.nanoTime() + PUBLISH_TIMEOUT;
+		while (gate < wrap) {
+			long left = deadline - System.nanoTime();
+			if (left <= 0) {
+				return false;
+			}
+			counter = idle(counter, false, wrap, left);
+		}
+		return true;
+	}
+
+	/**
+	 * Waits a little, according to the wait strategy
+	 *
+	 * @param reader true for the reader waiting for seq to be published, false
+	 *                   for the writer waiting for seq to be consumed
+	 * @param nanos  the longest to block, 0 for no limit
+	 * @return the new value of the counter
+	 */
+	private int idle(int counter, boolean reader, long seq, long nanos) throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		WaitStrategy w = waitStrategy;
+		if (w != WaitStrategy.BLOCKING && counter < SPINS) {
+			return counter + 1;
+		}
+		switch (w) {
+			case YIELDING:
+				Thread.yield();
+				return counter;
+			case SLEEPING:
+				if (counter < 2 * SPINS) {
+					Thread.yield();
+					return counter + 1;
+				}
+				LockSupport.parkNanos(PARK_NANOS);
+				return counter;
+			default:
+				synchronized (lock) {
+					// the flag is raised before the sequence is checked again, so
+					// the other side either sees the flag or we see its sequence
+					if (reader) {
+						readerWaiting = true;
+						if (cursor < seq) {
+							lock.wait();
+						}
+						readerWaiting = false;
+					} else {
+						writerWaiting = true;
+						if (gate < seq) {
+							lock.wait(nanos / 1000000L, (int) (nanos % 1000000L));
+						}
+						writerWaiting = false;
+					}
+				}
+				return counter;
+		}
+	}
+}
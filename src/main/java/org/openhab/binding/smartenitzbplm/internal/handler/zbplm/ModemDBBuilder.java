@@ -24,9 +24,13 @@ import org.eclipse.smarthome.core.thing.Bridge;
 import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
 import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddressFactory;
 import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
-import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgListener;
+import org.openhab.binding.smartenitzbplm.internal.message.types.ALLLinkRecordResponse;
+import org.openhab.binding.smartenitzbplm.internal.message.types.GetFirstALLLinkRecord;
+import org.openhab.binding.smartenitzbplm.internal.message.types.GetFirstALLLinkRecordReply;
+import org.openhab.binding.smartenitzbplm.internal.message.types.GetNextALLLinkRecord;
+import org.openhab.binding.smartenitzbplm.internal.message.types.GetNextALLLinkRecordReply;
 import org.openhab.binding.smartenitzbplm.internal.utils.Utils;
 import org.openhab.binding.smartenitzbplm.thing.listener.InsteonMsgListener;
 import org.slf4j.Logger;
@@ -68,7 +72,7 @@ public class ModemDBBuilder implements InsteonMsgListener, Runnable {
 	@Override
 	public void run() {
 		logger.info("starting modem database download");
-		handler.addInsteonMsgListener(this);
+		handler.addAllMessagesListener(this);
 		logger.info("clearing the db");
 		//port.clearModemDB();
 		getFirstLinkRecord();
@@ -77,7 +81,7 @@ public class ModemDBBuilder implements InsteonMsgListener, Runnable {
 	private void getFirstLinkRecord() {
 		try {
 			logger.info("Writting first link message to port:" + port);
-			port.writeMessage(Msg.makeMessage("GetFirstALLLinkRecord"));
+			port.writeMessage(GetFirstALLLinkRecord.create().msg());
 			logger.info("After Writting first link message");
 		} catch (IOException e) {
 			logger.error("error sending link record query ", e);
@@ -86,7 +90,7 @@ public class ModemDBBuilder implements InsteonMsgListener, Runnable {
 	}
 	private void getNextLinkRecord() {
 		try {
-			port.writeMessage(Msg.makeMessage("GetNextALLLinkRecord"));
+			port.writeMessage(GetNextALLLinkRecord.create().msg());
 		} catch (IOException e) {
 			logger.error("error sending link record query ", e);
 		}
@@ -105,21 +109,21 @@ public class ModemDBBuilder implements InsteonMsgListener, Runnable {
 			return;
 		}
 		try {
-			if (msg.getByte("Cmd") == 0x69 || msg.getByte("Cmd") == 0x6a) {
+			if (GetFirstALLLinkRecordReply.matches(msg) || GetNextALLLinkRecordReply.matches(msg)) {
 				// If the flag is "ACK/NACK", a record response
 				// will follow, so we do nothing here.
 				// If its "NACK", there are none
-				if (msg.getByte("ACK/NACK") == 0x15) {
+				byte ackNack = GetFirstALLLinkRecordReply.matches(msg) ? GetFirstALLLinkRecordReply.of(msg).ackNack()
+						: GetNextALLLinkRecordReply.of(msg).ackNack();
+				if (ackNack == 0x15) {
 					done();
 					return;
 				}
-			} else if (msg.getByte("Cmd") == 0x57) {
+			} else if (ALLLinkRecordResponse.matches(msg)) {
 				// we got the link record response
-				updateModemDB(msg.getAddress("LinkAddr"), port, msg);
+				updateModemDB(ALLLinkRecordResponse.of(msg).linkAddr(), port, msg);
 				getNextLinkRecord();
 			}
-		} catch (FieldException e) {
-			logger.error("bad field handling link records {}", e);
 		} catch (IllegalStateException e) {
 			logger.error("got exception requesting link records {}", e);
 		}
@@ -138,24 +142,20 @@ public class ModemDBBuilder implements InsteonMsgListener, Runnable {
 		if (!logger.isDebugEnabled()) {
 			return;
 		}
-		try {
-			logger.debug("MDB ------- start of modem link records ------------------");
-			Map<DeviceAddress, ModemDBEntry> dbes = port.getModemDBEntries();
-			for (Entry<DeviceAddress, ModemDBEntry> db : dbes.entrySet()) {
-				ArrayList<Msg> lrs = db.getValue().getLinkRecords();
-				for (Msg m : lrs) {
-					int recordFlags = m.getByte("RecordFlags") & 0xff;
-					String ms = ((recordFlags & (0x1 << 6)) != 0) ? "CTRL" : "RESP";
-					logger.debug("MDB {}: {} group: {} data1: {} data2: {} data3: {}", db.getKey(), ms,
-							toHex(m.getByte("ALLLinkGroup")), toHex(m.getByte("LinkData1")),
-							toHex(m.getByte("LinkData2")), toHex(m.getByte("LinkData2")));
-				}
-				logger.debug("MDB -----");
+		logger.debug("MDB ------- start of modem link records ------------------");
+		Map<DeviceAddress, ModemDBEntry> dbes = port.getModemDBEntries();
+		for (Entry<DeviceAddress, ModemDBEntry> db : dbes.entrySet()) {
+			ArrayList<Msg> lrs = db.getValue().getLinkRecords();
+			for (Msg m : lrs) {
+				ALLLinkRecordResponse r = ALLLinkRecordResponse.of(m);
+				int recordFlags = r.recordFlags() & 0xff;
+				String ms = ((recordFlags & (0x1 << 6)) != 0) ? "CTRL" : "RESP";
+				logger.debug("MDB {}: {} group: {} data1: {} data2: {} data3: {}", db.getKey(), ms,
+						toHex(r.allLinkGroup()), toHex(r.linkData1()), toHex(r.linkData2()), toHex(r.linkData3()));
 			}
-			logger.debug("MDB ---------------- end of modem link records -----------");
-		} catch (FieldException e) {
-			logger.error("cannot access field:", e);
+			logger.debug("MDB -----");
 		}
+		logger.debug("MDB ---------------- end of modem link records -----------");
 	}
 
 	public static String toHex(byte b) {
@@ -171,17 +171,15 @@ public class ModemDBBuilder implements InsteonMsgListener, Runnable {
 		}
 		dbe.setPort(port);
 		if (m != null) {
-			dbe.addLinkRecord(m);
-			try {
-				byte group = m.getByte("ALLLinkGroup");
-				int recordFlags = m.getByte("RecordFlags") & 0xff;
-				if ((recordFlags & (0x1 << 6)) != 0) {
-					dbe.addControls(group);
-				} else {
-					dbe.addRespondsTo(group);
-				}
-			} catch (FieldException e) {
-				logger.error("cannot access field:", e);
+			// the link record is kept around, so give it its own copy of the data
+			dbe.addLinkRecord(m.detach());
+			ALLLinkRecordResponse r = ALLLinkRecordResponse.of(m);
+			byte group = r.allLinkGroup();
+			int recordFlags = r.recordFlags() & 0xff;
+			if ((recordFlags & (0x1 << 6)) != 0) {
+				dbe.addControls(group);
+			} else {
+				dbe.addRespondsTo(group);
 			}
 		}
 	}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddressFactory;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.thing.listener.InsteonMsgListener;
+
+/**
+ * Finds the listeners of a message. Device listeners are kept by the address
+ * of their device, so a message only goes to the listeners of the device it is
+ * from, plus the listeners that get every message. The listeners run on the
+ * dispatcher.
+ *
+ * @author jpowers
+ */
+class MsgRouter {
+	private final StripedDispatcher dispatcher;
+
+	// the listeners by the address of their device, and the listeners that get
+	// every message. The addresses are the interned ones, so looking up the
+	// sender of a message does not allocate.
+	private final Set<InsteonMsgListener> listeners = ConcurrentHashMap.newKeySet();
+	private final Map<DeviceAddress, List<InsteonMsgListener>> routes = new ConcurrentHashMap<>();
+	private final List<InsteonMsgListener> allMessagesListeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param dispatcher runs the listeners
+	 */
+	MsgRouter(StripedDispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Adds a listener for the messages from the device at its address
+	 *
+	 * @param listener the listener
+	 */
+	void add(final InsteonMsgListener listener) {
+		if (listeners.add(listener)) {
+			routes.compute(key(listener), (a, l) -> {
+				l = l == null ? new CopyOnWriteArrayList<>() : l;
+				l.add(listener);
+				return l;
+			});
+		}
+	}
+
+	/**
+	 * Adds a listener for every message, including the replies of the modem
+	 *
+	 * @param listener the listener
+	 */
+	void addAllMessages(final InsteonMsgListener listener) {
+		if (listeners.add(listener)) {
+			allMessagesListeners.add(listener);
+		}
+	}
+
+	/**
+	 * Removes a listener. Messages that were already dispatched to it are still
+	 * delivered.
+	 *
+	 * @param listener the listener
+	 */
+	void remove(InsteonMsgListener listener) {
+		if (!listeners.remove(listener)) {
+			// nothing to do here, move along
+			return;
+		}
+		if (!allMessagesListeners.remove(listener)) {
+			routes.computeIfPresent(key(listener), (a, l) -> {
+				l.remove(listener);
+				return l.isEmpty() ? null : l;
+			});
+		}
+	}
+
+	/**
+	 * Hands a message to the listeners of the device it is from, and to the
+	 * listeners of every message
+	 *
+	 * @param msg the message
+	 */
+	void route(Msg msg) {
+		for (InsteonMsgListener listener : allMessagesListeners) {
+			dispatcher.dispatch(listener, msg);
+		}
+		int from = msg.fromAddressInt();
+		if (from >= 0) {
+			List<InsteonMsgListener> l = routes.get(DeviceAddressFactory.fromInt(from));
+			if (l != null) {
+				for (InsteonMsgListener listener : l) {
+					dispatcher.dispatch(listener, msg);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the address a message from the device of the listener is routed by
+	 */
+	private static DeviceAddress key(InsteonMsgListener listener) {
+		return DeviceAddressFactory.fromInt(listener.getAddress().toInt());
+	}
+}
@@ -0,0 +1,362 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openhab.binding.smartenitzbplm.internal.message.Fields;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.Priority;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendExtendedMessage;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendStandardMessage;
+
+/**
+ * The write queue of the port, split into one FIFO lane per Priority. The
+ * writer takes from the highest lane that has messages, except when the head
+ * of a lower lane has waited longer than the starvation limit of its lane.
+ * Then the most overdue head goes first, but never twice in a row while a
+ * higher lane has messages, so a backlog of overdue polls gets at most every
+ * other slot.
+ *
+ * Commands to a device that are still waiting are coalesced with newer ones of
+ * the same command class in the same lane: a newer switch or level command
+ * replaces the waiting one in its place in the lane, and a query identical to
+ * a waiting one is dropped. Dragging a dimmer slider this way sends the level
+ * the slider ended on instead of every level it passed.
+ *
+ * The queue holds at most capacity messages, what happens to a message that
+ * does not fit is up to the OverflowPolicy. A message that has waited longer
+ * than the time to live of its lane is dropped when it comes up, so the queue
+ * does not send minutes worth of stale commands after the modem comes back.
+ * Messages of the MAINTENANCE lane never expire and are never dropped to make
+ * room, the modem database download depends on every one of them.
+ *
+ * @author jpowers
+ */
+class OutboundQueue {
+	private static final Priority[] LANES = Priority.values();
+	private static final long NO_KEY = -1;
+	// expiry of the messages of lanes without a time to live
+	private static final long NEVER = Long.MAX_VALUE;
+	// returned by add() when the message was rejected
+	static final int REJECTED = -1;
+	// how long BLOCK waits for room
+	private static final long BLOCK_MILLIS = 5000;
+
+	// command classes that supersede each other
+	private static final int SWITCH = 1;
+	private static final int STATUS = 2;
+	private static final int SETPOINT = 3;
+	private static final int SETTING = 4;
+
+	/**
+	 * A message in the queue
+	 */
+	static class Entry {
+		private Msg msg;
+		private final Priority priority;
+		private final long enqueued;
+		private final long expires;
+		private final long key;
+
+		Entry(Msg msg, Priority priority, long enqueued, long key) {
+			this.msg = msg;
+			this.priority = priority;
+			this.enqueued = enqueued;
+			long ttl = priority.getTimeToLiveMillis();
+			this.expires = ttl == Long.MAX_VALUE ? NEVER : enqueued + ttl * 1000000L;
+			this.key = key;
+		}
+
+		Msg getMsg() {
+			return msg;
+		}
+
+		boolean isExpired(long now) {
+			// nanoTime() may be negative, so NEVER - now can overflow
+			return expires != NEVER && expires - now <= 0;
+		}
+
+		Priority getPriority() {
+			return priority;
+		}
+
+		/**
+		 * @return nanoseconds the entry has been waiting
+		 */
+		long age(long now) {
+			return now - enqueued;
+		}
+	}
+
+	private final ArrayDeque<Entry>[] lanes;
+	private boolean lastWasOverdue = false;
+	// waiting entries that newer commands can be coalesced with, by key
+	private final Map<Long, Entry> coalescable = new HashMap<Long, Entry>();
+	private long coalesced = 0;
+
+	private int capacity = Integer.MAX_VALUE;
+	private OverflowPolicy policy = OverflowPolicy.DROP_OLDEST;
+	private int size = 0;
+	private long expired = 0;
+	private long dropped = 0;
+	private long rejected = 0;
+
+	@SuppressWarnings("unchecked")
+	OutboundQueue() {
+		lanes = new ArrayDeque[LANES.length];
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new ArrayDeque<Entry>();
+		}
+	}
+
+	/**
+	 * @param capacity the most messages the queue holds
+	 * @param policy   what to do with a message when the queue is full
+	 */
+	synchronized void setLimit(int capacity, OverflowPolicy policy) {
+		this.capacity = Math.max(1, capacity);
+		this.policy = policy;
+		notifyAll();
+	}
+
+	/**
+	 * Adds a message to the lane of its priority, unless it can be coalesced
+	 * with a message that is already waiting
+	 *
+	 * @param msg the message
+	 * @return the new depth of the lane, or REJECTED
+	 * @throws InterruptedException if interrupted while blocked on a full queue
+	 */
+	int add(Msg msg) throws InterruptedException {
+		return add(msg, msg.getPriority(), System.nanoTime());
+	}
+
+	synchronized int add(Msg msg, Priority priority, long now) throws InterruptedException {
+		ArrayDeque<Entry> lane = lanes[priority.ordinal()];
+		long key = key(msg, priority);
+		if (key != NO_KEY) {
+			Entry waiting = coalescable.get(key);
+			if (waiting != null) {
+				// identical: drop the new one, otherwise the new one replaces the waiting one
+				if (!Arrays.equals(waiting.msg.getData(), msg.getData())) {
+					waiting.msg = msg;
+				}
+				coalesced++;
+				return lane.size();
+			}
+		}
+		if (size >= capacity && !makeRoom(priority)) {
+			rejected++;
+			return REJECTED;
+		}
+		Entry e = new Entry(msg, priority, now, key);
+		lane.add(e);
+		size++;
+		if (key != NO_KEY) {
+			coalescable.put(key, e);
+		}
+		notifyAll();
+		return lane.size();
+	}
+
+	/**
+	 * Makes room for a message according to the policy
+	 *
+	 * @return true if there is room now
+	 */
+	private boolean makeRoom(Priority priority) throws InterruptedException {
+		switch (policy) {
+			case BLOCK:
+				long deadline = System.nanoTime() + BLOCK_MILLIS * 1000000L;
+				long nanos;
+				while (size >= capacity && (nanos = deadline - System.nanoTime()) > 0) {
+					wait(nanos / 1000000L, (int) (nanos % 1000000L));
+				}
+				return size < capacity;
+			case DROP_OLDEST:
+				for (int i = lanes.length - 1; i >= priority.ordinal(); i--) {
+					if (LANES[i] != Priority.MAINTENANCE && !lanes[i].isEmpty()) {
+						remove(lanes[i]);
+						dropped++;
+						return true;
+					}
+				}
+				return false;
+			default:
+				return false;
+		}
+	}
+
+	private Entry remove(ArrayDeque<Entry> lane) {
+		Entry e = lane.poll();
+		size--;
+		if (e.key != NO_KEY) {
+			coalescable.remove(e.key);
+		}
+		notifyAll();
+		return e;
+	}
+
+	/**
+	 * Blocks until there is a message
+	 *
+	 * @return the next message to write
+	 * @throws InterruptedException
+	 */
+	synchronized Entry take() throws InterruptedException {
+		Entry e;
+		while ((e = poll(System.nanoTime())) == null) {
+			wait();
+		}
+		return e;
+	}
+
+	/**
+	 * @return the next message to write, or null if the queue is empty
+	 */
+	synchronized Entry poll(long now) {
+		int first = -1;
+		int overdue = -1;
+		long mostOverdue = 0;
+		for (int i = 0; i < lanes.length; i++) {
+			Entry head = lanes[i].peek();
+			while (head != null && head.isExpired(now)) {
+				remove(lanes[i]);
+				expired++;
+				head = lanes[i].peek();
+			}
+			if (head == null) {
+				continue;
+			}
+			if (first < 0) {
+				first = i;
+				continue;
+			}
+			long over = head.age(now) / 1000000L - LANES[i].getStarvationMillis();
+			if (over >= 0 && (overdue < 0 || over > mostOverdue)) {
+				overdue = i;
+				mostOverdue = over;
+			}
+		}
+		if (first < 0) {
+			return null;
+		}
+		int lane = first;
+		lastWasOverdue = overdue >= 0 && !lastWasOverdue;
+		if (lastWasOverdue) {
+			lane = overdue;
+		}
+		return remove(lanes[lane]);
+	}
+
+	synchronized int size(Priority priority) {
+		return lanes[priority.ordinal()].size();
+	}
+
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return nanoseconds the oldest message has been waiting, 0 if there is none
+	 */
+	synchronized long oldestAge(long now) {
+		long age = 0;
+		for (ArrayDeque<Entry> lane : lanes) {
+			Entry head = lane.peek();
+			if (head != null) {
+				age = Math.max(age, head.age(now));
+			}
+		}
+		return age;
+	}
+
+	/**
+	 * @return the number of messages that were dropped because they expired,
+	 *         to make room, or were rejected
+	 */
+	synchronized long getDrops() {
+		return expired + dropped + rejected;
+	}
+
+	synchronized long getExpired() {
+		return expired;
+	}
+
+	/**
+	 * @return the number of messages that were coalesced with a waiting one
+	 */
+	synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	synchronized void clear() {
+		for (ArrayDeque<Entry> lane : lanes) {
+			lane.clear();
+		}
+		coalescable.clear();
+		size = 0;
+		notifyAll();
+	}
+
+	/**
+	 * Computes the coalescing key of a message: the lane, the device and the
+	 * command class
+	 *
+	 * @return the key, or NO_KEY if the message is never coalesced
+	 */
+	static long key(Msg msg, Priority priority) {
+		if (msg.getCommandNumber() != SendStandardMessage.CMD || msg.isBroadcast()) {
+			return NO_KEY;
+		}
+		int address = msg.getAddressInt(Fields.TO_ADDRESS);
+		if (address < 0) {
+			return NO_KEY;
+		}
+		int cmd1 = msg.getByteAt(SendStandardMessage.COMMAND1) & 0xff;
+		int cmd2 = msg.getByteAt(SendStandardMessage.COMMAND2) & 0xff;
+		int commandClass;
+		switch (cmd1) {
+			case 0x11: // on, at level
+			case 0x12: // fast on
+			case 0x13: // off
+			case 0x14: // fast off
+			case 0x21: // instant change
+				commandClass = SWITCH << 24;
+				break;
+			case 0x19:
+				commandClass = (STATUS << 24) | cmd2;
+				break;
+			case 0x6c: // cool setpoint
+			case 0x6d: // heat setpoint
+				commandClass = (SETPOINT << 24) | cmd1;
+				break;
+			case 0x2e:
+				if (!msg.isExtended()) {
+					return NO_KEY;
+				}
+				// the setting is picked by button (data 1) and setting code (data 2)
+				int d1 = msg.getByteAt(SendExtendedMessage.USER_DATA1) & 0xff;
+				int d2 = msg.getByteAt(SendExtendedMessage.USER_DATA2) & 0xff;
+				commandClass = (SETTING << 24) | (cmd2 << 16) | (d1 << 8) | d2;
+				break;
+			default:
+				return NO_KEY;
+		}
+		return ((long) priority.ordinal() << 56) | ((long) address << 32) | commandClass;
+	}
+}
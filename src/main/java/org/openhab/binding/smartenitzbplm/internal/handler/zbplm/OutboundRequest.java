@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.util.concurrent.ScheduledFuture;
+
+import org.openhab.binding.smartenitzbplm.internal.message.Field;
+import org.openhab.binding.smartenitzbplm.internal.message.Fields;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+
+/**
+ * A message that has been written to the modem and is waiting for the modem to
+ * echo it back with an ACK or NACK. The echo is matched to the request by
+ * command number and, where the echo repeats the request, by payload, so a late
+ * echo of an earlier message or an unsolicited message is never mistaken for
+ * the reply.
+ *
+ * The reader thread completes the request through echo(), the deadline timer
+ * through expire(). Both only take the monitor of the request itself, which the
+ * writer releases while it waits in await().
+ *
+ * @author jpowers
+ */
+class OutboundRequest {
+	private static final byte ACK = 0x06;
+
+	enum Outcome {
+		PENDING, ACK, NACK, TIMEOUT
+	}
+
+	private final Msg msg;
+	private final byte[] frame;
+	private final long sequence;
+
+	private Outcome outcome = Outcome.PENDING;
+	private int attempt = 0;
+	private long sentNanos = 0;
+	private long echoNanos = -1;
+	private ScheduledFuture<?> deadline = null;
+
+	OutboundRequest(Msg msg, long sequence) {
+		this.msg = msg;
+		this.frame = msg.getData();
+		this.sequence = sequence;
+	}
+
+	Msg getMsg() {
+		return msg;
+	}
+
+	byte[] getFrame() {
+		return frame;
+	}
+
+	long getSequence() {
+		return sequence;
+	}
+
+	synchronized int getAttempt() {
+		return attempt;
+	}
+
+	/**
+	 * @return nanoseconds from the last transmission to its echo, or -1 if there
+	 *         was no echo
+	 */
+	synchronized long getEchoLatency() {
+		return echoNanos < 0 ? -1 : echoNanos - sentNanos;
+	}
+
+	/**
+	 * @return true if the modem has accepted the request
+	 */
+	synchronized boolean isAccepted() {
+		return outcome == Outcome.ACK;
+	}
+
+	/**
+	 * Marks the start of a (re)transmission
+	 *
+	 * @param deadline timer that will expire this attempt
+	 * @return the number of this attempt, starting at 1
+	 */
+	synchronized int sent(ScheduledFuture<?> deadline) {
+		cancelDeadline();
+		this.deadline = deadline;
+		this.outcome = Outcome.PENDING;
+		this.sentNanos = System.nanoTime();
+		this.echoNanos = -1;
+		return ++attempt;
+	}
+
+	/**
+	 * Checks if an inbound message is the modem's reply to this request. A pure
+	 * NACK carries no payload, it is the modem refusing whatever is in flight.
+	 *
+	 * @param echo inbound message
+	 * @return true if the message answers this request
+	 */
+	boolean matches(Msg echo) {
+		if (echo.isPureNack()) {
+			return true;
+		}
+		if (echo.isUnsolicited() || echo.getCommandNumber() != msg.getCommandNumber()) {
+			return false;
+		}
+		Field ackNack = echo.getDefinition().getField(Fields.ACK_NACK);
+		if (ackNack.getOffset() != frame.length) {
+			return true; // the reply carries its own payload, e.g. GetIMInfoReply
+		}
+		for (int i = 2; i < frame.length; i++) {
+			if (echo.getByteAt(i) != frame[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Completes the current attempt with the modem's reply. Called from the
+	 * reader thread after matches() returned true.
+	 *
+	 * @param echo the reply
+	 * @return false if the attempt had already completed
+	 */
+	synchronized boolean echo(Msg echo) {
+		if (outcome != Outcome.PENDING) {
+			return false;
+		}
+		echoNanos = System.nanoTime();
+		if (echo.isPureNack()) {
+			outcome = Outcome.NACK;
+		} else {
+			Field ackNack = echo.getDefinition().getField(Fields.ACK_NACK);
+			outcome = echo.getByteAt(ackNack.getOffset()) == ACK ? Outcome.ACK : Outcome.NACK;
+		}
+		cancelDeadline();
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Called by the deadline timer
+	 *
+	 * @param forAttempt the attempt the timer was armed for
+	 */
+	synchronized void expire(int forAttempt) {
+		if (outcome == Outcome.PENDING && attempt == forAttempt) {
+			outcome = Outcome.TIMEOUT;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Blocks until the current attempt has been answered or has timed out
+	 *
+	 * @return the outcome of the attempt
+	 * @throws InterruptedException
+	 */
+	synchronized Outcome await() throws InterruptedException {
+		while (outcome == Outcome.PENDING) {
+			wait();
+		}
+		return outcome;
+	}
+
+	/**
+	 * Gives up on the request, waking up the writer if it is waiting
+	 */
+	synchronized void cancel() {
+		cancelDeadline();
+		if (outcome == Outcome.PENDING) {
+			outcome = Outcome.TIMEOUT;
+			notifyAll();
+		}
+	}
+
+	private void cancelDeadline() {
+		if (deadline != null) {
+			deadline.cancel(false);
+			deadline = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "#" + sequence + " attempt " + attempt + " " + outcome + ": " + msg;
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+/**
+ * What the write queue does with a new message when it is full
+ *
+ * @author jpowers
+ */
+public enum OverflowPolicy {
+	/** wait a while for room, then reject the message */
+	BLOCK,
+	/** reject the message right away */
+	REJECT,
+	/**
+	 * make room by dropping the oldest message of the lowest lane at or below the
+	 * lane of the message, reject the message if there is none
+	 */
+	DROP_OLDEST;
+
+	/**
+	 * @param name name of the policy, as in the configuration
+	 * @return the policy, DROP_OLDEST if the name is unknown
+	 */
+	public static OverflowPolicy parse(String name) {
+		if (name != null) {
+			for (OverflowPolicy p : values()) {
+				if (p.name().equalsIgnoreCase(name.trim())) {
+					return p;
+				}
+			}
+		}
+		return DROP_OLDEST;
+	}
+}
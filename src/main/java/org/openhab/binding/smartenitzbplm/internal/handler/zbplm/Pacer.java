@@ -0,0 +1,368 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
+import org.openhab.binding.smartenitzbplm.internal.message.Fields;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.MsgType;
+
+/**
+ * Decides how long the writer has to keep quiet after the modem accepted a
+ * message. The quiet time of the message is the upper bound; within it the
+ * pacer lets the next message go as soon as the powerline has settled:
+ *
+ * <ul>
+ * <li>direct messages: once the addressed device has answered, its answer has
+ * had time to run through the remaining hops, and the settle time learned for
+ * the device (e.g. the data reply following the ACK of an extended query) has
+ * passed</li>
+ * <li>group broadcasts: once the modem reports that the cleanups are done</li>
+ * <li>modem commands: once the learned echo latency has passed, they do not go
+ * out on the powerline</li>
+ * <li>X10: always the full quiet time</li>
+ * </ul>
+ *
+ * Settle times are learned per device and message class, and per message class
+ * for devices without history, the way TCP estimates round trip times. NACKs,
+ * retransmits and devices that do not answer raise a penalty factor for the
+ * message class, which decays again as messages go through cleanly.
+ *
+ * The reader thread calls open() when the modem accepts a message, before it
+ * can see the answer of the device, and feeds every inbound message to
+ * inbound(). The writer calls await() before it writes the next message.
+ * Time is read, and waited for, through a Clock, which tests replace.
+ *
+ * @author jpowers
+ */
+class Pacer {
+	// time a standard message needs on the powerline, per hop
+	private static final long HOP_NANOS = 50 * 1000000L;
+	private static final double MAX_PENALTY = 8.0;
+	private static final double PENALTY_DECAY = 0.8;
+
+	enum MsgClass {
+		DIRECT, EXTENDED, GROUP, X10, MODEM
+	}
+
+	/**
+	 * Where the pacer gets the time from, and how it waits
+	 */
+	static class Clock {
+		long nanoTime() {
+			return System.nanoTime();
+		}
+
+		/**
+		 * Waits on the monitor, which the caller holds, for at most nanos
+		 */
+		void waitOn(Object monitor, long nanos) throws InterruptedException {
+			monitor.wait(nanos / 1000000L, (int) (nanos % 1000000L));
+		}
+	}
+
+	/**
+	 * Smoothed estimate of a time, in nanoseconds
+	 */
+	static class Estimate {
+		private long samples = 0;
+		private double mean = 0;
+		private double deviation = 0;
+
+		void add(long sample) {
+			if (samples++ == 0) {
+				mean = sample;
+				deviation = sample / 2.0;
+			} else {
+				deviation = 0.75 * deviation + 0.25 * Math.abs(sample - mean);
+				mean = 0.875 * mean + 0.125 * sample;
+			}
+		}
+
+		boolean isKnown() {
+			return samples > 0;
+		}
+
+		long mean() {
+			return (long) mean;
+		}
+
+		long upper() {
+			return (long) (mean + 2 * deviation);
+		}
+	}
+
+	private final Clock clock;
+	private boolean adaptive = true;
+
+	private final Estimate[] echo = new Estimate[MsgClass.values().length];
+	private final Estimate[] settle = new Estimate[MsgClass.values().length];
+	private final double[] penalty = new double[MsgClass.values().length];
+	// settle times by (device address << 3) | class
+	private final Map<Long, Estimate> deviceSettle = new HashMap<Long, Estimate>();
+
+	// the window of the last message accepted by the modem
+	private volatile boolean open = false;
+	private OutboundRequest request = null;
+	private MsgClass msgClass = MsgClass.MODEM;
+	private int target = -1;
+	private long start = 0;
+	private long lastHeard = 0;
+	private int hopsLeft = 0;
+	private boolean replied = false;
+	private boolean refused = false;
+
+	private long quietNanos = 0;
+	private CircuitBreaker breaker = null;
+
+	Pacer() {
+		this(new Clock());
+	}
+
+	Pacer(Clock clock) {
+		this.clock = clock;
+		for (int i = 0; i < penalty.length; i++) {
+			echo[i] = new Estimate();
+			settle[i] = new Estimate();
+			penalty[i] = 1.0;
+		}
+	}
+
+	/**
+	 * @param adaptive false to always keep quiet for the full quiet time of a
+	 *                     message
+	 */
+	synchronized void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+
+	/**
+	 * @param breaker told whether the devices answer their direct messages
+	 */
+	synchronized void setCircuitBreaker(CircuitBreaker breaker) {
+		this.breaker = breaker;
+	}
+
+	static MsgClass classify(Msg msg) {
+		switch (msg.getCommandNumber()) {
+			case 0x62:
+				if (msg.isBroadcast()) {
+					return MsgClass.GROUP;
+				}
+				return msg.isExtended() ? MsgClass.EXTENDED : MsgClass.DIRECT;
+			case 0x61:
+				return MsgClass.GROUP;
+			case 0x63:
+				return MsgClass.X10;
+			default:
+				return MsgClass.MODEM;
+		}
+	}
+
+	/**
+	 * Starts the window of a message the modem has accepted, closing the window
+	 * of the previous message
+	 *
+	 * @param request the accepted request
+	 */
+	synchronized void open(OutboundRequest request) {
+		close();
+		this.request = request;
+		Msg msg = request.getMsg();
+		msgClass = classify(msg);
+		boolean direct = msgClass == MsgClass.DIRECT || msgClass == MsgClass.EXTENDED;
+		target = direct ? msg.getAddressInt(Fields.TO_ADDRESS) : -1;
+		start = clock.nanoTime();
+		lastHeard = start;
+		hopsLeft = 0;
+		replied = false;
+		refused = false;
+		long latency = request.getEchoLatency();
+		if (latency >= 0) {
+			echo[msgClass.ordinal()].add(latency);
+		}
+		open = true;
+		notifyAll();
+	}
+
+	/**
+	 * Raises the penalty of the message class of a request that the modem
+	 * refused or did not answer
+	 *
+	 * @param request the request that has to be retransmitted
+	 */
+	synchronized void retransmitting(OutboundRequest request) {
+		raise(classify(request.getMsg()));
+	}
+
+	/**
+	 * Looks at an inbound message, called from the reader thread
+	 *
+	 * @param msg the message
+	 */
+	void inbound(Msg msg) {
+		if (!open) {
+			return;
+		}
+		synchronized (this) {
+			if (target >= 0 && msg.fromAddressInt() == target) {
+				lastHeard = clock.nanoTime();
+				MsgType type = msg.getType();
+				if (type == MsgType.ACK_OF_DIRECT || type == MsgType.NACK_OF_DIRECT) {
+					replied = true;
+					refused |= type == MsgType.NACK_OF_DIRECT;
+					try {
+						hopsLeft = msg.getHopsLeft();
+					} catch (FieldException e) {
+						hopsLeft = 0;
+					}
+				}
+				notifyAll();
+			} else if (msgClass == MsgClass.GROUP && msg.getCommandNumber() == 0x58) {
+				// ALL-Link cleanup status report, the modem is done with the group
+				lastHeard = clock.nanoTime();
+				replied = true;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Blocks until the next message may be written
+	 *
+	 * @param request     the request the modem has accepted last
+	 * @param quietMillis the quiet time of the request, which is the longest the
+	 *                        pacer waits
+	 * @return the time waited, in milliseconds
+	 * @throws InterruptedException
+	 */
+	synchronized long await(OutboundRequest request, long quietMillis) throws InterruptedException {
+		long begin = clock.nanoTime();
+		long limit = begin + quietMillis * 1000000L;
+		long now = begin;
+		// the reader opens the window right after it woke up the writer
+		while (this.request != request && now < limit) {
+			long nanos = limit - now;
+			clock.waitOn(this, nanos);
+			now = clock.nanoTime();
+		}
+		if (this.request == request) {
+			limit = start + quietMillis * 1000000L;
+		}
+		while (now < limit) {
+			long until = adaptive && this.request == request ? Math.min(limit, ready()) : limit;
+			if (now >= until) {
+				break;
+			}
+			long nanos = until - now;
+			clock.waitOn(this, nanos);
+			now = clock.nanoTime();
+		}
+		quietNanos = now - begin;
+		return quietNanos / 1000000L;
+	}
+
+	/**
+	 * @return the smoothed echo latency of the modem, in milliseconds
+	 */
+	synchronized double getEchoLatency(MsgClass c) {
+		return echo[c.ordinal()].mean() / 1000000.0;
+	}
+
+	/**
+	 * @return the quiet time kept after the last message, in milliseconds
+	 */
+	synchronized double getQuietTime() {
+		return quietNanos / 1000000.0;
+	}
+
+	synchronized double getPenalty(MsgClass c) {
+		return penalty[c.ordinal()];
+	}
+
+	/**
+	 * @return the time at which the line is expected to have settled, or
+	 *         Long.MAX_VALUE if that is not known yet
+	 */
+	private long ready() {
+		int c = msgClass.ordinal();
+		switch (msgClass) {
+			case X10:
+				return Long.MAX_VALUE;
+			case MODEM:
+				return start + (long) (echo[c].upper() * penalty[c]);
+			case GROUP:
+				return replied ? lastHeard : Long.MAX_VALUE;
+			default:
+				if (!replied) {
+					return Long.MAX_VALUE;
+				}
+				Estimate e = deviceSettle.get(key(target, msgClass));
+				if (e == null) {
+					e = settle[c];
+				}
+				if (!e.isKnown()) {
+					return Long.MAX_VALUE;
+				}
+				long settled = start + (long) (e.upper() * penalty[c]);
+				return Math.max(settled, lastHeard + HOP_NANOS * (hopsLeft + 1));
+		}
+	}
+
+	/**
+	 * Learns from the window that is closing. Messages from the device that
+	 * arrived after the writer went on still count, so that the next message to
+	 * the device waits for them.
+	 */
+	private void close() {
+		if (!open) {
+			return;
+		}
+		open = false;
+		if (msgClass == MsgClass.DIRECT || msgClass == MsgClass.EXTENDED) {
+			if (breaker != null) {
+				if (replied) {
+					breaker.answered(target);
+				} else {
+					breaker.silent(target);
+				}
+			}
+			if (!replied || refused) {
+				raise(msgClass);
+				return;
+			}
+			long sample = lastHeard - start;
+			settle[msgClass.ordinal()].add(sample);
+			Long key = key(target, msgClass);
+			Estimate e = deviceSettle.get(key);
+			if (e == null) {
+				e = new Estimate();
+				deviceSettle.put(key, e);
+			}
+			e.add(sample);
+		}
+		int c = msgClass.ordinal();
+		penalty[c] = Math.max(1.0, penalty[c] * PENALTY_DECAY);
+	}
+
+	private void raise(MsgClass c) {
+		penalty[c.ordinal()] = Math.min(MAX_PENALTY, penalty[c.ordinal()] * 2);
+	}
+
+	private static Long key(int address, MsgClass c) {
+		return ((long) address << 3) | c.ordinal();
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+
+/**
+ * The requests that wait for a reply from a device, by device address and kind
+ * of reply. The reader thread offers every message it receives, the first
+ * waiting request whose matcher takes the message gets it. Requests waiting on
+ * the same device and kind of reply are tried in the order they were sent, so
+ * two identical requests get their replies in order.
+ *
+ * The time a request waits for its reply counts from when the port writes
+ * it, not from when it is queued: a burst of requests in a low lane can take
+ * many quiet times to go out. Until then only a backstop of the lane's time to
+ * live runs, for a request that is dropped from the queue.
+ *
+ * @author jpowers
+ */
+class PendingReplies {
+
+	// the longest a request waits to be written, for lanes whose messages never expire
+	private static final long MAX_QUEUED_MILLIS = 600000;
+
+	private static class Pending {
+		private final long key;
+		private final int address;
+		private final ReplyMatcher matcher;
+		private final long timeoutMillis;
+		private final CompletableFuture<Msg> future = new CompletableFuture<Msg>();
+		private Msg request = null;
+		private volatile ScheduledFuture<?> timeout = null;
+
+		Pending(int address, ReplyMatcher matcher, long timeoutMillis) {
+			this.key = key(address, matcher.getCommand());
+			this.address = address;
+			this.matcher = matcher;
+			this.timeoutMillis = timeoutMillis;
+		}
+	}
+
+	private final Map<Long, ConcurrentLinkedQueue<Pending>> pending = new ConcurrentHashMap<>();
+	// the requests that have not been written yet
+	private final Map<Msg, Pending> unsent = Collections.synchronizedMap(new IdentityHashMap<Msg, Pending>());
+	private final ScheduledExecutorService timer;
+
+	PendingReplies(ScheduledExecutorService timer) {
+		this.timer = timer;
+	}
+
+	private static long key(int address, byte command) {
+		return ((long) address << 8) | (command & 0xff);
+	}
+
+	/**
+	 * Registers a request whose wait starts right away
+	 *
+	 * @param address      the device the request goes to
+	 * @param matcher      the reply it waits for
+	 * @param timeoutMillis how long to wait for the reply
+	 * @return the future the reply completes, or that fails with a
+	 *         TimeoutException
+	 */
+	CompletableFuture<Msg> register(int address, ReplyMatcher matcher, long timeoutMillis) {
+		Pending p = new Pending(address, matcher, timeoutMillis);
+		add(p);
+		arm(p, timeoutMillis);
+		return p.future;
+	}
+
+	/**
+	 * Registers a request before it is queued, so the reply cannot overtake
+	 * it. The wait for the reply starts when transmitted() is called.
+	 *
+	 * @param request      the request
+	 * @param address      the device the request goes to
+	 * @param matcher      the reply it waits for
+	 * @param timeoutMillis how long to wait for the reply once the request is
+	 *                          written
+	 * @return the future the reply completes, or that fails with a
+	 *         TimeoutException
+	 */
+	CompletableFuture<Msg> register(Msg request, int address, ReplyMatcher matcher, long timeoutMillis) {
+		Pending p = new Pending(address, matcher, timeoutMillis);
+		p.request = request;
+		unsent.put(request, p);
+		add(p);
+		arm(p, Math.min(request.getPriority().getTimeToLiveMillis(), MAX_QUEUED_MILLIS) + timeoutMillis);
+		return p.future;
+	}
+
+	/**
+	 * Starts the wait for the reply to a request registered with
+	 * register(Msg, ...), when the port writes it for the first time
+	 *
+	 * @param request the request written
+	 */
+	void transmitted(Msg request) {
+		if (unsent.isEmpty()) {
+			return;
+		}
+		Pending p = unsent.remove(request);
+		if (p != null && !p.future.isDone()) {
+			p.timeout.cancel(false);
+			arm(p, p.timeoutMillis);
+		}
+	}
+
+	private void add(Pending p) {
+		pending.compute(p.key, (k, q) -> {
+			q = q == null ? new ConcurrentLinkedQueue<Pending>() : q;
+			q.add(p);
+			return q;
+		});
+		// however it ends, the request stops waiting
+		p.future.whenComplete((reply, e) -> remove(p));
+	}
+
+	private void arm(Pending p, long millis) {
+		p.timeout = timer.schedule(() -> p.future.completeExceptionally(new TimeoutException(
+				"no reply from " + Integer.toHexString(p.address) + " in " + p.timeoutMillis + " ms")), millis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	private void remove(Pending p) {
+		ScheduledFuture<?> timeout = p.timeout;
+		if (timeout != null) {
+			timeout.cancel(false);
+		}
+		if (p.request != null) {
+			unsent.remove(p.request);
+		}
+		pending.computeIfPresent(p.key, (k, q) -> {
+			q.remove(p);
+			return q.isEmpty() ? null : q;
+		});
+	}
+
+	/**
+	 * Hands a received message to the first request that waits for it
+	 *
+	 * @param msg the message from the modem
+	 * @return true if a request took the message
+	 */
+	boolean complete(Msg msg) {
+		if (pending.isEmpty()) {
+			return false;
+		}
+		int address = msg.fromAddressInt();
+		if (address < 0) {
+			return false;
+		}
+		ConcurrentLinkedQueue<Pending> queue = pending.get(key(address, (byte) msg.getCommandNumber()));
+		if (queue == null) {
+			return false;
+		}
+		for (Iterator<Pending> i = queue.iterator(); i.hasNext();) {
+			Pending p = i.next();
+			// the caller keeps the reply, so it must not hold on to the frame slab
+			if (p.matcher.matches(msg) && p.future.complete(msg.detach())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of requests waiting for a reply
+	 */
+	int size() {
+		int size = 0;
+		for (ConcurrentLinkedQueue<Pending> queue : pending.values()) {
+			size += queue.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Fails every waiting request, when the port goes down
+	 */
+	void cancelAll() {
+		for (ConcurrentLinkedQueue<Pending> queue : pending.values()) {
+			for (Pending p : queue) {
+				p.future.cancel(false);
+			}
+		}
+		unsent.clear();
+	}
+}
@@ -12,23 +12,31 @@
  */
 package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
 
+import static org.openhab.binding.smartenitzbplm.internal.SmartenItZBPLMBindingConstants.SCHEDULED_POOL;
+
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.smarthome.core.common.ThreadPoolManager;
 
 import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
 import org.openhab.binding.smartenitzbplm.internal.device.DeviceType;
 import org.openhab.binding.smartenitzbplm.internal.device.DeviceTypeLoader;
-import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
 import org.openhab.binding.smartenitzbplm.internal.device.InsteonDevice;
-import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
+import org.openhab.binding.smartenitzbplm.internal.message.Fields;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgListener;
+import org.openhab.binding.smartenitzbplm.internal.message.MsgType;
+import org.openhab.binding.smartenitzbplm.internal.message.Priority;
+import org.openhab.binding.smartenitzbplm.internal.message.types.GetIMInfo;
+import org.openhab.binding.smartenitzbplm.internal.message.types.GetIMInfoReply;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendStandardMessage;
 import org.openhab.binding.smartenitzbplm.thing.listener.ShutdownMsg;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
@@ -49,7 +57,8 @@ import org.slf4j.LoggerFactory;
  * the upper layers (MsgListeners).
  *
  * A write queue is maintained to pace the flow of outgoing messages. Sending
- * messages back-to-back can lead to dropped messages.
+ * messages back-to-back can lead to dropped messages. The queue has a lane per
+ * Priority, so commands from the user do not wait behind polls.
  *
  *
  * @author Bernd Pfrommer
@@ -60,29 +69,56 @@ import org.slf4j.LoggerFactory;
 public class Port {
 	private static final Logger logger = LoggerFactory.getLogger(Port.class);
 
-	/**
-	 * The ReplyType is used to keep track of the state of the serial port receiver
-	 */
-	enum ReplyType {
-		GOT_ACK, WAITING_FOR_ACK, GOT_NACK
-	}
+	// marks the shutdown message on its way through the writer
+	private static final OutboundRequest SHUTDOWN = new OutboundRequest(new ShutdownMsg(), 0);
 
 	private IOStream ioStream = null;
 	private Modem modem = null;
 	private IOStreamReader reader = null;
 	private IOStreamWriter writer = null;
+	// interrupted on stop, or it would wait on the inbound ring forever
+	private volatile Thread readerThread = null;
 
 	private boolean running = false;
 	private boolean modemDBComplete = false;
 	// private MsgFactory msgFactory = null;
 	private ModemDBBuilder modemDBBuilder = null;
 	private DeviceTypeLoader deviceTypeLoader = null;
-	private List<MsgListener> listeners = Collections.synchronizedList(new ArrayList<MsgListener>());
+	// copied on every change, so the reader can deliver without a lock or a copy
+	private volatile MsgListener[] listeners = new MsgListener[0];
+	private final Object listenerLock = new Object();
 
 	private Map<DeviceAddress, ModemDBEntry> modemDBEntries = new ConcurrentHashMap<>();
 
-	private final BlockingQueue<Msg> writeQueue = new LinkedBlockingQueue<Msg>();
+	private final OutboundQueue writeQueue = new OutboundQueue();
+	private volatile long lastCoalesced = 0;
 	private ZBPLMHandler handler;
+	// optional capture of all frames, and the sequence number of the last message
+	// taken off the write queue
+	private volatile FrameCapture capture = null;
+	private volatile long writeSequence = 0;
+	// the request written to the modem and not yet answered, read by the reader
+	// thread to correlate the modem's replies
+	private volatile OutboundRequest inFlight = null;
+	private final ScheduledExecutorService timer = ThreadPoolManager.getScheduledPool(SCHEDULED_POOL);
+	private final Pacer pacer = new Pacer();
+	private final CircuitBreaker breaker = new CircuitBreaker();
+	private final Deduplicator deduplicator = new Deduplicator();
+	private volatile RetransmitPolicy retransmitPolicy = new BackoffPolicy();
+	private long retransmits = 0;
+	private long giveUps = 0;
+	private final GroupBatcher batcher = new GroupBatcher(new GroupBatcher.Sink() {
+		@Override
+		public void send(Msg msg) throws IOException {
+			enqueue(msg);
+		}
+
+		@Override
+		public void failed(Msg msg, IOException e) {
+			handler.logGroupFailed(Port.this.batcher.getFailed());
+		}
+	}, timer);
+	private volatile long lastBatched = 0;
 
 	/**
 	 * Constructor
@@ -101,6 +137,7 @@ public class Port {
 		this.reader = new IOStreamReader();
 		this.writer = new IOStreamWriter();
 		this.deviceTypeLoader = handler.getDeviceTypeLoader();
+		pacer.setCircuitBreaker(breaker);
 	}
 
 	public void setModemDBBuilder(ModemDBBuilder modemDBBuilder) {
@@ -127,23 +164,76 @@ public class Port {
 		return modemDBBuilder;
 	}
 
+	/**
+	 * Starts capturing all frames going in and out of the port
+	 * 
+	 * @param capture the capture to write to, or null to stop capturing
+	 */
+	public void setCapture(FrameCapture capture) {
+		FrameCapture old = this.capture;
+		this.capture = capture;
+		if (old != null) {
+			old.close();
+		}
+	}
+
+	/**
+	 * @param adaptive true to end the quiet time after a message as soon as the
+	 *                 powerline has settled, false to always wait the full quiet
+	 *                 time of the message
+	 */
+	public void setAdaptivePacing(boolean adaptive) {
+		pacer.setAdaptive(adaptive);
+	}
+
+	/**
+	 * @param policy decides when a message the modem refused is sent again
+	 */
+	public void setRetransmitPolicy(RetransmitPolicy policy) {
+		this.retransmitPolicy = policy;
+	}
+
+	/**
+	 * @return the breaker that holds back messages to devices that do not answer
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return breaker;
+	}
+
 	public void setModemDBRetryTimeout(int timeout) {
 		modemDBBuilder.setRetryTimeout(timeout);
 	}
 
 	@Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
 	public void addListener(MsgListener l) {
-		synchronized (listeners) {
-			if (!listeners.contains(l)) {
-				listeners.add(l);
+		synchronized (listenerLock) {
+			MsgListener[] old = listeners;
+			for (MsgListener m : old) {
+				if (m == l) {
+					return;
+				}
 			}
+			MsgListener[] updated = Arrays.copyOf(old, old.length + 1);
+			updated[old.length] = l;
+			listeners = updated;
 		}
 	}
 
+	/**
+	 * Removes a listener. If a message is being delivered right now, the
+	 * listener still gets that message, but none after it.
+	 */
 	public void removeListener(MsgListener l) {
-		synchronized (listeners) {
-			if (listeners.remove(l)) {
-				// logger.debug("removed listener from port");
+		synchronized (listenerLock) {
+			MsgListener[] old = listeners;
+			for (int i = 0; i < old.length; i++) {
+				if (old[i] == l) {
+					MsgListener[] updated = new MsgListener[old.length - 1];
+					System.arraycopy(old, 0, updated, 0, i);
+					System.arraycopy(old, i + 1, updated, i, old.length - i - 1);
+					listeners = updated;
+					return;
+				}
 			}
 		}
 	}
@@ -154,6 +244,7 @@ public class Port {
 	public void clearModemDB() {
 		logger.debug("clearing modem db!");
 		modemDBEntries.clear();
+		batcher.setModemDB(null);
 	}
 
 	/**
@@ -182,7 +273,7 @@ public class Port {
 			return false;
 		}
 
-		 Thread readerThread = new Thread(reader, "ZBPLM Port-reader");
+		 readerThread = new Thread(reader, "ZBPLM Port-reader");
 		 readerThread.start();
 		 Thread writerThread = new Thread(writer, "ZBPLM Port-writer");
 		 writerThread.start();
@@ -209,20 +300,37 @@ public class Port {
 	 */
 	public void stop() {
 		ioStream.close();
+		setCapture(null);
+		Thread t = readerThread;
+		if (t != null) {
+			t.interrupt();
+			readerThread = null;
+		}
 		
 		// delete the remaining write queue, then throw in the shutdown message
 		writeQueue.clear();
-		writeQueue.add(new ShutdownMsg());
+		try {
+			writeQueue.add(new ShutdownMsg(), Priority.INTERACTIVE, System.nanoTime());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		OutboundRequest request = inFlight;
+		if (request != null) {
+			request.cancel();
+		}
 
 		running = false;
-		listeners.clear();
+		synchronized (listenerLock) {
+			listeners = new MsgListener[0];
+		}
 	}
 
 	/**
 	 * Adds message to the write queue
 	 * 
 	 * @param m message to be added to the write queue
-	 * @throws IOException
+	 * @throws IOException if the message is invalid, or the queue is full and
+	 *                     the overflow policy rejected it
 	 */
 	public void writeMessage(Msg m) throws IOException {
 		if (m == null) {
@@ -233,13 +341,67 @@ public class Port {
 			logger.error("trying to write message without data!");
 			throw new IOException("trying to write message without data!");
 		}
+		if (batcher.offer(m)) {
+			logger.debug("holding message for group batching:{}", m);
+			return;
+		}
+		enqueue(m);
+	}
+
+	private void enqueue(Msg m) throws IOException {
+		Priority priority = m.getPriority();
+		logger.debug("offering message ({}):{}", priority, m);
+		int depth;
 		try {
-			logger.debug("offering message:{}", m);
-			writeQueue.offer(m);
-		} catch (IllegalStateException e) {
-			logger.error("cannot write message {}, write queue is full!", m);
+			depth = writeQueue.add(m, priority, System.nanoTime());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for room in the write queue");
+		}
+		logQueue();
+		if (depth == OutboundQueue.REJECTED) {
+			logger.warn("cannot write message {}, write queue is full!", m);
+			throw new IOException("write queue is full");
+		}
+		handler.logLaneDepth(priority, depth);
+		long coalesced = writeQueue.getCoalesced();
+		if (coalesced != lastCoalesced) {
+			lastCoalesced = coalesced;
+			handler.logCoalesced(coalesced);
+		}
+		long batched = batcher.getBatched();
+		if (batched != lastBatched) {
+			lastBatched = batched;
+			handler.logGroupBatched(batched);
 		}
+	}
+
+	/**
+	 * Limits the write queue
+	 * 
+	 * @param capacity the most messages the queue holds
+	 * @param policy   what to do with a message when the queue is full
+	 */
+	public void setQueueLimit(int capacity, OverflowPolicy policy) {
+		writeQueue.setLimit(capacity, policy);
+	}
+
+	/**
+	 * Sets how long on and off commands are held to be sent as group commands
+	 * 
+	 * @param windowMillis the window in milliseconds, 0 to never batch
+	 */
+	public void setGroupWindow(long windowMillis) {
+		batcher.setWindow(windowMillis);
+	}
+
+	private void logRetransmits() {
+		handler.logRetransmits(retransmits, giveUps, breaker.getOpenCircuits(), breaker.getDropped());
+	}
 
+	private void logQueue() {
+		handler.logQueue(writeQueue.size(), writeQueue.oldestAge(System.nanoTime()) / 1000000L,
+				writeQueue.getDrops());
 	}
 
 	/**
@@ -247,6 +409,7 @@ public class Port {
 	 */
 	public void modemDBComplete() {
 		modemDBComplete = true;
+		batcher.setModemDB(modemDBEntries);
 	}
 
 	public Map<DeviceAddress, ModemDBEntry> getModemDBEntries() {
@@ -261,109 +424,133 @@ public class Port {
 	 * 
 	 * @author Bernd Pfrommer
 	 */
-	class IOStreamReader implements Runnable {
-
-		private ReplyType m_reply = ReplyType.GOT_ACK;
-		private Object m_replyLock = new Object();
-
-		/**
-		 * Helper function for implementing synchronization between reader and writer
-		 * 
-		 * @return reference to the RequesReplyLock
-		 */
-		public Object getRequestReplyLock() {
-			return m_replyLock;
-		}
+	class IOStreamReader implements Runnable, InboundRing.Consumer {
+		private static final long STATS_INTERVAL = 1000000000L; // nanoseconds
+
+		// summed stage latencies in nanoseconds since the last flush
+		private long decode = 0;
+		private long queue = 0;
+		private long classify = 0;
+		private long dedupe = 0;
+		private long route = 0;
+		private long events = 0;
+		// the events that were not dropped as copies, the only ones routed
+		private long routed = 0;
+		private long lastFlush = System.nanoTime();
 
 		@Override
 		public void run() {
 			try {
-				for (Msg msg = ioStream.read(); msg != null; msg = ioStream.read()) {
-					toAllListeners(msg);
-					notifyWriter(msg);
-
+				InboundRing inbound = ioStream.getInbound();
+				while (true) {
+					inbound.drain(this);
 				}
 			} catch (InterruptedException e) {
-				logger.info("Interrupted whil waiting for message");
+				logger.info("reader stopped");
 			} catch (Throwable t) {
 				logger.error("Exception thrown, thread exiting", t);
 			}
 		}
 
-
-		private void notifyWriter(Msg msg) {
-			synchronized (getRequestReplyLock()) {
-				if (m_reply == ReplyType.WAITING_FOR_ACK) {
-					if (!msg.isUnsolicited()) {
-						m_reply = (msg.isPureNack() ? ReplyType.GOT_NACK : ReplyType.GOT_ACK);
-						getRequestReplyLock().notify();
-					} else if (msg.isPureNack()) {
-						m_reply = ReplyType.GOT_NACK;
-						getRequestReplyLock().notify();
-					} else {
-						logger.debug("got unsolicited message");
-					}
-				}
+		/**
+		 * Takes a message through the stages of the reader: record it in the
+		 * capture, classify it, drop it if it is a copy delivered by a repeater,
+		 * then route it to the writer, the listeners, the pacer and the circuit
+		 * breaker.
+		 */
+		@Override
+		public void onEvent(Msg msg, long sequence, long arrived, long published, boolean endOfBatch) {
+			long picked = System.nanoTime();
+			decode += published - arrived;
+			queue += picked - published;
+			events++;
+			// the capture holds what was on the wire, copies included
+			FrameCapture c = capture;
+			if (c != null) {
+				c.record(FrameCapture.INBOUND, writeSequence, msg);
+			}
+			long start = System.nanoTime();
+			MsgType type = msg.getType();
+			long classified = System.nanoTime();
+			classify += classified - start;
+			// echoes and replies of the modem itself have no flags and are never repeated
+			boolean duplicate = type != null && deduplicator.isDuplicate(msg, classified);
+			long deduped = System.nanoTime();
+			dedupe += deduped - classified;
+			if (duplicate) {
+				logger.trace("dropping copy #{} from a repeater: {}", sequence, msg);
+			} else {
+				// the writer waits for the echo, the listeners can wait for the writer
+				notifyWriter(msg);
+				toAllListeners(msg);
+				pacer.inbound(msg);
+				breaker.answered(msg.fromAddressInt());
+				route += System.nanoTime() - deduped;
+				routed++;
+			}
+			if (endOfBatch && deduped - lastFlush >= STATS_INTERVAL) {
+				flushStats(deduped);
 			}
 		}
 
-		@SuppressWarnings("unchecked")
-		private void toAllListeners(Msg msg) {
-			// When we deliver the message, the recipient
-			// may in turn call removeListener() or addListener(),
-			// thereby corrupting the very same list we are iterating
-			// through. That's why we make a copy of it, and
-			// iterate through the copy.
-			List<MsgListener> tempList = new ArrayList<MsgListener>();
-			tempList.addAll(listeners);
-
-			for (MsgListener l : tempList) {
-				l.msg(msg, handler); // deliver msg to listener
-			}
+		/**
+		 * Reports the average latency of each stage since the last flush
+		 */
+		private void flushStats(long now) {
+			handler.logPipeline(decode / events / 1000, queue / events / 1000, classify / events / 1000,
+					dedupe / events / 1000, routed == 0 ? 0 : route / routed / 1000, deduplicator.getDropped(),
+					ioStream.getInbound().getDropped());
+			decode = queue = classify = dedupe = route = events = routed = 0;
+			lastFlush = now;
 		}
 
 		/**
-		 * Blocking wait for ack or nack from modem. Called by IOStreamWriter for flow
-		 * control.
-		 * 
-		 * @return true if retransmission is necessary
+		 * Hands the modem's reply to the request in flight. Only the monitor of the
+		 * request is taken, and only if the message is its reply.
 		 */
-		public boolean waitForReply() {
-			m_reply = ReplyType.WAITING_FOR_ACK;
-			while (m_reply == ReplyType.WAITING_FOR_ACK) {
-				try {
-					logger.debug("writer waiting for ack.");
-					// There have been cases observed, in particular for
-					// the Hub, where we get no ack or nack back, causing the binding
-					// to hang in the wait() below, because unsolicited messages
-					// do not trigger a notify(). For this reason we request retransmission
-					// if the wait() times out.
-					synchronized (getRequestReplyLock()) {
-						getRequestReplyLock().wait(10000); // be patient for 30 msec
-					}
-					if (m_reply == ReplyType.WAITING_FOR_ACK) { // timeout expired without getting ACK or NACK
-						logger.trace("writer timeout expired, asking for retransmit!");
-						m_reply = ReplyType.GOT_NACK;
-						break;
-					} else {
-						logger.debug("writer got ack: {}", (m_reply == ReplyType.GOT_ACK));
-					}
-				} catch (InterruptedException e) {
-					break; // done for the day...
+		private void notifyWriter(Msg msg) {
+			OutboundRequest request = inFlight;
+			if (request == null) {
+				if (!msg.isUnsolicited()) {
+					logger.debug("got reply with no request in flight: {}", msg);
+				}
+			} else if (request.matches(msg)) {
+				if (!request.echo(msg)) {
+					logger.debug("got late reply for {}", request);
+				} else if (request.isAccepted()) {
+					pacer.open(request);
 				}
+			} else if (!msg.isUnsolicited()) {
+				logger.debug("reply {} does not match request in flight {}", msg, request);
+			} else {
+				logger.debug("got unsolicited message");
+			}
+		}
+
+		private void toAllListeners(Msg msg) {
+			// When we deliver the message, the recipient may in turn call
+			// removeListener() or addListener(). They publish a new array, the
+			// one we iterate through stays as it is.
+			for (MsgListener l : listeners) {
+				l.msg(msg, handler); // deliver msg to listener
 			}
-			return (m_reply == ReplyType.GOT_NACK);
 		}
 	}
 
 	/**
 	 * Writes messages to the port. Flow control is implemented following Insteon
-	 * documents to avoid over running the modem.
+	 * documents to avoid over running the modem: there is only ever one message
+	 * in flight, i.e. written but not yet echoed by the modem. The next message
+	 * is only taken off the queue once the quiet time of the previous one has
+	 * passed, so until then it can still be overtaken, coalesced or expired.
 	 * 
 	 * @author Bernd Pfrommer
 	 */
 	class IOStreamWriter implements Runnable {
-		private static final int WAIT_TIME = 500; // milliseconds
+		// There have been cases observed, in particular for the Hub, where we get no
+		// ack or nack back. For this reason we request retransmission if no reply
+		// arrived before the deadline.
+		private static final int ECHO_TIMEOUT = 10000; // milliseconds
 
 		@Override
 		public void run() {
@@ -373,36 +560,32 @@ public class Port {
 					try {
 						// this call blocks until the lock on the queue is released
 						logger.trace("writer checking message queue");
-						Msg msg = writeQueue.take();
-						if (msg.getClass().isInstance(ShutdownMsg.class)) {
+						OutboundRequest request = prepare(writeQueue.take());
+						if (request == SHUTDOWN) {
 							// exit the thread we're shutdown
 							logger.info("Exiting writer");
 							return;
 						}
-						if (msg.getData() == null || msg.getCommandNumber() < 0) {
-							logger.error("found null message in write queue!");
+						if (request == null) {
 							continue;
-						} else {
-							logger.debug("writing ({}): {}", msg.getQuietTime(), msg);
-							// To debug race conditions during startup (i.e. make the .items
-							// file definitions be available *before* the modem link records,
-							// slow down the modem traffic with the following statement:
-							// Thread.sleep(500);
-							synchronized (reader.getRequestReplyLock()) {
-								ioStream.write(msg.getData());
-
-							int retryCount = 0;
-							while (reader.waitForReply() &&  retryCount < 3) {
-								Thread.sleep(WAIT_TIME);
-								logger.info("retransmitting msg: {}", msg);
-								ioStream.write(msg.getData());
-								retryCount++;
-							}
-
-							}
-							// if rate limited, need to sleep now.
-							if (msg.getQuietTime() > 0) {
-								Thread.sleep(msg.getQuietTime());
+						}
+						logger.debug("writing ({}): {}", request.getMsg().getQuietTime(), request.getMsg());
+						// To debug race conditions during startup (i.e. make the .items
+						// file definitions be available *before* the modem link records,
+						// slow down the modem traffic with the following statement:
+						// Thread.sleep(500);
+						inFlight = request;
+						transmit(request);
+						complete(request);
+
+						// if rate limited, need to sleep now.
+						long quietTime = request.getMsg().getQuietTime();
+						if (quietTime > 0) {
+							if (request.isAccepted()) {
+								quietTime = pacer.await(request, quietTime);
+								handler.logPacing(request.getEchoLatency() / 1000000.0, quietTime);
+							} else {
+								Thread.sleep(quietTime);
 							}
 						}
 					} catch (InterruptedException e) {
@@ -410,6 +593,7 @@ public class Port {
 						break;
 					} catch (Exception e) {
 						logger.error("got exception in write thread:", e);
+						inFlight = null;
 					}
 				}
 				logger.debug("exiting writer thread!");
@@ -417,6 +601,96 @@ public class Port {
 				logger.error("Exception thrown, thread exiting", t);
 			}
 		}
+
+		/**
+		 * Turns a message taken off the write queue into a request
+		 * 
+		 * @return the request, SHUTDOWN, or null if the message cannot be sent
+		 */
+		private OutboundRequest prepare(OutboundQueue.Entry entry) {
+			Msg msg = entry.getMsg();
+			if (msg instanceof ShutdownMsg) {
+				return SHUTDOWN;
+			}
+			if (msg.getData() == null || msg.getCommandNumber() < 0) {
+				logger.error("found null message in write queue!");
+				return null;
+			}
+			Priority priority = entry.getPriority();
+			if (msg.getCommandNumber() == SendStandardMessage.CMD && !msg.isBroadcast()
+					&& !breaker.allows(msg.getAddressInt(Fields.TO_ADDRESS), priority)) {
+				logger.debug("device does not answer, dropping {}", msg);
+				logRetransmits();
+				return null;
+			}
+			handler.logLaneWait(priority, writeQueue.size(priority), entry.age(System.nanoTime()) / 1000000L);
+			logQueue();
+			return new OutboundRequest(msg, ++writeSequence);
+		}
+
+		/**
+		 * Writes the request to the modem. The deadline is armed before the
+		 * write, so that an echo arriving right away is never lost.
+		 */
+		private void transmit(OutboundRequest request) throws IOException {
+			int attempt = request.getAttempt() + 1;
+			request.sent(timer.schedule(() -> request.expire(attempt), ECHO_TIMEOUT, TimeUnit.MILLISECONDS));
+			Msg msg = request.getMsg();
+			if (attempt == 1) {
+				// the wait for a reply to the message starts now
+				handler.transmitted(msg);
+			}
+			if (msg.getCommandNumber() == SendStandardMessage.CMD && !msg.isBroadcast()) {
+				// the device's answer may be the same as to the last request
+				deduplicator.forget(msg.getAddressInt(Fields.TO_ADDRESS));
+			}
+			ioStream.write(request.getFrame());
+			capture(request.getSequence(), msg);
+		}
+
+		/**
+		 * Waits for the modem to accept the request in flight, retransmitting it
+		 * after a NACK or when the deadline passes
+		 */
+		private void complete(OutboundRequest request) throws InterruptedException, IOException {
+			try {
+				OutboundRequest.Outcome outcome = request.await();
+				long delay = 0;
+				while (outcome != OutboundRequest.Outcome.ACK && inFlight == request
+						&& (delay = retransmitPolicy.nextDelay(request.getMsg(), request.getAttempt())) >= 0) {
+					if (outcome == OutboundRequest.Outcome.TIMEOUT) {
+						logger.trace("writer timeout expired, asking for retransmit!");
+					}
+					pacer.retransmitting(request);
+					retransmits++;
+					logRetransmits();
+					Thread.sleep(delay);
+					logger.info("retransmitting msg after {} ms: {}", delay, request.getMsg());
+					transmit(request);
+					outcome = request.await();
+				}
+				if (outcome == OutboundRequest.Outcome.ACK) {
+					logger.debug("writer got ack after {} us", request.getEchoLatency() / 1000);
+				} else {
+					logger.debug("writer giving up on {}", request);
+					giveUps++;
+					logRetransmits();
+					Msg msg = request.getMsg();
+					if (msg.getCommandNumber() == SendStandardMessage.CMD && !msg.isBroadcast()) {
+						breaker.notSent(msg.getAddressInt(Fields.TO_ADDRESS));
+					}
+				}
+			} finally {
+				inFlight = null;
+			}
+		}
+	}
+
+	private void capture(long sequence, Msg msg) {
+		FrameCapture c = capture;
+		if (c != null) {
+			c.record(FrameCapture.OUTBOUND, sequence, msg);
+		}
 	}
 
 	/**
@@ -437,42 +711,37 @@ public class Port {
 
 		@Override
 		public void msg(Msg msg, ZBPLMHandler handler) {
-			try {
-				if (msg.isPureNack()) {
-					return;
-				}
-				if (msg.getByte("Cmd") == 0x60) {
-					// add the modem to the device list
-					logger.info("getting the modem address from the message");
-					DeviceAddress address = msg.getAddress("IMAddress");
-					logger.info("Modem device addr is:" + address.toString());
-					String prodKey = "0x000045";
-					DeviceType dt = deviceTypeLoader.getDeviceType(prodKey);
-					if (dt == null) {
-						logger.error("unknown modem product key: {} for modem: {}.", prodKey, address);
-					} else {
-						device = InsteonDevice.s_makeDevice(dt);
-						device.setAddress(address);
-						device.setProductKey(prodKey);
-						device.setIsModem(true);
-						device.setHandler(handler);
-						logger.debug("found modem {} in device_types: {}", address, device.toString());
-						modemDBBuilder.updateModemDB(address, Port.this, null);
-						notifyListeners();
-					}
-					// can unsubscribe now
-					removeListener(this);
+			if (msg.isPureNack()) {
+				return;
+			}
+			if (GetIMInfoReply.matches(msg)) {
+				// add the modem to the device list
+				logger.info("getting the modem address from the message");
+				DeviceAddress address = GetIMInfoReply.of(msg).imAddress();
+				logger.info("Modem device addr is:" + address.toString());
+				String prodKey = "0x000045";
+				DeviceType dt = deviceTypeLoader.getDeviceType(prodKey);
+				if (dt == null) {
+					logger.error("unknown modem product key: {} for modem: {}.", prodKey, address);
+				} else {
+					device = InsteonDevice.s_makeDevice(dt);
+					device.setAddress(address);
+					device.setProductKey(prodKey);
+					device.setIsModem(true);
+					device.setHandler(handler);
+					logger.debug("found modem {} in device_types: {}", address, device.toString());
+					modemDBBuilder.updateModemDB(address, Port.this, null);
+					notifyListeners();
 				}
-			} catch (FieldException e) {
-				logger.error("error parsing im info reply field: ", e);
+				// can unsubscribe now
+				removeListener(this);
 			}
 		}
 
 		public void initialize() {
 			try {
 				logger.debug("initializing modem");
-				Msg m = Msg.makeMessage("GetIMInfo");
-				writeMessage(m);
+				writeMessage(GetIMInfo.create().msg());
 			} catch (Throwable e) {
 				logger.error("modem init failed!", e);
 			}
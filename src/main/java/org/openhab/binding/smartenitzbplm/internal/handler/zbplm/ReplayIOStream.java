@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.List;
+
+import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implements IOStream by replaying the inbound frames of a capture written by
+ * FrameCapture. It is selected by giving a port name of the form
+ * <code>replay:/path/to/capture[,speed=N]</code>. A speed of 1 (the default)
+ * keeps the original timing, larger values play the capture back faster, and
+ * "max" feeds the frames in as fast as the MsgFactory takes them. Whatever is
+ * written to the stream is dropped.
+ *
+ * @author jpowers
+ */
+public class ReplayIOStream extends IOStream {
+	private static final Logger logger = LoggerFactory.getLogger(ReplayIOStream.class);
+
+	private final String spec;
+	private final File directory;
+	private final MsgFactory msgFactory;
+	// 0 means as fast as possible
+	private double speed = 1.0;
+	private byte[] frame = new byte[64];
+	private Thread replayThread = null;
+	private volatile boolean running = false;
+	private volatile long framesReplayed = 0;
+
+	public ReplayIOStream(String spec, MsgFactory msgFactory) {
+		this.spec = spec;
+		this.msgFactory = msgFactory;
+		String[] parts = spec.split(",");
+		this.directory = new File(parts[0].trim());
+		for (int i = 1; i < parts.length; i++) {
+			String part = parts[i].trim();
+			if (part.startsWith("speed=")) {
+				String value = part.substring("speed=".length());
+				if ("max".equals(value)) {
+					speed = 0;
+				} else {
+					try {
+						speed = Double.parseDouble(value);
+					} catch (NumberFormatException e) {
+						logger.warn("bad replay speed {}, using original timing", value);
+					}
+				}
+			}
+		}
+
+		msgFactory.setInboundQueue(inboundQueue);
+		msgFactory.start();
+	}
+
+	@Override
+	public String toString() {
+		return "ReplayIOStream [directory=" + directory + ", speed=" + (speed == 0 ? "max" : speed) + "]";
+	}
+
+	@Override
+	public synchronized boolean open() {
+		if (running) {
+			return true;
+		}
+		if (FrameCapture.segments(directory).isEmpty()) {
+			logger.error("no capture found in {}", directory);
+			return false;
+		}
+		running = true;
+		replayThread = new Thread(this::replay, "zbplm replay " + directory.getName());
+		replayThread.setDaemon(true);
+		replayThread.start();
+		return true;
+	}
+
+	@Override
+	public synchronized void close() {
+		running = false;
+		if (replayThread != null) {
+			replayThread.interrupt();
+			replayThread = null;
+		}
+		msgFactory.stop();
+	}
+
+	@Override
+	public String getDeviceName() {
+		return "replay:" + spec;
+	}
+
+	@Override
+	public void write(byte[] b) {
+		logger.trace("replay dropping {} bytes written", b.length);
+	}
+
+	/**
+	 * @return number of inbound frames fed to the MsgFactory so far
+	 */
+	public long getFramesReplayed() {
+		return framesReplayed;
+	}
+
+	private void replay() {
+		List<File> segments = FrameCapture.segments(directory);
+		long firstCaptured = -1;
+		long started = System.nanoTime();
+		try {
+			for (File file : segments) {
+				MappedByteBuffer buffer = FrameCapture.openSegment(file);
+				if (buffer == null) {
+					logger.warn("skipping {}, it is not a capture segment", file);
+					continue;
+				}
+				// nano times are only comparable within one run, so they are turned into
+				// wall clock based times using the segment header
+				long toWallClock = buffer.getLong(8) * 1000000L - buffer.getLong(16);
+				while (running && buffer.remaining() >= FrameCapture.RECORD_HEADER_SIZE) {
+					int length = buffer.getInt();
+					if (length <= 0 || buffer.remaining() < FrameCapture.RECORD_HEADER_SIZE - 4 + length) {
+						break; // end of segment
+					}
+					long captured = buffer.getLong() + toWallClock;
+					byte direction = buffer.get();
+					buffer.getLong(); // sequence
+					if (length > frame.length) {
+						frame = new byte[length];
+					}
+					buffer.get(frame, 0, length);
+					if (direction != FrameCapture.INBOUND) {
+						continue;
+					}
+					if (firstCaptured < 0) {
+						firstCaptured = captured;
+					}
+					if (speed > 0) {
+						long due = started + (long) ((captured - firstCaptured) / speed);
+						long wait = due - System.nanoTime();
+						if (wait > 0) {
+							Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+						}
+					}
+					framesReplayed++;
+					msgFactory.addData(frame, length);
+				}
+			}
+			logger.info("replay of {} finished, {} frames", directory, framesReplayed);
+		} catch (InterruptedException e) {
+			logger.debug("replay interrupted");
+		} catch (IOException e) {
+			logger.error("error reading capture {}", directory, e);
+		}
+	}
+}
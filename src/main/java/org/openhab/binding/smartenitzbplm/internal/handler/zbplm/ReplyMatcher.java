@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.util.function.Predicate;
+
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.types.ExtendedMessageReceived;
+import org.openhab.binding.smartenitzbplm.internal.message.types.StandardMessageReceived;
+
+/**
+ * Describes the reply a request waits for: the kind of message that comes
+ * back from the device the request was sent to (standard or extended, 0x50 or
+ * 0x51), and a test the message has to pass. Pending requests are looked up by
+ * device and kind of message, the test only tells apart the requests that are
+ * waiting on the same device.
+ *
+ * @author jpowers
+ */
+public class ReplyMatcher {
+	private final byte command;
+	private final Predicate<Msg> test;
+
+	public ReplyMatcher(byte command, Predicate<Msg> test) {
+		this.command = command;
+		this.test = test;
+	}
+
+	/**
+	 * @return the message number of the reply
+	 */
+	public byte getCommand() {
+		return command;
+	}
+
+	/**
+	 * @param reply a message from the device the request was sent to
+	 * @return true if it is the reply
+	 */
+	public boolean matches(Msg reply) {
+		return reply.getCommandNumber() == command && test.test(reply);
+	}
+
+	/**
+	 * @param test what else the reply has to pass
+	 * @return a matcher for a standard message from the device
+	 */
+	public static ReplyMatcher standard(Predicate<Msg> test) {
+		return new ReplyMatcher(StandardMessageReceived.CMD, test);
+	}
+
+	/**
+	 * @param test what else the reply has to pass
+	 * @return a matcher for an extended message from the device
+	 */
+	public static ReplyMatcher extended(Predicate<Msg> test) {
+		return new ReplyMatcher(ExtendedMessageReceived.CMD, test);
+	}
+
+	/**
+	 * @param command1 the command1 of the request
+	 * @return a matcher for the ACK of a direct message
+	 */
+	public static ReplyMatcher ackOfDirect(byte command1) {
+		return standard(m -> (m.isAckOfDirect() || m.isNackOfDirect())
+				&& StandardMessageReceived.of(m).command1() == command1);
+	}
+
+	/**
+	 * @return a matcher for the broadcast that answers an id request (0x10)
+	 */
+	public static ReplyMatcher idRequestReply() {
+		return standard(m -> m.isBroadcast() && StandardMessageReceived.of(m).command1() == 0x01);
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+
+/**
+ * Decides whether and when the port writer sends a message again that the
+ * modem refused (NACK) or did not echo before the deadline.
+ *
+ * @author jpowers
+ */
+public interface RetransmitPolicy {
+	/** returned by nextDelay() to give up on the message */
+	long GIVE_UP = -1;
+
+	/**
+	 * Called by the writer thread each time the modem refused a message
+	 *
+	 * @param msg      the message
+	 * @param attempts how often the message has been sent so far
+	 * @return the time to wait before sending it again, in milliseconds, or
+	 *         GIVE_UP
+	 */
+	long nextDelay(Msg msg, int attempts);
+}
@@ -48,15 +48,28 @@ public class SerialIOStream extends IOStream implements SerialPortEventListener
 	private SerialPortManager serialPortManager = null;
 	private SerialPort serialPort = null;
 	private MsgFactory msgFactory = null;
+	private ZBPLMHandler handler = null;
+
+	// receive buffer, reused between data events and only grown when the port
+	// reports more data than it can hold
+	private static final int MIN_READ_BUFFER_SIZE = 64;
+	private static final long STATS_INTERVAL_MILLIS = 1000;
+	private byte[] readBuffer = new byte[MIN_READ_BUFFER_SIZE];
+	private long statsStart = 0;
+	private int statsEvents = 0;
+	private int statsReuses = 0;
+	private long statsBytes = 0;
 	
 	// Note: Be careful who gets to read from this as pending reads will
 	// affect the ability to close the port
 	private InputStream inputStream = null;
 
 
-	public SerialIOStream(SerialPortManager serialPortManager, String devName, int speed, MsgFactory msgFactory) {
+	public SerialIOStream(SerialPortManager serialPortManager, String devName, int speed, MsgFactory msgFactory,
+			ZBPLMHandler handler) {
 		this.serialPortManager = serialPortManager;
 		this.msgFactory = msgFactory;
+		this.handler = handler;
 		this.portName = devName;
 		this.baudRate = speed;
 		
@@ -178,17 +191,27 @@ public class SerialIOStream extends IOStream implements SerialPortEventListener
 		if(SerialPortEvent.DATA_AVAILABLE == event.getEventType()) {
 			try {
 				int available = inputStream.available();
-				byte buffer[] = new byte[64];
-				
+				if (available <= 0) {
+					return;
+				}
+				boolean reused = available <= readBuffer.length;
+				if (!reused) {
+					readBuffer = new byte[Integer.highestOneBit(available - 1) << 1];
+				}
+				// read the whole span the port has for us in one go
 				int totalRead = 0;
 				while (totalRead < available) {
-					int read = inputStream.read(buffer);
-					logger.trace("Read {} bytes", read);
-					// Big reads from the modem seem to kill things, so we'll just read through and
-					// wait for it to calm down
-					msgFactory.addData(buffer, read);
+					int read = inputStream.read(readBuffer, totalRead, available - totalRead);
+					if (read <= 0) {
+						break;
+					}
 					totalRead += read;
 				}
+				logger.trace("Read {} bytes", totalRead);
+				if (totalRead > 0) {
+					msgFactory.addData(readBuffer, totalRead);
+				}
+				updateReceiveStats(totalRead, reused);
 			} catch (IOException e) {
 				logger.error("Error reading from the input stream", e);
 			} 
@@ -197,4 +220,31 @@ public class SerialIOStream extends IOStream implements SerialPortEventListener
 
 	}
 
+	/**
+	 * Keeps track of read sizes, buffer reuse and event frequency, and reports
+	 * them to the handler about once a second
+	 */
+	private void updateReceiveStats(int bytesRead, boolean reused) {
+		long now = System.currentTimeMillis();
+		if (statsStart == 0) {
+			statsStart = now;
+		}
+		statsEvents++;
+		statsBytes += bytesRead;
+		if (reused) {
+			statsReuses++;
+		}
+		long elapsed = now - statsStart;
+		if (elapsed >= STATS_INTERVAL_MILLIS) {
+			if (handler != null) {
+				handler.logReceiveStats((double) statsBytes / statsEvents, 100.0 * statsReuses / statsEvents,
+						1000.0 * statsEvents / elapsed);
+			}
+			statsStart = now;
+			statsEvents = 0;
+			statsReuses = 0;
+			statsBytes = 0;
+		}
+	}
+
 }
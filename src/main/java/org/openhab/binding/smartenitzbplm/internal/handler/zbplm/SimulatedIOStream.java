@@ -0,0 +1,355 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.openhab.binding.smartenitzbplm.internal.SmartenItZBPLMBindingConstants.SCHEDULED_POOL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.smarthome.core.common.ThreadPoolManager;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implements IOStream by simulating a modem with a population of virtual
+ * devices behind it, so the binding can be load tested without any hardware.
+ * It is selected by giving a port name starting with "sim:", followed by a
+ * comma separated list of settings, for example
+ * <code>sim:devices=500,ack=0.98,nak=0.01,latency=40,hops=3,duplicates=2,traffic=5,seed=1</code>
+ *
+ * <ul>
+ * <li>devices: number of virtual devices, cycling through switch, dimmer,
+ * thermostat and IOLinc</li>
+ * <li>ack: probability that a device answers a direct message</li>
+ * <li>nak: probability that the modem itself refuses a message</li>
+ * <li>latency: powerline latency per hop, in milliseconds</li>
+ * <li>hops: max hops used by the devices</li>
+ * <li>duplicates: number of ALL-Link broadcast retransmits</li>
+ * <li>traffic: unsolicited ALL-Link broadcasts per second</li>
+ * <li>seed: seed for the random generator, to make runs repeatable</li>
+ * </ul>
+ *
+ * Frames are built following the lengths in msg_definitions.xml and are fed
+ * to the real MsgFactory, so everything above the stream runs unchanged. The
+ * modem link database holds a controller and a responder record for every
+ * device.
+ *
+ * @author jpowers
+ */
+public class SimulatedIOStream extends IOStream {
+	private static final Logger logger = LoggerFactory.getLogger(SimulatedIOStream.class);
+
+	private static final byte ACK = 0x06;
+	private static final byte NACK = 0x15;
+	private static final byte[] MODEM_ADDRESS = new byte[] { 0x44, (byte) 0x85, 0x11 };
+
+	enum DeviceKind {
+		SWITCH(0x02, 0x2a),
+		DIMMER(0x01, 0x20),
+		THERMOSTAT(0x05, 0x0b),
+		IOLINC(0x07, 0x00);
+
+		final byte category;
+		final byte subCategory;
+
+		DeviceKind(int category, int subCategory) {
+			this.category = (byte) category;
+			this.subCategory = (byte) subCategory;
+		}
+	}
+
+	static class VirtualDevice {
+		final byte[] address;
+		final DeviceKind kind;
+		byte level = 0;
+
+		VirtualDevice(byte[] address, DeviceKind kind) {
+			this.address = address;
+			this.kind = kind;
+		}
+	}
+
+	private final String spec;
+	private final MsgFactory msgFactory;
+	private final ScheduledExecutorService scheduler = ThreadPoolManager.getScheduledPool(SCHEDULED_POOL);
+
+	private int deviceCount = 10;
+	private double ackProbability = 1.0;
+	private double nakProbability = 0.0;
+	private long latencyMillis = 40;
+	private int maxHops = 3;
+	private int duplicates = 0;
+	private double trafficPerSecond = 0;
+	private Random random = new Random();
+
+	private final List<VirtualDevice> devices = new ArrayList<VirtualDevice>();
+	private final Map<Integer, VirtualDevice> devicesByAddress = new HashMap<Integer, VirtualDevice>();
+	private final List<byte[]> linkRecords = new ArrayList<byte[]>();
+	private int nextLinkRecord = 0;
+	private volatile boolean open = false;
+	private ScheduledFuture<?> trafficJob = null;
+
+	public SimulatedIOStream(String spec, MsgFactory msgFactory) {
+		this.spec = spec;
+		this.msgFactory = msgFactory;
+		parse(spec);
+		populate();
+
+		msgFactory.setInboundQueue(inboundQueue);
+		msgFactory.start();
+	}
+
+	@Override
+	public String toString() {
+		return "SimulatedIOStream [devices=" + deviceCount + ", ack=" + ackProbability + ", nak=" + nakProbability
+				+ ", latency=" + latencyMillis + ", hops=" + maxHops + ", duplicates=" + duplicates + ", traffic="
+				+ trafficPerSecond + "]";
+	}
+
+	@Override
+	public synchronized boolean open() {
+		open = true;
+		if (trafficPerSecond > 0 && !devices.isEmpty()) {
+			long period = Math.max(1, (long) (1000000 / trafficPerSecond));
+			trafficJob = scheduler.scheduleAtFixedRate(this::sendBroadcast, period, period, TimeUnit.MICROSECONDS);
+		}
+		logger.info("Opened {}", this);
+		return true;
+	}
+
+	@Override
+	public synchronized void close() {
+		open = false;
+		if (trafficJob != null) {
+			trafficJob.cancel(false);
+			trafficJob = null;
+		}
+		msgFactory.stop();
+	}
+
+	@Override
+	public String getDeviceName() {
+		return "sim:" + spec;
+	}
+
+	/**
+	 * Plays the modem: answers the message right away with an echo, and has the
+	 * addressed device respond after the powerline latency.
+	 */
+	@Override
+	public void write(byte[] b) {
+		if (!open || b.length < 2 || b[0] != 0x02) {
+			return;
+		}
+		byte cmd = b[1];
+		if (cmd == 0x60) {
+			deliver(imInfo());
+			return;
+		}
+		boolean isExtended = cmd == 0x62 && b.length > 5 && (b[5] & 0x10) != 0;
+		if (Msg.getMessageLength(cmd, isExtended) != b.length + 1) {
+			// the modem does not know what to make of it
+			deliver(new byte[] { NACK });
+			return;
+		}
+		if (cmd == 0x69 || cmd == 0x6a) {
+			linkRecord(b, cmd == 0x69);
+			return;
+		}
+		boolean refused = chance(nakProbability);
+		deliver(echo(b, refused ? NACK : ACK));
+		if (refused) {
+			return;
+		}
+		if (cmd == 0x62) {
+			directMessage(b);
+		} else if (cmd == 0x61) {
+			byte[] status = new byte[] { 0x02, 0x58, ACK };
+			deliverLater(status, latencyMillis * maxHops);
+		}
+	}
+
+	private void parse(String spec) {
+		for (String setting : spec.split(",")) {
+			String[] kv = setting.split("=", 2);
+			if (kv.length != 2) {
+				continue;
+			}
+			String key = kv[0].trim();
+			String value = kv[1].trim();
+			try {
+				switch (key) {
+					case "devices":
+						deviceCount = Integer.parseInt(value);
+						break;
+					case "ack":
+						ackProbability = Double.parseDouble(value);
+						break;
+					case "nak":
+						nakProbability = Double.parseDouble(value);
+						break;
+					case "latency":
+						latencyMillis = Long.parseLong(value);
+						break;
+					case "hops":
+						maxHops = Math.max(0, Math.min(3, Integer.parseInt(value)));
+						break;
+					case "duplicates":
+						duplicates = Integer.parseInt(value);
+						break;
+					case "traffic":
+						trafficPerSecond = Double.parseDouble(value);
+						break;
+					case "seed":
+						random = new Random(Long.parseLong(value));
+						break;
+					default:
+						logger.warn("unknown simulator setting {}", key);
+				}
+			} catch (NumberFormatException e) {
+				logger.warn("bad value for simulator setting {}: {}", key, value);
+			}
+		}
+	}
+
+	private void populate() {
+		DeviceKind[] kinds = DeviceKind.values();
+		for (int i = 0; i < deviceCount; i++) {
+			int id = i + 1;
+			byte[] address = new byte[] { 0x20, (byte) (id >> 8), (byte) id };
+			VirtualDevice device = new VirtualDevice(address, kinds[i % kinds.length]);
+			devices.add(device);
+			devicesByAddress.put(key(address, 0), device);
+			// modem controls the device in group 0, and responds to its group 1
+			linkRecords.add(new byte[] { 0x02, 0x57, (byte) 0xe2, 0x00, address[0], address[1], address[2],
+					device.kind.category, device.kind.subCategory, 0x41 });
+			linkRecords.add(new byte[] { 0x02, 0x57, (byte) 0xa2, 0x01, address[0], address[1], address[2],
+					device.kind.category, device.kind.subCategory, 0x41 });
+		}
+	}
+
+	private byte[] imInfo() {
+		return new byte[] { 0x02, 0x60, MODEM_ADDRESS[0], MODEM_ADDRESS[1], MODEM_ADDRESS[2], 0x03, 0x15, 0x41, ACK };
+	}
+
+	private synchronized void linkRecord(byte[] request, boolean first) {
+		if (first) {
+			nextLinkRecord = 0;
+		}
+		if (nextLinkRecord >= linkRecords.size()) {
+			deliver(echo(request, NACK));
+			return;
+		}
+		deliver(echo(request, ACK));
+		deliver(linkRecords.get(nextLinkRecord++));
+	}
+
+	private void directMessage(byte[] b) {
+		VirtualDevice device = devicesByAddress.get(key(b, 2));
+		if (device == null || !chance(ackProbability)) {
+			return; // nobody home, or lost on the powerline
+		}
+		byte cmd1 = b[6];
+		byte cmd2 = b[7];
+		byte replyCmd2 = cmd2;
+		synchronized (device) {
+			switch (cmd1) {
+				case 0x11:
+					device.level = cmd2;
+					break;
+				case 0x12:
+					device.level = (byte) 0xff;
+					break;
+				case 0x13:
+				case 0x14:
+					device.level = 0;
+					break;
+				case 0x19:
+					// status reply: ALL-Link database delta in cmd1, level in cmd2
+					cmd1 = 0x00;
+					replyCmd2 = device.level;
+					break;
+				default:
+					break;
+			}
+		}
+		int hopsLeft = maxHops == 0 ? 0 : random.nextInt(maxHops + 1);
+		long delay = latencyMillis * (maxHops - hopsLeft + 1);
+		byte ackFlags = (byte) (0x20 | (hopsLeft << 2) | maxHops);
+		deliverLater(standardMessage(device.address, MODEM_ADDRESS, ackFlags, cmd1, replyCmd2), delay);
+		if (b[6] == 0x10) {
+			// id request, the device answers with a SET button pressed broadcast
+			byte[] devInfo = new byte[] { device.kind.category, device.kind.subCategory, 0x41 };
+			byte flags = (byte) (0x80 | (hopsLeft << 2) | maxHops);
+			deliverLater(standardMessage(device.address, devInfo, flags, (byte) 0x01, (byte) 0x00),
+					delay + latencyMillis);
+		}
+	}
+
+	/**
+	 * Picks a random device and has it send an ALL-Link broadcast to group 1,
+	 * plus the configured number of retransmits
+	 */
+	private void sendBroadcast() {
+		VirtualDevice device = devices.get(random.nextInt(devices.size()));
+		byte cmd1 = random.nextBoolean() ? (byte) 0x11 : (byte) 0x13;
+		byte[] group = new byte[] { 0x00, 0x00, 0x01 };
+		for (int i = 0; i <= duplicates; i++) {
+			int hopsLeft = Math.max(0, maxHops - i);
+			byte flags = (byte) (0xc0 | (hopsLeft << 2) | maxHops);
+			deliverLater(standardMessage(device.address, group, flags, cmd1, (byte) 0x00), latencyMillis * i);
+		}
+	}
+
+	private static byte[] standardMessage(byte[] from, byte[] to, byte flags, byte cmd1, byte cmd2) {
+		return new byte[] { 0x02, 0x50, from[0], from[1], from[2], to[0], to[1], to[2], flags, cmd1, cmd2 };
+	}
+
+	private static byte[] echo(byte[] request, byte ackNack) {
+		byte[] reply = Arrays.copyOf(request, request.length + 1);
+		reply[request.length] = ackNack;
+		return reply;
+	}
+
+	private static int key(byte[] data, int offset) {
+		return ((data[offset] & 0xff) << 16) | ((data[offset + 1] & 0xff) << 8) | (data[offset + 2] & 0xff);
+	}
+
+	private boolean chance(double probability) {
+		return probability >= 1.0 || (probability > 0.0 && random.nextDouble() < probability);
+	}
+
+	private void deliverLater(byte[] frame, long delayMillis) {
+		if (delayMillis <= 0) {
+			deliver(frame);
+		} else {
+			scheduler.schedule(() -> deliver(frame), delayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void deliver(byte[] frame) {
+		if (open) {
+			msgFactory.addData(frame, frame.length);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.thing.listener.InsteonMsgListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands messages to the listeners on a small shared pool instead of a thread
+ * per listener. The listeners are spread over a fixed number of stripes by the
+ * address of their device. Each stripe is a queue that at most one pool thread
+ * drains at a time, so a listener gets its messages one after the other and in
+ * the order they arrived, while listeners on different stripes run in
+ * parallel. A stripe gives its thread back after a batch, so a busy stripe
+ * does not keep the others from the pool.
+ *
+ * @author jpowers
+ */
+class StripedDispatcher {
+	private static final Logger logger = LoggerFactory.getLogger(StripedDispatcher.class);
+
+	private static final int BATCH = 64;
+
+	private static class Delivery {
+		private final InsteonMsgListener listener;
+		private final Msg msg;
+
+		Delivery(InsteonMsgListener listener, Msg msg) {
+			this.listener = listener;
+			this.msg = msg;
+		}
+	}
+
+	private class Stripe implements Runnable {
+		private final ConcurrentLinkedQueue<Delivery> queue = new ConcurrentLinkedQueue<Delivery>();
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		void add(Delivery d) {
+			queue.add(d);
+			schedule();
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (int n = 0; n < BATCH; n++) {
+					Delivery d = queue.poll();
+					if (d == null) {
+						break;
+					}
+					try {
+						d.listener.onMessage(d.msg);
+					} catch (RuntimeException e) {
+						logger.error("Exception thrown by message listener {}", d.listener.getAddress(), e);
+					}
+				}
+			} finally {
+				// also after an Error, or the stripe would never be run again
+				scheduled.set(false);
+				// a message may have come in after the last poll
+				if (!queue.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+	}
+
+	private final Executor executor;
+	private final Stripe[] stripes;
+
+	/**
+	 * @param executor the pool that runs the listeners
+	 * @param stripes  the number of stripes, the most listeners that run at once
+	 */
+	StripedDispatcher(Executor executor, int stripes) {
+		this.executor = executor;
+		this.stripes = new Stripe[Math.max(1, stripes)];
+		for (int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Queues a message for a listener, returns right away
+	 *
+	 * @param listener the listener
+	 * @param msg      the message
+	 */
+	void dispatch(InsteonMsgListener listener, Msg msg) {
+		stripes[stripe(listener)].add(new Delivery(listener, msg));
+	}
+
+	int stripe(InsteonMsgListener listener) {
+		DeviceAddress address = listener.getAddress();
+		int h = address == null ? 0 : address.toInt();
+		// addresses of one product line share their high bytes, mix them in
+		h = (h ^ (h >>> 16)) * 0x45d9f3b;
+		h ^= h >>> 16;
+		return (h & 0x7fffffff) % stripes.length;
+	}
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implements IOStream for modems that are reachable over TCP, like the raw port
+ * of an Insteon Hub (9761) or a serial port shared with ser2net.
+ *
+ * A single selector thread does all the socket work. Received bytes go
+ * straight into the MsgFactory, and writes only copy the message into a
+ * bounded outbound buffer, so the Port writer thread never blocks on the
+ * network. When the connection drops, the selector thread reconnects in the
+ * background with an increasing back off. A connect that does not complete
+ * within CONNECT_TIMEOUT_MILLIS is given up and retried the same way.
+ *
+ * @author jpowers
+ */
+public class TcpIOStream extends IOStream {
+	private static final Logger logger = LoggerFactory.getLogger(TcpIOStream.class);
+	private static final int READ_BUFFER_SIZE = 1024;
+	private static final int OUTBOUND_BUFFER_SIZE = 4096;
+	private static final long CONNECT_TIMEOUT_MILLIS = 5000;
+	private static final long MIN_RECONNECT_DELAY_MILLIS = 1000;
+	private static final long MAX_RECONNECT_DELAY_MILLIS = 30000;
+
+	private final String host;
+	private final int port;
+	private final MsgFactory msgFactory;
+
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	// guarded by itself, kept in "write" mode between flushes
+	private final ByteBuffer outbound = ByteBuffer.allocate(OUTBOUND_BUFFER_SIZE);
+
+	private Selector selector = null;
+	private SocketChannel channel = null;
+	private Thread selectorThread = null;
+	private volatile boolean running = false;
+	private volatile boolean connected = false;
+	private volatile boolean writePending = false;
+	private long reconnectDelay = MIN_RECONNECT_DELAY_MILLIS;
+	private long reconnectAt = 0;
+	private long connectDeadline = 0;
+
+	public TcpIOStream(String host, int port, MsgFactory msgFactory) {
+		this.host = host;
+		this.port = port;
+		this.msgFactory = msgFactory;
+
+		msgFactory.setInboundQueue(inboundQueue);
+		msgFactory.start();
+	}
+
+	@Override
+	public String toString() {
+		return "TcpIOStream [host=" + host + ", port=" + port + "]";
+	}
+
+	@Override
+	public boolean open() {
+		synchronized (this) {
+			if (running) {
+				return connected;
+			}
+			try {
+				selector = Selector.open();
+			} catch (IOException e) {
+				logger.error("Unable to open selector for {}", this, e);
+				return false;
+			}
+			running = true;
+			reconnectDelay = MIN_RECONNECT_DELAY_MILLIS;
+			connect();
+			selectorThread = new Thread(this::selectLoop, "zbplm tcp " + host + ":" + port);
+			selectorThread.setDaemon(true);
+			selectorThread.start();
+		}
+
+		// the first connect is waited for, so the port goes online with a working
+		// connection. Everything after that happens in the background.
+		long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+		synchronized (this) {
+			while (!connected && System.currentTimeMillis() < deadline) {
+				try {
+					wait(Math.max(1, deadline - System.currentTimeMillis()));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		if (!connected) {
+			logger.warn("Unable to connect to {}:{}", host, port);
+			close();
+		}
+		return connected;
+	}
+
+	@Override
+	public void close() {
+		Thread thread;
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			running = false;
+			thread = selectorThread;
+			selectorThread = null;
+			selector.wakeup();
+		}
+		if (thread != null && thread != Thread.currentThread()) {
+			try {
+				thread.join(CONNECT_TIMEOUT_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		msgFactory.stop();
+		logger.info("{} closed.", this);
+	}
+
+	@Override
+	public String getDeviceName() {
+		return host + ":" + port;
+	}
+
+	/**
+	 * Queues the data for the selector thread. Never blocks; if the outbound
+	 * buffer is full or the connection is down, the data is dropped and the
+	 * missing reply will make the Port retransmit.
+	 */
+	@Override
+	public void write(byte[] b) {
+		if (!connected) {
+			logger.debug("not connected to {}, dropping {} bytes", getDeviceName(), b.length);
+			return;
+		}
+		synchronized (outbound) {
+			if (outbound.remaining() < b.length) {
+				logger.warn("outbound buffer for {} full, dropping {} bytes", getDeviceName(), b.length);
+				return;
+			}
+			outbound.put(b);
+		}
+		writePending = true;
+		Selector s = selector;
+		if (s != null) {
+			s.wakeup();
+		}
+	}
+
+	private void selectLoop() {
+		try {
+			while (running) {
+				long timeout = 0;
+				if (channel == null) {
+					timeout = Math.max(1, reconnectAt - System.currentTimeMillis());
+				} else if (!connected) {
+					timeout = Math.max(1, connectDeadline - System.currentTimeMillis());
+				}
+				selector.select(timeout);
+				if (!running) {
+					break;
+				}
+				if (channel == null) {
+					if (System.currentTimeMillis() >= reconnectAt) {
+						connect();
+					}
+					continue;
+				}
+				if (writePending && connected) {
+					writePending = false;
+					SelectionKey key = channel.keyFor(selector);
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+				}
+				for (SelectionKey key : selector.selectedKeys()) {
+					try {
+						if (key.isValid() && key.isConnectable()) {
+							finishConnect(key);
+						}
+						if (key.isValid() && key.isReadable()) {
+							readAvailable();
+						}
+						if (key.isValid() && key.isWritable()) {
+							flush(key);
+						}
+					} catch (IOException e) {
+						logger.warn("connection to {} failed: {}", getDeviceName(), e.getMessage());
+						disconnect();
+					}
+				}
+				selector.selectedKeys().clear();
+				if (channel != null && !connected && System.currentTimeMillis() >= connectDeadline) {
+					logger.warn("connect to {} timed out", getDeviceName());
+					disconnect();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.error("selector thread for {} died", getDeviceName(), e);
+		} finally {
+			disconnect();
+			try {
+				selector.close();
+			} catch (IOException e) {
+				logger.trace("error closing selector", e);
+			}
+			running = false;
+		}
+	}
+
+	private void connect() {
+		try {
+			logger.debug("Connecting to [{}:{}]", host, port);
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			connectDeadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+			if (channel.connect(new InetSocketAddress(host, port))) {
+				channel.register(selector, SelectionKey.OP_READ);
+				connected();
+			} else {
+				channel.register(selector, SelectionKey.OP_CONNECT);
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.debug("connect to {} failed: {}", getDeviceName(), e.getMessage());
+			disconnect();
+		}
+	}
+
+	private void finishConnect(SelectionKey key) throws IOException {
+		if (channel.finishConnect()) {
+			key.interestOps(SelectionKey.OP_READ);
+			connected();
+		}
+	}
+
+	private void connected() {
+		logger.info("Connected to {}", getDeviceName());
+		reconnectDelay = MIN_RECONNECT_DELAY_MILLIS;
+		synchronized (this) {
+			connected = true;
+			notifyAll();
+		}
+	}
+
+	private void readAvailable() throws IOException {
+		readBuffer.clear();
+		int read = channel.read(readBuffer);
+		if (read < 0) {
+			throw new IOException("connection closed by peer");
+		}
+		if (read > 0) {
+			logger.trace("Read {} bytes", read);
+			msgFactory.addData(readBuffer.array(), read);
+		}
+	}
+
+	private void flush(SelectionKey key) throws IOException {
+		synchronized (outbound) {
+			outbound.flip();
+			try {
+				channel.write(outbound);
+			} finally {
+				outbound.compact();
+			}
+			if (outbound.position() == 0) {
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+	}
+
+	/**
+	 * Drops the current connection and schedules a reconnect
+	 */
+	private void disconnect() {
+		connected = false;
+		synchronized (outbound) {
+			outbound.clear();
+		}
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.trace("error closing channel", e);
+			}
+			channel = null;
+		}
+		reconnectAt = System.currentTimeMillis() + reconnectDelay;
+		reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MILLIS);
+	}
+}
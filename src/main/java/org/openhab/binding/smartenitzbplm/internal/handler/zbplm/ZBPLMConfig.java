@@ -4,4 +4,15 @@ public class ZBPLMConfig {
 	public String zbplm_port;
 	public Integer zbplm_baud;
 	public Integer zbplm_flowcontrol;
+	public String zbplm_host;
+	public Integer zbplm_tcp_port;
+	public String zbplm_capture_dir;
+	public Boolean zbplm_crc_check;
+	public Boolean zbplm_adaptive_pacing;
+	public Integer zbplm_queue_capacity;
+	public String zbplm_queue_overflow;
+	public Integer zbplm_group_window;
+	public String zbplm_retransmit;
+	public Integer zbplm_retry_budget;
+	public String zbplm_wait_strategy;
 }
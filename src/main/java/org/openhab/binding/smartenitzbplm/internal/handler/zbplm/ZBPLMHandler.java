@@ -2,14 +2,14 @@ package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
 
 import static org.openhab.binding.smartenitzbplm.internal.SmartenItZBPLMBindingConstants.*;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Collection;
-import java.util.Map;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.smarthome.core.common.ThreadPoolManager;
 import org.eclipse.smarthome.core.library.types.DecimalType;
@@ -24,11 +24,12 @@ import org.eclipse.smarthome.io.transport.serial.SerialPortManager;
 import org.openhab.binding.smartenitzbplm.internal.device.DeviceTypeLoader;
 import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
 import org.openhab.binding.smartenitzbplm.internal.device.InsteonDevice;
+import org.openhab.binding.smartenitzbplm.internal.message.Fields;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgListener;
+import org.openhab.binding.smartenitzbplm.internal.message.Priority;
 import org.openhab.binding.smartenitzbplm.thing.listener.InsteonMsgListener;
-import org.openhab.binding.smartenitzbplm.thing.listener.ShutdownMsg;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,13 +51,18 @@ public class ZBPLMHandler extends BaseBridgeHandler implements MsgListener {
 	private DeviceTypeLoader deviceTypeLoader;
 	private ZBPLMConfig config = null;
 	private ExecutorService executorService = ThreadPoolManager.getPool(COMMAND_POOL);
+	private static final long PORT_RETRY_SECONDS = 30;
+	private volatile boolean disposed = false;
+	private volatile ScheduledFuture<?> portRetry = null;
+	private final PendingReplies pendingReplies = new PendingReplies(ThreadPoolManager.getScheduledPool(SCHEDULED_POOL));
 
 	public ExecutorService getExecutorService() {
 		return executorService;
 	}
 
-	// holds the queues for the message listners so they don't block the world
-	private Map<InsteonMsgListener, BlockingQueue<Msg>> messageQueues = new ConcurrentHashMap<>();
+	// runs the listeners so they don't block the world
+	private final MsgRouter router = new MsgRouter(
+			new StripedDispatcher(ThreadPoolManager.getPool(DISPATCH_POOL), DISPATCH_STRIPES));
 
 	public ZBPLMHandler(Bridge bridge, SerialPortManager serialPortManager, DeviceTypeLoader deviceTypeLoader) {
 		super(bridge);
@@ -72,23 +78,71 @@ public class ZBPLMHandler extends BaseBridgeHandler implements MsgListener {
 	@Override
 	public void initialize() {
 		//this.executorService = ForkJoinPool.commonPool();
-		this.ioStream = new SerialIOStream(serialPortManager, config.zbplm_port, config.zbplm_baud, msgFactory);
+		if (config.zbplm_host != null && !config.zbplm_host.trim().isEmpty()) {
+			int tcpPort = config.zbplm_tcp_port != null ? config.zbplm_tcp_port : 9761;
+			this.ioStream = new TcpIOStream(config.zbplm_host.trim(), tcpPort, msgFactory);
+		} else if (config.zbplm_port != null && config.zbplm_port.startsWith("sim:")) {
+			this.ioStream = new SimulatedIOStream(config.zbplm_port.substring(4), msgFactory);
+		} else if (config.zbplm_port != null && config.zbplm_port.startsWith("replay:")) {
+			this.ioStream = new ReplayIOStream(config.zbplm_port.substring(7), msgFactory);
+		} else {
+			this.ioStream = new SerialIOStream(serialPortManager, config.zbplm_port, config.zbplm_baud, msgFactory,
+					this);
+		}
+		this.ioStream.setWaitStrategy(InboundRing.WaitStrategy.parse(config.zbplm_wait_strategy));
+		msgFactory.setCrcCheck(config.zbplm_crc_check != null && config.zbplm_crc_check);
+		msgFactory.setScheduler(ThreadPoolManager.getScheduledPool(SCHEDULED_POOL));
 		this.port = new Port(this);
 		this.port.addListener(this);
+		this.port.setAdaptivePacing(config.zbplm_adaptive_pacing == null || config.zbplm_adaptive_pacing);
+		int queueCapacity = config.zbplm_queue_capacity != null ? config.zbplm_queue_capacity : 500;
+		this.port.setQueueLimit(queueCapacity, OverflowPolicy.parse(config.zbplm_queue_overflow));
+		this.port.setGroupWindow(config.zbplm_group_window != null ? config.zbplm_group_window : 0);
+		BackoffPolicy retransmit = new BackoffPolicy();
+		retransmit.setBudget(config.zbplm_retry_budget != null ? config.zbplm_retry_budget : 20);
+		try {
+			retransmit.configure(config.zbplm_retransmit);
+		} catch (IllegalArgumentException e) {
+			logger.error("Ignoring invalid retransmit setting {}: {}", config.zbplm_retransmit, e.getMessage());
+		}
+		this.port.setRetransmitPolicy(retransmit);
+		if (config.zbplm_capture_dir != null && !config.zbplm_capture_dir.trim().isEmpty()) {
+			try {
+				this.port.setCapture(new FrameCapture(new File(config.zbplm_capture_dir.trim())));
+			} catch (IOException e) {
+				logger.error("Unable to capture modem traffic to {}", config.zbplm_capture_dir, e);
+			}
+		}
 
 		this.port.setModemDBBuilder(new ModemDBBuilder(this));
 		this.port.setModemDBRetryTimeout(120000); // TODO: JWP add config
 
-		final Port port = this.port;
+		disposed = false;
+		startPort(this.port);
+	}
+
+	/**
+	 * Starts the port, and keeps trying every PORT_RETRY_SECONDS until the modem
+	 * can be opened or the handler is disposed
+	 */
+	private void startPort(final Port port) {
 		executorService.execute(new Runnable() {
 
 			@Override
 			public void run() {
-				port.start();
+				if (disposed || port.start()) {
+					return;
+				}
+				logger.warn("Unable to open {}, retrying in {} seconds", ioStream, PORT_RETRY_SECONDS);
+				portRetry = scheduler.schedule(new Runnable() {
 
+					@Override
+					public void run() {
+						startPort(port);
+					}
+				}, PORT_RETRY_SECONDS, TimeUnit.SECONDS);
 			}
 		});
-
 	}
 
 	public void setPortStatus(boolean up) {
@@ -100,56 +154,42 @@ public class ZBPLMHandler extends BaseBridgeHandler implements MsgListener {
 		}
 	}
 
+	/**
+	 * Adds a listener for the messages from the device at its address
+	 * 
+	 * @param listener the listener
+	 */
 	public void addInsteonMsgListener(final InsteonMsgListener listener) {
-		BlockingQueue<Msg> msgQueue = new LinkedBlockingDeque<Msg>();
-		messageQueues.put(listener, msgQueue);
-
-		Runnable msgRunnable = new Runnable() {
-			@Override
-			public void run() {
-				try {
-					while (true) {
-						Msg msg = null;
-						try {
-							msg = msgQueue.take();
-							if (msg == null || ShutdownMsg.class.isInstance(msg)) {
-								return;
-							}
-							// Pass the message off to the listener
-							listener.onMessage(msg);
-						} catch (InterruptedException e) {
-							logger.warn("Message dispatcher interrupted");
-						}
-
-					}
-				} catch (Throwable t) {
-					logger.error("Exception throw in msg dispatch thread", t);
-				}
+		router.add(listener);
+	}
 
-			}
-		};
-		Thread listenerThread = new Thread(msgRunnable, listener.getAddress() + ": message thread");
-		listenerThread.start();
+	/**
+	 * Adds a listener for every message, including the replies of the modem
+	 * 
+	 * @param listener the listener
+	 */
+	public void addAllMessagesListener(final InsteonMsgListener listener) {
+		router.addAllMessages(listener);
 	}
-	
+
+	/**
+	 * Removes a listener. Messages that were already dispatched to it are still
+	 * delivered.
+	 * 
+	 * @param listener the listener
+	 */
 	public void removeInsteonMsgListener(InsteonMsgListener listener) {
-		BlockingQueue<Msg> queue = messageQueues.get(listener);
-		if(queue == null) {
-			// nothing to do here, move along
-			return;
-		}
-		
-		queue.add(new ShutdownMsg());
-		messageQueues.remove(listener);
-		
+		router.remove(listener);
 	}
 
+	/**
+	 * Hands a message to the listeners of the device it is from, and to the
+	 * listeners of every message
+	 */
 	@Override
 	public void msg(Msg msg, ZBPLMHandler handler) {
-		Collection<BlockingQueue<Msg>> values = messageQueues.values();
-		for (BlockingQueue<Msg> queue : values) {
-			queue.offer(msg);
-		}
+		pendingReplies.complete(msg);
+		router.route(msg);
 	}
 
 	public void sendMsg(Msg msg) {
@@ -161,6 +201,43 @@ public class ZBPLMHandler extends BaseBridgeHandler implements MsgListener {
 		}
 	}
 
+	/**
+	 * Sends a message to a device and waits for its reply. The future is
+	 * completed on the reader thread of the port, callers that do more than a
+	 * little work with the reply should continue on an executor of their own,
+	 * e.g. with thenAcceptAsync().
+	 * 
+	 * @param msg           the message, addressed to a device
+	 * @param matcher       the reply to wait for
+	 * @param timeoutMillis how long to wait for the reply, counted from when the
+	 *                      port writes the message
+	 * @return the reply, or a future that fails with a TimeoutException, or with
+	 *         the IOException if the message could not be written
+	 */
+	public CompletableFuture<Msg> sendAndAwait(Msg msg, ReplyMatcher matcher, long timeoutMillis) {
+		int address = msg.getAddressInt(Fields.TO_ADDRESS);
+		if (address < 0) {
+			CompletableFuture<Msg> failed = new CompletableFuture<Msg>();
+			failed.completeExceptionally(new IOException("message has no device to reply: " + msg));
+			return failed;
+		}
+		CompletableFuture<Msg> reply = pendingReplies.register(msg, address, matcher, timeoutMillis);
+		try {
+			updateState(MODEM_BYTES_SENT, new DecimalType(msg.getData().length));
+			port.writeMessage(msg);
+		} catch (IOException e) {
+			reply.completeExceptionally(e);
+		}
+		return reply;
+	}
+
+	/**
+	 * Called by the port when it writes a message for the first time
+	 */
+	void transmitted(Msg msg) {
+		pendingReplies.transmitted(msg);
+	}
+
 	public void logBytesReceived(long bytesCount) {
 		updateState(MODEM_BYTES_RECEIVED, new DecimalType(bytesCount));
 	}
@@ -168,6 +245,72 @@ public class ZBPLMHandler extends BaseBridgeHandler implements MsgListener {
 	public void logMsgBufferSize(long bufferSize) {
 		updateState(MODEM_MSG_BUFFER_SIZE, new DecimalType(bufferSize));
 	}
+
+	public void logReceiveStats(double averageReadSize, double bufferReusePercent, double eventsPerSecond) {
+		updateState(MODEM_RX_READ_SIZE, new DecimalType(averageReadSize));
+		updateState(MODEM_RX_BUFFER_REUSE, new DecimalType(bufferReusePercent));
+		updateState(MODEM_RX_EVENT_RATE, new DecimalType(eventsPerSecond));
+	}
+
+	public void logResyncStats(long discardedBytes, long resyncEvents, long resyncMillis) {
+		updateState(MODEM_DISCARDED_BYTES, new DecimalType(discardedBytes));
+		updateState(MODEM_RESYNC_EVENTS, new DecimalType(resyncEvents));
+		updateState(MODEM_RESYNC_TIME, new DecimalType(resyncMillis));
+	}
+
+	public void logCrcErrors(long crcErrors) {
+		updateState(MODEM_CRC_ERRORS, new DecimalType(crcErrors));
+	}
+
+	public void logLaneDepth(Priority priority, int depth) {
+		updateState(MODEM_LANE_DEPTH + priority.name().toLowerCase(), new DecimalType(depth));
+	}
+
+	public void logLaneWait(Priority priority, int depth, long waitMillis) {
+		logLaneDepth(priority, depth);
+		updateState(MODEM_LANE_WAIT + priority.name().toLowerCase(), new DecimalType(waitMillis));
+	}
+
+	public void logQueue(int depth, long oldestMillis, long drops) {
+		updateState(MODEM_QUEUE_DEPTH, new DecimalType(depth));
+		updateState(MODEM_QUEUE_OLDEST, new DecimalType(oldestMillis));
+		updateState(MODEM_QUEUE_DROPS, new DecimalType(drops));
+	}
+
+	public void logCoalesced(long coalesced) {
+		updateState(MODEM_COALESCED, new DecimalType(coalesced));
+	}
+
+	public void logRetransmits(long retransmits, long giveUps, int openCircuits, long circuitDrops) {
+		updateState(MODEM_RETRANSMITS, new DecimalType(retransmits));
+		updateState(MODEM_RETRY_GIVEUPS, new DecimalType(giveUps));
+		updateState(MODEM_OPEN_CIRCUITS, new DecimalType(openCircuits));
+		updateState(MODEM_CIRCUIT_DROPS, new DecimalType(circuitDrops));
+	}
+
+	public void logGroupBatched(long batched) {
+		updateState(MODEM_GROUP_BATCHED, new DecimalType(batched));
+	}
+
+	public void logGroupFailed(long failed) {
+		updateState(MODEM_GROUP_FAILED, new DecimalType(failed));
+	}
+
+	public void logPipeline(long decodeMicros, long queueMicros, long classifyMicros, long dedupeMicros,
+			long routeMicros, long deduplicated, long inboundDrops) {
+		updateState(MODEM_STAGE_LATENCY + "decode", new DecimalType(decodeMicros));
+		updateState(MODEM_STAGE_LATENCY + "queue", new DecimalType(queueMicros));
+		updateState(MODEM_STAGE_LATENCY + "classify", new DecimalType(classifyMicros));
+		updateState(MODEM_STAGE_LATENCY + "dedupe", new DecimalType(dedupeMicros));
+		updateState(MODEM_STAGE_LATENCY + "route", new DecimalType(routeMicros));
+		updateState(MODEM_DEDUPLICATED, new DecimalType(deduplicated));
+		updateState(MODEM_INBOUND_DROPS, new DecimalType(inboundDrops));
+	}
+
+	public void logPacing(double echoLatencyMillis, long quietTimeMillis) {
+		updateState(MODEM_ECHO_LATENCY, new DecimalType(echoLatencyMillis));
+		updateState(MODEM_QUIET_TIME, new DecimalType(quietTimeMillis));
+	}
 	
 	
 	public Bridge getBridge() {
@@ -180,6 +323,12 @@ public class ZBPLMHandler extends BaseBridgeHandler implements MsgListener {
 
 	@Override
 	public void dispose() {
+		disposed = true;
+		ScheduledFuture<?> retry = portRetry;
+		if (retry != null) {
+			retry.cancel(false);
+		}
+		pendingReplies.cancelAll();
 		if (this.port != null) {
 			Runnable stopRunnable = new Runnable() {
 				
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.message;
+
+/**
+ * The two checksums used by extended Insteon messages, computed directly on a
+ * frame array. All offsets are the offset of the command1 byte, which is
+ * followed by command2 and the 14 user data bytes.
+ *
+ * The older 1-byte checksum is the two's complement of the sum of command1,
+ * command2 and userData1-13, stored in userData14.
+ *
+ * The newer 2-byte checksum runs command1, command2 and userData1-12 through a
+ * 16 bit feedback shift register, and stores the result in userData13/14. The
+ * register is linear, so instead of stepping it bit by bit the effect of a
+ * whole byte is looked up in three tables: one for the high register byte,
+ * one for the low register byte and one for the data byte.
+ *
+ * Which of the two a message carries depends on the device: i2cs devices use
+ * the 2-byte checksum, older ones the 1-byte checksum. A message is only ever
+ * checked against the checksum of its device, as random user data passes
+ * either check far more often than both.
+ *
+ * @author jpowers
+ */
+public final class Crc {
+    private static final int USER_DATA13 = 14;
+    private static final int USER_DATA14 = 15;
+
+    private static final int[] CRC2_HIGH = new int[256];
+    private static final int[] CRC2_LOW = new int[256];
+    private static final int[] CRC2_DATA = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            CRC2_HIGH[i] = crc2Byte(i << 8, 0);
+            CRC2_LOW[i] = crc2Byte(i, 0);
+            CRC2_DATA[i] = crc2Byte(0, i);
+        }
+    }
+
+    private Crc() {
+    }
+
+    /**
+     * Computes the 1-byte checksum
+     *
+     * @param data the frame
+     * @param offset offset of command1
+     * @return the checksum
+     */
+    public static int crc1(byte[] data, int offset) {
+        int sum = 0;
+        for (int i = offset; i < offset + USER_DATA14; i++) {
+            sum += data[i];
+        }
+        return (-sum) & 0xff;
+    }
+
+    /**
+     * Computes the 2-byte checksum
+     *
+     * @param data the frame
+     * @param offset offset of command1
+     * @return the checksum
+     */
+    public static int crc2(byte[] data, int offset) {
+        int crc = 0;
+        for (int i = offset; i < offset + USER_DATA13; i++) {
+            crc = CRC2_HIGH[crc >>> 8] ^ CRC2_LOW[crc & 0xff] ^ CRC2_DATA[data[i] & 0xff];
+        }
+        return crc;
+    }
+
+    /**
+     * Stores the 1-byte checksum in userData14
+     *
+     * @param data the frame
+     * @param offset offset of command1
+     * @return the checksum
+     */
+    public static int setCrc1(byte[] data, int offset) {
+        int crc = crc1(data, offset);
+        data[offset + USER_DATA14] = (byte) crc;
+        return crc;
+    }
+
+    /**
+     * Stores the 2-byte checksum in userData13 and userData14
+     *
+     * @param data the frame
+     * @param offset offset of command1
+     * @return the checksum
+     */
+    public static int setCrc2(byte[] data, int offset) {
+        int crc = crc2(data, offset);
+        data[offset + USER_DATA13] = (byte) (crc >> 8);
+        data[offset + USER_DATA14] = (byte) crc;
+        return crc;
+    }
+
+    /**
+     * Checks the 1-byte checksum of an extended message
+     *
+     * @param data the frame
+     * @param offset offset of command1
+     * @return true if userData14 holds the 1-byte checksum
+     */
+    public static boolean isValidCrc1(byte[] data, int offset) {
+        return (data[offset + USER_DATA14] & 0xff) == crc1(data, offset);
+    }
+
+    /**
+     * Checks the 2-byte checksum of an extended message
+     *
+     * @param data the frame
+     * @param offset offset of command1
+     * @return true if userData13/14 hold the 2-byte checksum
+     */
+    public static boolean isValidCrc2(byte[] data, int offset) {
+        int crc = ((data[offset + USER_DATA13] & 0xff) << 8) | (data[offset + USER_DATA14] & 0xff);
+        return crc == crc2(data, offset);
+    }
+
+    /**
+     * Steps the shift register through the 8 bits of a byte, lsb first. This is
+     * the definition of the checksum, only used to fill the tables.
+     */
+    private static int crc2Byte(int crc, int b) {
+        for (int bit = 0; bit < 8; bit++) {
+            int fb = (b ^ (crc >> 15) ^ (crc >> 14) ^ (crc >> 12) ^ (crc >> 3)) & 0x01;
+            crc = ((crc << 1) | fb) & 0xffff;
+            b = b >> 1;
+        }
+        return crc;
+    }
+}
@@ -32,6 +32,7 @@ public final class Field {
     private final String name;
     private final int offset;
     private final DataType type;
+    private final int slot;
 
     public String getName() {
         return name;
@@ -45,10 +46,18 @@ public final class Field {
         return type;
     }
 
+    /**
+     * @return the slot of the field name, see {@link Fields}
+     */
+    public int getSlot() {
+        return slot;
+    }
+
     public Field(String name, DataType type, int off) {
         this.name = name;
         this.type = type;
         this.offset = off;
+        this.slot = Fields.slot(name);
     }
 
     private void check(int arrayLen, DataType t) throws FieldException {
@@ -74,17 +83,21 @@ public final class Field {
     }
 
     public String toString(byte[] array) {
+        return toString(array, 0, array.length);
+    }
+
+    public String toString(byte[] array, int base, int length) {
         String s = name + ":";
         try {
             switch (type) {
                 case BYTE:
-                    s += Utils.getHexByte(getByte(array));
+                    s += Utils.getHexByte(getByte(array, base, length));
                     break;
                 case INT:
-                    s += Integer.toString(getInt(array));
+                    s += Integer.toString(getInt(array, base, length));
                     break;
                 case ADDRESS:
-                    s += getAddress(array).toString();
+                    s += getAddress(array, base, length).toString();
                     break;
                 default:
                     break;
@@ -166,8 +179,20 @@ public final class Field {
      * @return the byte value of the field
      */
     public byte getByte(byte[] array) throws FieldException {
-        check(array.length, DataType.BYTE);
-        return array[offset];
+        return getByte(array, 0, array.length);
+    }
+
+    /**
+     * Fetch a byte from a message that starts at a given position in the array
+     * 
+     * @param array the array to fetch from
+     * @param base the position of the first message byte in the array
+     * @param length the length of the message
+     * @return the byte value of the field
+     */
+    public byte getByte(byte[] array, int base, int length) throws FieldException {
+        check(length, DataType.BYTE);
+        return array[base + offset];
     }
 
     /**
@@ -177,11 +202,23 @@ public final class Field {
      * @return the int value of the field
      */
     public int getInt(byte[] array) throws FieldException {
-        check(array.length, DataType.INT);
-        byte b1 = array[offset];
-        byte b2 = array[offset + 1];
-        byte b3 = array[offset + 2];
-        byte b4 = array[offset + 3];
+        return getInt(array, 0, array.length);
+    }
+
+    /**
+     * Fetch an int from a message that starts at a given position in the array
+     * 
+     * @param array the array to fetch from
+     * @param base the position of the first message byte in the array
+     * @param length the length of the message
+     * @return the int value of the field
+     */
+    public int getInt(byte[] array, int base, int length) throws FieldException {
+        check(length, DataType.INT);
+        byte b1 = array[base + offset];
+        byte b2 = array[base + offset + 1];
+        byte b3 = array[base + offset + 2];
+        byte b4 = array[base + offset + 3];
         int value = ((b1 << 24) + (b2 << 16) + (b3 << 8) + (b4 << 0));
         return value;
     }
@@ -194,8 +231,20 @@ public final class Field {
      */
 
     public DeviceAddress getAddress(byte[] array) throws FieldException {
-        check(array.length, DataType.ADDRESS);
-        return DeviceAddressFactory.fromBytes(array, offset);
+        return getAddress(array, 0, array.length);
+    }
+
+    /**
+     * Fetch an insteon address from a message that starts at a given position in the array
+     * 
+     * @param array the array to fetch from
+     * @param base the position of the first message byte in the array
+     * @param length the length of the message
+     * @return the address
+     */
+    public DeviceAddress getAddress(byte[] array, int base, int length) throws FieldException {
+        check(length, DataType.ADDRESS);
+        return DeviceAddressFactory.fromBytes(array, base + offset);
     }
 
     /**
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.message;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of message field names. Every distinct field name gets a small
+ * integer slot, and every MsgDefinition keeps its fields in an array indexed by
+ * that slot. Accessing a field through one of the constants below, e.g.
+ * <code>msg.getByte(Fields.COMMAND1)</code>, is a plain array lookup, without
+ * any hashing or string compares.
+ *
+ * Names that are only found in msg_definitions.xml get their slot when the
+ * definitions are loaded.
+ *
+ * Code that knows the type of a message uses the generated classes in the
+ * types package instead. Slots are for code that reads the same field from
+ * several message types, e.g. command1 of a standard or an extended message,
+ * or that takes the field name from the device feature definitions.
+ *
+ * @author jpowers
+ */
+public final class Fields {
+    private static final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+    private static volatile String[] names = new String[0];
+
+    public static final int CMD = slot("Cmd");
+    public static final int FROM_ADDRESS = slot("fromAddress");
+    public static final int TO_ADDRESS = slot("toAddress");
+    public static final int MESSAGE_FLAGS = slot("messageFlags");
+    public static final int COMMAND1 = slot("command1");
+    public static final int COMMAND2 = slot("command2");
+    public static final int USER_DATA1 = slot("userData1");
+    public static final int USER_DATA2 = slot("userData2");
+    public static final int USER_DATA3 = slot("userData3");
+    public static final int USER_DATA4 = slot("userData4");
+    public static final int USER_DATA5 = slot("userData5");
+    public static final int USER_DATA6 = slot("userData6");
+    public static final int USER_DATA7 = slot("userData7");
+    public static final int USER_DATA8 = slot("userData8");
+    public static final int USER_DATA9 = slot("userData9");
+    public static final int USER_DATA10 = slot("userData10");
+    public static final int USER_DATA11 = slot("userData11");
+    public static final int USER_DATA12 = slot("userData12");
+    public static final int USER_DATA13 = slot("userData13");
+    public static final int USER_DATA14 = slot("userData14");
+    public static final int ACK_NACK = slot("ACK/NACK");
+    public static final int RAW_X10 = slot("rawX10");
+    public static final int X10_FLAG = slot("X10Flag");
+    public static final int IM_ADDRESS = slot("IMAddress");
+    public static final int ALL_LINK_GROUP = slot("ALLLinkGroup");
+    public static final int RECORD_FLAGS = slot("RecordFlags");
+    public static final int LINK_ADDR = slot("LinkAddr");
+    public static final int LINK_DATA1 = slot("LinkData1");
+    public static final int LINK_DATA2 = slot("LinkData2");
+    public static final int LINK_DATA3 = slot("LinkData3");
+
+    private Fields() {
+    }
+
+    /**
+     * Finds the slot of a field name, assigning a new one if the name has not
+     * been seen before
+     *
+     * @param name field name
+     * @return the slot
+     */
+    public static int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            return slot;
+        }
+        synchronized (Fields.class) {
+            slot = slots.get(name);
+            if (slot == null) {
+                String[] n = Arrays.copyOf(names, names.length + 1);
+                slot = names.length;
+                n[slot] = name;
+                names = n;
+                slots.put(name, slot);
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * Finds the slot of a field name
+     *
+     * @param name field name
+     * @return the slot, or -1 if no message has a field of that name
+     */
+    public static int lookup(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @param slot the slot
+     * @return the field name of a slot
+     */
+    public static String name(int slot) {
+        String[] n = names;
+        return slot >= 0 && slot < n.length ? n[slot] : "#" + slot;
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.message;
+
+import java.util.Collection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Describes the framing of a message coming from the modem: how long its
+ * header is, how long the whole message is, and which template to use to
+ * decode it. The specs are kept in a table indexed by command byte and
+ * extended flag, so finding the frame length of an incoming message needs
+ * neither hashing nor allocation.
+ *
+ * @author jpowers
+ */
+public final class FrameSpec {
+    private static final Logger logger = LoggerFactory.getLogger(FrameSpec.class);
+
+    // [command & 0xff][extended ? 1 : 0], built from the templates loaded by Msg
+    private static final FrameSpec[][] specs = build(Msg.getTemplates());
+
+    private final int headerLength;
+    private final int messageLength;
+    private final int ackNackOffset;
+    private final Msg template;
+
+    private FrameSpec(Msg template) {
+        this.template = template;
+        this.headerLength = template.getHeaderLength();
+        this.messageLength = template.getLength();
+        Field ackNack = template.getDefinition().getField(Fields.ACK_NACK);
+        this.ackNackOffset = ackNack == null ? -1 : ackNack.getOffset();
+    }
+
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    public int getMessageLength() {
+        return messageLength;
+    }
+
+    /**
+     * @return offset of the ACK/NACK byte, or -1 if the message has none
+     */
+    public int getAckNackOffset() {
+        return ackNackOffset;
+    }
+
+    public Msg getTemplate() {
+        return template;
+    }
+
+    /**
+     * Finds the spec of a message from the modem
+     *
+     * @param cmd        the command byte
+     * @param isExtended if the message is an extended one
+     * @return the spec, or null if no such message is known
+     */
+    public static FrameSpec lookup(byte cmd, boolean isExtended) {
+        return specs[cmd & 0xff][isExtended ? 1 : 0];
+    }
+
+    /**
+     * Finds a spec for a command before it is known if the message is extended.
+     * All variants of a command share the same header, so any of them tells the
+     * header length.
+     *
+     * @param cmd the command byte
+     * @return a spec for the command, or null if no such command is known
+     */
+    public static FrameSpec lookup(byte cmd) {
+        FrameSpec[] s = specs[cmd & 0xff];
+        return s[0] != null ? s[0] : s[1];
+    }
+
+    /**
+     * Builds the table from the message templates
+     *
+     * @param templates all known message templates
+     * @return the table
+     */
+    private static FrameSpec[][] build(Collection<Msg> templates) {
+        FrameSpec[][] specs = new FrameSpec[256][2];
+        for (Msg m : templates) {
+            if (m.getDirection() != Msg.Direction.FROM_MODEM) {
+                continue;
+            }
+            int cmd = m.getCommandNumber() & 0xff;
+            int ext = m.isExtended() ? 1 : 0;
+            if (specs[cmd][ext] != null) {
+                logger.error("*** Replymap already contains a command {}", m.getCommandNumber());
+            }
+            specs[cmd][ext] = new FrameSpec(m);
+        }
+        return specs;
+    }
+}
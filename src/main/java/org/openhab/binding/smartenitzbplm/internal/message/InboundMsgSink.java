@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.message;
+
+/**
+ * Receives the messages the MsgFactory decodes from the modem's bytes. The
+ * factory calls it from one thread at a time.
+ *
+ * @author jpowers
+ */
+public interface InboundMsgSink {
+    /**
+     * Takes a message, waiting for room if need be
+     *
+     * @param msg the message
+     * @param arrivedNanos System.nanoTime() when its bytes arrived
+     * @return false if the message was dropped because there was no room
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    boolean publish(Msg msg, long arrivedNanos) throws InterruptedException;
+}
@@ -14,13 +14,16 @@ package org.openhab.binding.smartenitzbplm.internal.message;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeSet;
 
 import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddressFactory;
 import org.openhab.binding.smartenitzbplm.internal.utils.Utils;
 import org.openhab.binding.smartenitzbplm.internal.utils.Utils.ParsingException;
 import org.slf4j.Logger;
@@ -71,17 +74,25 @@ public class Msg {
 
     // has the structure of all known messages
     private static final HashMap<String, Msg> msgMap = new HashMap<String, Msg>();
-    // maps between command number and the length of the header
-    private static final HashMap<Byte, Integer> headerMap = new HashMap<Byte, Integer>();
-    // has templates for all message from modem to host
-    private static final HashMap<ReplyToKey, Msg> replyMap = new HashMap<ReplyToKey, Msg>();
 
     private int m_headerLength = -1;
-    private byte[] m_data = null;
+    // inbound messages are views into a shared frame slab, so the message
+    // bytes are m_data[m_offset] to m_data[m_offset + m_length - 1]. A view
+    // is read-only, which makes it safe to hand to other threads.
+    private final byte[] m_data;
+    private final int m_offset;
+    private final int m_length;
     private MsgDefinition m_definition = new MsgDefinition();
     private Direction m_direction = Direction.TO_MODEM;
     private long m_quietTime = 1000;
+    private Priority m_priority = null;
     private String name = null;
+    // the message flags byte, decoded on first use by the classification
+    // methods. FLAGS_UNKNOWN until then, FLAGS_NONE if there is no such field.
+    // A racing thread may decode them again, that does no harm.
+    private int m_flags = FLAGS_UNKNOWN;
+    private static final int FLAGS_UNKNOWN = -1;
+    private static final int FLAGS_NONE = -2;
 
     /**
      * Constructor
@@ -92,9 +103,15 @@ public class Msg {
      * @param dir direction of the message (from/to modem)
      */
     public Msg(int headerLength, byte[] data, int dataLength, Direction dir) {
+        this(headerLength, Arrays.copyOf(data, dataLength), 0, dataLength, dir);
+    }
+
+    private Msg(int headerLength, byte[] data, int offset, int length, Direction dir) {
         m_headerLength = headerLength;
+        m_data = data;
+        m_offset = offset;
+        m_length = length;
         m_direction = dir;
-        initialize(data, 0, dataLength);
     }
 
     /**
@@ -106,7 +123,9 @@ public class Msg {
     public Msg(Msg m) {
     	this.name = m.name;
         m_headerLength = m.m_headerLength;
-        m_data = m.m_data.clone();
+        m_data = Arrays.copyOfRange(m.m_data, m.m_offset, m.m_offset + m.m_length);
+        m_offset = 0;
+        m_length = m_data.length;
         // the message definition usually doesn't change, but just to be sure...
         m_definition = new MsgDefinition(m.m_definition);
         m_direction = m.m_direction;
@@ -129,8 +148,6 @@ public class Msg {
         } catch (FieldException e) {
             logger.error("got field exception while parsing xml insteon message definitions", e);
         }
-        buildHeaderMap();
-        buildLengthMap();
     }
 
     //
@@ -140,7 +157,8 @@ public class Msg {
     /**
      * Experience has shown that if Insteon messages are sent in close succession,
      * only the first one will make it. The quiet time parameter says how long to
-     * wait after a message before the next one can be sent.
+     * wait after a message before the next one can be sent. With adaptive
+     * pacing it is the longest the port waits, see Pacer.
      * 
      * @return the time (in milliseconds) to pause after message has been sent
      */
@@ -148,12 +166,51 @@ public class Msg {
         return m_quietTime;
     }
 
+    /**
+     * Returns the raw message bytes. For an inbound message that is a view into
+     * a shared frame slab, this is a copy of the bytes.
+     * 
+     * @return array holding exactly the message bytes
+     */
     public byte[] getData() {
+        if (isView()) {
+            return Arrays.copyOfRange(m_data, m_offset, m_offset + m_length);
+        }
         return m_data;
     }
 
     public int getLength() {
-        return m_data.length;
+        return m_length;
+    }
+
+    /**
+     * Copies the raw message bytes into a buffer without detaching the message
+     * 
+     * @param buffer buffer to write to, must have getLength() bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(m_data, m_offset, m_length);
+    }
+
+    /**
+     * Inbound messages share their bytes with other messages cut from the same
+     * frame slab. A slab is never written again once a message has been cut from
+     * it, and the views cannot be changed, so they are passed between threads
+     * as they are. Anybody who keeps an inbound message for longer than it takes
+     * to process it should keep the result of detach() instead, so that the slab
+     * can be garbage collected.
+     * 
+     * @return this message if it owns its bytes, otherwise a copy that does
+     */
+    public Msg detach() {
+        return isView() ? new Msg(this) : this;
+    }
+
+    /**
+     * @return true if this message is a view into a shared frame slab
+     */
+    public boolean isView() {
+        return m_data != null && (m_offset != 0 || m_length != m_data.length);
     }
 
     public int getHeaderLength() {
@@ -169,30 +226,16 @@ public class Msg {
     }
 
     public byte getCommandNumber() {
-        return ((m_data == null || m_data.length < 2) ? -1 : m_data[1]);
+        return ((m_data == null || m_length < 2) ? -1 : m_data[m_offset + 1]);
     }
 
     public boolean isPureNack() {
-        return (m_data.length == 2 && m_data[1] == 0x15);
+        return (m_length == 2 && m_data[m_offset + 1] == 0x15);
     }
 
     public boolean isExtended() {
-        if (m_data == null || getLength() < 2) {
-            return false;
-        }
-        if (m_definition == null) {
-            return false;
-        }
-        if (!m_definition.containsField("messageFlags")) {
-            return (false);
-        }
-        try {
-            byte flags = getByte("messageFlags");
-            return ((flags & 0x10) == 0x10);
-        } catch (FieldException e) {
-            // do nothing
-        }
-        return false;
+        int flags = flags();
+        return flags >= 0 && (flags & 0x10) == 0x10;
     }
 
     public boolean isUnsolicited() {
@@ -205,38 +248,68 @@ public class Msg {
         return isPureNack() || !isUnsolicited();
     }
 
+    /**
+     * @return the type from the message flags, or null if the message has no flags
+     */
+    public MsgType getType() {
+        int flags = flags();
+        return flags < 0 ? null : MsgType.fromFlags(flags);
+    }
+
     public boolean isOfType(MsgType mt) {
-        try {
-            MsgType t = MsgType.s_fromValue(getByte("messageFlags"));
-            return (t == mt);
-        } catch (FieldException e) {
-            return false;
-        }
+        return getType() == mt;
     }
 
     public boolean isBroadcast() {
-        return isOfType(MsgType.ALL_LINK_BROADCAST) || isOfType(MsgType.BROADCAST);
+        MsgType t = getType();
+        return t == MsgType.ALL_LINK_BROADCAST || t == MsgType.BROADCAST;
     }
 
     public boolean isCleanup() {
-        return isOfType(MsgType.ALL_LINK_CLEANUP);
+        return getType() == MsgType.ALL_LINK_CLEANUP;
     }
 
     public boolean isAllLink() {
-        return isOfType(MsgType.ALL_LINK_BROADCAST) || isOfType(MsgType.ALL_LINK_CLEANUP);
+        MsgType t = getType();
+        return t == MsgType.ALL_LINK_BROADCAST || t == MsgType.ALL_LINK_CLEANUP;
     }
 
     public boolean isAckOfDirect() {
-        return isOfType(MsgType.ACK_OF_DIRECT);
+        return getType() == MsgType.ACK_OF_DIRECT;
+    }
+
+    public boolean isNackOfDirect() {
+        return getType() == MsgType.NACK_OF_DIRECT;
     }
 
     public boolean isAllLinkCleanupAckOrNack() {
-        return isOfType(MsgType.ALL_LINK_CLEANUP_ACK) || isOfType(MsgType.ALL_LINK_CLEANUP_NACK);
+        MsgType t = getType();
+        return t == MsgType.ALL_LINK_CLEANUP_ACK || t == MsgType.ALL_LINK_CLEANUP_NACK;
+    }
+
+    /**
+     * Decodes the message flags once, all the classification methods read the
+     * cached value
+     * 
+     * @return the flags byte (0-255), or FLAGS_NONE if the message has none
+     */
+    private int flags() {
+        int flags = m_flags;
+        if (flags == FLAGS_UNKNOWN) {
+            Field f = (m_definition == null || m_data == null) ? null : m_definition.getField(Fields.MESSAGE_FLAGS);
+            if (f == null || f.getOffset() >= m_length) {
+                flags = FLAGS_NONE;
+            } else {
+                flags = m_data[m_offset + f.getOffset()] & 0xff;
+            }
+            m_flags = flags;
+        }
+        return flags;
     }
 
     public boolean isX10() {
         try {
-            int cmd = getByte("Cmd") & 0xff;
+            int cmd = getByte(Fields.CMD) & 0xff;
             if (cmd == 0x63 || cmd == 0x52) {
                 return true;
             }
@@ -247,12 +320,25 @@ public class Msg {
 
     public void setDefinition(MsgDefinition d) {
         m_definition = d;
+        m_flags = FLAGS_UNKNOWN;
     }
 
     public void setQuietTime(long t) {
         m_quietTime = t;
     }
 
+    /**
+     * @return the lane of the outbound queue the message goes into, guessed
+     *         from the message if it was not set
+     */
+    public Priority getPriority() {
+        return m_priority != null ? m_priority : Priority.classify(this);
+    }
+
+    public void setPriority(Priority p) {
+        m_priority = p;
+    }
+
     public void addField(Field f) {
         if (m_definition == null) {
             return;
@@ -261,36 +347,60 @@ public class Msg {
     }
 
     public DeviceAddress getAddr(String name) {
-        if (m_definition == null) {
-            return null;
-        }
+        return getAddr(Fields.lookup(name));
+    }
+
+    /**
+     * Fetches an address, without throwing
+     * 
+     * @param field the field slot, see {@link Fields}
+     * @return the address, or null if the message has no such address field
+     */
+    public DeviceAddress getAddr(int field) {
         try {
-            return m_definition.getField(name).getAddress(m_data);
+            return getAddress(field);
         } catch (FieldException e) {
             // do nothing, we'll return null
         }
         return null;
     }
 
-    public int getHopsLeft() throws FieldException {
-        int hops = (getByte("messageFlags") & 0x0c) >> 2;
-        return hops;
+    /**
+     * Fetches an address as a packed int, without allocating anything
+     * 
+     * @param field the field slot, see {@link Fields}
+     * @return the address as 0xHHMMLL, or -1 if the message has no such address field
+     */
+    public int getAddressInt(int field) {
+        Field f = m_definition == null ? null : m_definition.getField(field);
+        if (f == null || f.getType() != DataType.ADDRESS || f.getOffset() + 3 > m_length) {
+            return -1;
+        }
+        int i = m_offset + f.getOffset();
+        return ((m_data[i] & 0xff) << 16) | ((m_data[i + 1] & 0xff) << 8) | (m_data[i + 2] & 0xff);
     }
 
     /**
-     * Will initialize the message with a byte[], an offset, and a length
-     * 
-     * @param data the src byte array
-     * @param offset the offset in the src byte array
-     * @param len the length to copy from the src byte array
+     * @return the from address as a packed int, or -1 if the message has none
      */
-    private void initialize(byte[] data, int offset, int len) {
-        m_data = new byte[len];
-        if (offset >= 0 && offset < data.length) {
-            System.arraycopy(data, offset, m_data, 0, len);
-        } else {
-            logger.error("intialize(): Offset out of bounds!");
+    public int fromAddressInt() {
+        return getAddressInt(Fields.FROM_ADDRESS);
+    }
+
+    public int getHopsLeft() throws FieldException {
+        return (checkedFlags() & 0x0c) >> 2;
+    }
+
+    public int getMaxHops() throws FieldException {
+        return checkedFlags() & 0x03;
+    }
+
+    private int checkedFlags() throws FieldException {
+        int flags = flags();
+        if (flags < 0) {
+            throw new FieldException("field " + Fields.name(Fields.MESSAGE_FLAGS) + " not found");
         }
+        return flags;
     }
 
     /**
@@ -300,8 +410,22 @@ public class Msg {
      * @param value the byte to put
      */
     public void setByte(String key, byte value) throws FieldException {
-        Field f = m_definition.getField(key);
-        f.setByte(m_data, value);
+        setByte(slotOf(key), value);
+    }
+
+    /**
+     * Will put a byte into a field
+     * 
+     * @param field the field slot, see {@link Fields}
+     * @param value the byte to put
+     */
+    public void setByte(int field, byte value) throws FieldException {
+        Field f = field(field, DataType.BYTE);
+        checkWritable();
+        m_data[f.getOffset()] = value;
+        if (field == Fields.MESSAGE_FLAGS) {
+            m_flags = FLAGS_UNKNOWN;
+        }
     }
 
     /**
@@ -311,7 +435,8 @@ public class Msg {
      * @param value the int to put
      */
     public void setInt(String key, int value) throws FieldException {
-        Field f = m_definition.getField(key);
+        Field f = field(slotOf(key), DataType.INT);
+        checkWritable();
         f.setInt(m_data, value);
     }
 
@@ -322,7 +447,18 @@ public class Msg {
      * @param adr the address to put
      */
     public void setAddress(String key, DeviceAddress adr) throws FieldException {
-        Field f = m_definition.getField(key);
+        setAddress(slotOf(key), adr);
+    }
+
+    /**
+     * Will put address bytes at the field
+     * 
+     * @param field the field slot, see {@link Fields}
+     * @param adr the address to put
+     */
+    public void setAddress(int field, DeviceAddress adr) throws FieldException {
+        Field f = field(field, DataType.ADDRESS);
+        checkWritable();
         f.setAddress(m_data, adr);
     }
 
@@ -333,10 +469,17 @@ public class Msg {
      * @return the byte
      */
     public byte getByte(String key) throws FieldException {
-        if (m_definition == null) {
-            throw new FieldException("no msg definition!");
-        }
-        return (m_definition.getField(key).getByte(m_data));
+        return getByte(slotOf(key));
+    }
+
+    /**
+     * Will fetch a byte
+     * 
+     * @param field the field slot, see {@link Fields}
+     * @return the byte
+     */
+    public byte getByte(int field) throws FieldException {
+        return m_data[m_offset + field(field, DataType.BYTE).getOffset()];
     }
 
     /**
@@ -350,12 +493,16 @@ public class Msg {
         if (m_definition == null) {
             throw new FieldException("no msg definition!");
         }
-        int offset = m_definition.getField(key).getOffset();
-        if (offset < 0 || offset + numBytes > m_data.length) {
+        Field f = m_definition.getField(slotOf(key));
+        if (f == null) {
+            throw new FieldException("field " + key + " not found");
+        }
+        int offset = f.getOffset();
+        if (offset < 0 || offset + numBytes > m_length) {
             throw new FieldException("data index out of bounds! key:" + key);
         }
         byte[] section = new byte[numBytes];
-        System.arraycopy(m_data, offset, section, 0, numBytes);
+        System.arraycopy(m_data, m_offset + offset, section, 0, numBytes);
         return section;
     }
 
@@ -366,10 +513,104 @@ public class Msg {
      * @return the address
      */
     public DeviceAddress getAddress(String field) throws FieldException {
+        return getAddress(slotOf(field));
+    }
+
+    /**
+     * Will fetch address from field
+     * 
+     * @param field the field slot, see {@link Fields}
+     * @return the address
+     */
+    public DeviceAddress getAddress(int field) throws FieldException {
+        return DeviceAddressFactory.fromBytes(m_data, m_offset + field(field, DataType.ADDRESS).getOffset());
+    }
+
+    /**
+     * Fetches the byte at a fixed offset. This is meant for the generated
+     * message types in the types package, which know the offsets of their
+     * fields at compile time and check the message length up front.
+     * 
+     * @param offset offset of the byte in the message
+     * @return the byte
+     */
+    public byte getByteAt(int offset) {
+        return m_data[m_offset + offset];
+    }
+
+    /**
+     * Puts a byte at a fixed offset, see getByteAt()
+     * 
+     * @param offset offset of the byte in the message
+     * @param value the byte to put
+     */
+    public void setByteAt(int offset, byte value) {
+        checkWritable();
+        m_data[offset] = value;
+        m_flags = FLAGS_UNKNOWN;
+    }
+
+    /**
+     * Fetches the address at a fixed offset, see getByteAt()
+     * 
+     * @param offset offset of the address in the message
+     * @return the address
+     */
+    public DeviceAddress getAddressAt(int offset) {
+        return DeviceAddressFactory.fromBytes(m_data, m_offset + offset);
+    }
+
+    /**
+     * Puts an address at a fixed offset, see getByteAt()
+     * 
+     * @param offset offset of the address in the message
+     * @param adr the address to put
+     */
+    public void setAddressAt(int offset, DeviceAddress adr) {
+        checkWritable();
+        adr.storeBytes(m_data, offset);
+    }
+
+    /**
+     * Resolves a field slot for this message, checking type and bounds
+     * 
+     * @param slot the field slot, see {@link Fields}
+     * @param type the expected type of the field
+     * @return the field
+     * @throws FieldException if the message has no such field, or it does not fit
+     */
+    private Field field(int slot, DataType type) throws FieldException {
         if (m_definition == null) {
             throw new FieldException("no msg definition!");
         }
-        return (m_definition.getField(field).getAddress(m_data));
+        Field f = m_definition.getField(slot);
+        if (f == null) {
+            throw new FieldException("field " + Fields.name(slot) + " not found");
+        }
+        if (f.getType() != type) {
+            throw new FieldException("field type mismatch for " + f.getName());
+        }
+        if (f.getOffset() + type.getSize() > m_length) {
+            throw new FieldException("field " + f.getName() + " beyond end of msg");
+        }
+        return f;
+    }
+
+    /**
+     * @throws IllegalStateException if the message is a read-only view, see detach()
+     */
+    private void checkWritable() {
+        if (isView()) {
+            throw new IllegalStateException("inbound message is read-only, detach() it first");
+        }
+    }
+
+    private static int slotOf(String key) throws FieldException {
+        int slot = Fields.lookup(key);
+        if (slot < 0) {
+            throw new FieldException("field " + key + " not found");
+        }
+        return slot;
     }
 
     /**
@@ -384,14 +625,13 @@ public class Msg {
         if (m_definition == null) {
             throw new FieldException("no msg definition!");
         }
-        int i = (m_definition.getField(key1).getByte(m_data) << 16) & (m_definition.getField(key2).getByte(m_data) << 8)
-                & m_definition.getField(key3).getByte(m_data);
+        int i = (getByte(key1) << 16) & (getByte(key2) << 8) & getByte(key3);
         return i;
     }
 
     public String toHexString() {
         if (m_data != null) {
-            return Utils.getHexString(m_data);
+            return Utils.getHexString(Arrays.copyOfRange(m_data, m_offset, m_offset + m_length));
         }
         return super.toString();
     }
@@ -429,20 +669,13 @@ public class Msg {
      * @return the calculated crc
      */
     public int setCRC() {
-        int crc;
-        try {
-            crc = getByte("command1") + getByte("command2");
-            byte[] bytes = getBytes("userData1", 13); // skip userData14!
-            for (byte b : bytes) {
-                crc += b;
-            }
-            crc = ((~crc) + 1) & 0xFF;
-            setByte("userData14", (byte) (crc & 0xFF));
-        } catch (FieldException e) {
-            logger.error("got field exception on msg {}:", this, e);
-            crc = 0;
+        int offset = crcOffset();
+        if (offset < 0) {
+            logger.error("msg {} has no room for a crc", this);
+            return 0;
         }
-        return crc;
+        checkWritable();
+        return Crc.setCrc1(m_data, offset);
     }
 
     /**
@@ -451,36 +684,40 @@ public class Msg {
      * @return the calculated crc
      */
     public int setCRC2() {
-        int crc = 0;
-        try {
-            byte[] bytes = getBytes("command1", 14);
-            for (int loop = 0; loop < bytes.length; loop++) {
-                int b = bytes[loop] & 0xFF;
-                for (int bit = 0; bit < 8; bit++) {
-                    int fb = b & 0x01;
-                    if ((crc & 0x8000) == 0) {
-                        fb = fb ^ 0x01;
-                    }
-                    if ((crc & 0x4000) == 0) {
-                        fb = fb ^ 0x01;
-                    }
-                    if ((crc & 0x1000) == 0) {
-                        fb = fb ^ 0x01;
-                    }
-                    if ((crc & 0x0008) == 0) {
-                        fb = fb ^ 0x01;
-                    }
-                    crc = ((crc << 1) | fb) & 0xFFFF;
-                    b = b >> 1;
-                }
-            }
-            setByte("userData13", (byte) ((crc >> 8) & 0xFF));
-            setByte("userData14", (byte) (crc & 0xFF));
-        } catch (FieldException e) {
-            logger.error("got field exception on msg {}:", this, e);
-            crc = 0;
+        int offset = crcOffset();
+        if (offset < 0) {
+            logger.error("msg {} has no room for a crc", this);
+            return 0;
         }
-        return crc;
+        checkWritable();
+        return Crc.setCrc2(m_data, offset);
+    }
+
+    /**
+     * @param crc2 true to check the 2-byte checksum of i2cs devices, false to
+     *            check the older 1-byte checksum
+     * @return true if this is an extended message with a valid checksum
+     */
+    public boolean hasValidCRC(boolean crc2) {
+        int offset = crcOffset();
+        if (offset < 0) {
+            return false;
+        }
+        return crc2 ? Crc.isValidCrc2(m_data, m_offset + offset) : Crc.isValidCrc1(m_data, m_offset + offset);
+    }
+
+    /**
+     * @return offset of command1 in an extended message, or -1 if the message
+     *         has no room for a checksum
+     */
+    private int crcOffset() {
+        Field cmd1 = m_definition == null ? null : m_definition.getField(Fields.COMMAND1);
+        Field userData14 = m_definition == null ? null : m_definition.getField(Fields.USER_DATA14);
+        if (cmd1 == null || userData14 == null || userData14.getOffset() != cmd1.getOffset() + 15
+                || userData14.getOffset() >= m_length) {
+            return -1;
+        }
+        return cmd1.getOffset();
     }
 
     @Override
@@ -505,16 +742,16 @@ public class Msg {
             if (f.getName().equals("messageFlags")) {
                 byte b;
                 try {
-                    b = f.getByte(m_data);
+                    b = f.getByte(m_data, m_offset, m_length);
                     MsgType t = MsgType.s_fromValue(b);
-                    s += f.toString(m_data) + "=" + t.toString() + ":" + (b & 0x03) + ":" + ((b & 0x0c) >> 2) + "|";
+                    s += f.toString(m_data, m_offset, m_length) + "=" + t.toString() + ":" + (b & 0x03) + ":" + ((b & 0x0c) >> 2) + "|";
                 } catch (FieldException e) {
                     logger.error("toString error: ", e);
                 } catch (IllegalArgumentException e) {
                     logger.error("toString msg type error: ", e);
                 }
             } else {
-                s += f.toString(m_data) + "|";
+                s += f.toString(m_data, m_offset, m_length) + "|";
             }
         }
         return name + "|" + s;
@@ -522,7 +759,7 @@ public class Msg {
 
     /**
      * Factory method to create Msg from raw byte stream received from the
-     * serial port.
+     * serial port. The bytes are copied, the caller keeps its array.
      * 
      * @param m_buf the raw received bytes
      * @param msgLen length of received buffer
@@ -530,18 +767,51 @@ public class Msg {
      * @return message, or null if the Msg cannot be created
      */
     public static Msg createMessage(byte[] m_buf, int msgLen, boolean isExtended) {
-        if (m_buf == null || m_buf.length < 2) {
+        if (m_buf == null) {
+            return null;
+        }
+        return createMessage(Arrays.copyOf(m_buf, Math.min(msgLen, m_buf.length)), 0, msgLen, isExtended);
+    }
+
+    /**
+     * Factory method to create an inbound Msg as a view into a frame slab. The
+     * bytes are not copied, so the slab region must not be changed afterwards.
+     * 
+     * @param slab the array holding the received bytes
+     * @param offset position of the first message byte in the slab
+     * @param msgLen length of the message
+     * @param isExtended whether it is an extended message or not
+     * @return message, or null if the Msg cannot be created
+     */
+    public static Msg createMessage(byte[] slab, int offset, int msgLen, boolean isExtended) {
+        if (slab == null || msgLen < 2 || offset < 0 || offset + msgLen > slab.length) {
             return null;
         }
-        Msg template = replyMap.get(new ReplyToKey(m_buf[1], isExtended));
-        if (template == null) {
+        FrameSpec spec = FrameSpec.lookup(slab[offset + 1], isExtended);
+        if (spec == null) {
             return null; // cannot find lookup map
         }
-        if (msgLen != template.getLength()) {
-            logger.error("expected msg {} len {}, got {}", template.getCommandNumber(), template.getLength(), msgLen);
+        if (msgLen != spec.getMessageLength()) {
+            logger.error("expected msg {} len {}, got {}", spec.getTemplate().getCommandNumber(),
+                    spec.getMessageLength(), msgLen);
             return null;
         }
-        Msg msg = new Msg(template.getHeaderLength(), m_buf, msgLen, Direction.FROM_MODEM);
+        return createMessage(slab, offset, spec);
+    }
+
+    /**
+     * Factory method to create an inbound Msg as a view into a frame slab, for
+     * a frame whose spec has already been looked up
+     * 
+     * @param slab the array holding the received bytes
+     * @param offset position of the first message byte in the slab, the frame
+     *            must be spec.getMessageLength() bytes long
+     * @param spec the spec of the frame
+     * @return message
+     */
+    public static Msg createMessage(byte[] slab, int offset, FrameSpec spec) {
+        Msg template = spec.getTemplate();
+        Msg msg = new Msg(template.getHeaderLength(), slab, offset, spec.getMessageLength(), Direction.FROM_MODEM);
         msg.setDefinition(template.getDefinition());
         msg.setName(template.getName());
         return (msg);
@@ -554,11 +824,8 @@ public class Msg {
      * @return the length of the header to expect
      */
     public static int getHeaderLength(byte cmd) {
-        Integer len = headerMap.get(cmd);
-        if (len == null) {
-            return (-1); // not found
-        }
-        return len;
+        FrameSpec spec = FrameSpec.lookup(cmd);
+        return spec == null ? -1 : spec.getHeaderLength();
     }
 
     /**
@@ -569,12 +836,20 @@ public class Msg {
      * @return message length, or -1 if length cannot be determined
      */
     public static int getMessageLength(byte b, boolean isExtended) {
-        //int key = cmdToKey(b, isExtended);
-        Msg msg = replyMap.get(new ReplyToKey(b, isExtended));
-        if (msg == null) {
-            return -1;
-        }
-        return msg.getLength();
+        FrameSpec spec = FrameSpec.lookup(b, isExtended);
+        return spec == null ? -1 : spec.getMessageLength();
+    }
+
+    /**
+     * Finds where the ACK/NACK byte sits in a received Insteon message
+     * 
+     * @param b Insteon message command received
+     * @param isExtended flag indicating if it is an extended message
+     * @return offset of the ACK/NACK byte, or -1 if the message has none
+     */
+    public static int getAckNackOffset(byte b, boolean isExtended) {
+        FrameSpec spec = FrameSpec.lookup(b, isExtended);
+        return spec == null ? -1 : spec.getAckNackOffset();
     }
 
     /**
@@ -596,6 +871,13 @@ public class Msg {
         return (isExtended);
     }
 
+    /**
+     * @return the templates of all known messages
+     */
+    static Collection<Msg> getTemplates() {
+        return msgMap.values();
+    }
+
     /**
      * Creates Insteon message (for sending) of a given type
      * 
@@ -611,30 +893,6 @@ public class Msg {
         return new Msg(m);
     }
 
-    private static int cmdToKey(byte cmd, boolean isExtended) {
-        return (cmd + (isExtended ? 256 : 0));
-    }
-
-    private static void buildHeaderMap() {
-        for (Msg m : msgMap.values()) {
-            if (m.getDirection() == Direction.FROM_MODEM) {
-                headerMap.put(m.getCommandNumber(), m.getHeaderLength());
-            }
-        }
-    }
-
-    private static void buildLengthMap() {
-        for (Msg m : msgMap.values()) {
-            if (m.getDirection() == Direction.FROM_MODEM) {
-                ReplyToKey key = new ReplyToKey(m.getCommandNumber(), m.isExtended());
-                if(replyMap.containsKey(key)) {
-                	logger.error("*** Replymap already contains a command {}", m.getCommandNumber());
-                }
-                replyMap.put(key, m);
-            }
-        }
-    }
-    
 	public String getName() {
 		return name;
 	}
@@ -644,49 +902,4 @@ public class Msg {
 	}
 	
 	
-}
-class ReplyToKey {
-	byte command;
-	boolean isExtended;
-	public ReplyToKey(byte command, boolean isExtended) {
-		super();
-		this.command = command;
-		this.isExtended = isExtended;
-	}
-	public byte getCommand() {
-		return command;
-	}
-	public boolean isExtended() {
-		return isExtended;
-	}
-	@Override
-	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + command;
-		result = prime * result + (isExtended ? 1231 : 1237);
-		return result;
-	}
-	@Override
-	public boolean equals(Object obj) {
-		if (this == obj)
-			return true;
-		if (obj == null)
-			return false;
-		if (getClass() != obj.getClass())
-			return false;
-		ReplyToKey other = (ReplyToKey) obj;
-		if (command != other.command)
-			return false;
-		if (isExtended != other.isExtended)
-			return false;
-		return true;
-	}
-	@Override
-	public String toString() {
-		return "ReplyToKey [command=" + command + ", isExtended=" + isExtended + "]";
-	}
-	
-	
-	
 }
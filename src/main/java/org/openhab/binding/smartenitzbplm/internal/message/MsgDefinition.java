@@ -12,6 +12,7 @@
  */
 package org.openhab.binding.smartenitzbplm.internal.message;
 
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -19,12 +20,16 @@ import java.util.HashMap;
  * For more info, see the public Insteon Developer's Guide, 2nd edition,
  * and the Insteon Modem Developer's Guide.
  *
+ * Besides the name map, the fields are kept in an array indexed by their
+ * {@link Fields} slot, for lookups without hashing.
+ *
  * @author Daniel Pfrommer
  * @since 1.5.0
  */
 
 public class MsgDefinition {
     private HashMap<String, Field> m_fields = new HashMap<String, Field>();
+    private Field[] m_slots = new Field[0];
 
     MsgDefinition() {
     }
@@ -36,6 +41,7 @@ public class MsgDefinition {
      */
     MsgDefinition(MsgDefinition m) {
         m_fields = new HashMap<String, Field>(m.m_fields);
+        m_slots = m.m_slots;
     }
 
     public HashMap<String, Field> getFields() {
@@ -48,6 +54,22 @@ public class MsgDefinition {
 
     public void addField(Field field) {
         m_fields.put(field.getName(), field);
+        int slot = field.getSlot();
+        // copied on write, since copies of the definition share the array
+        Field[] slots = Arrays.copyOf(m_slots, Math.max(m_slots.length, slot + 1));
+        slots[slot] = field;
+        m_slots = slots;
+    }
+
+    /**
+     * Finds the field in a given slot
+     * 
+     * @param slot the slot, see {@link Fields}
+     * @return the field, or null if the message has no such field
+     */
+    public Field getField(int slot) {
+        Field[] slots = m_slots;
+        return slot >= 0 && slot < slots.length ? slots[slot] : null;
     }
 
     /**
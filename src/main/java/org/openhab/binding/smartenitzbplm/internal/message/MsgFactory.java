@@ -12,17 +12,22 @@
  */
 package org.openhab.binding.smartenitzbplm.internal.message;
 
-import static org.openhab.binding.smartenitzbplm.internal.SmartenItZBPLMBindingConstants.*;
-
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.util.concurrent.BlockingQueue;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddressFactory;
 import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
 import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.ZBPLMHandler;
+import org.openhab.binding.smartenitzbplm.internal.message.types.ExtendedMessageReceived;
+import org.openhab.binding.smartenitzbplm.internal.message.types.PureNACK;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendExtendedMessage;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendStandardMessage;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendX10Message;
 import org.openhab.binding.smartenitzbplm.internal.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,163 +41,439 @@ import org.slf4j.LoggerFactory;
  * but sometimes one has to look deeper into the message to determine if it is a
  * standard or extended message (their lengths differ).
  *
+ * Incoming bytes are appended to a fixed size ring buffer, and complete frames
+ * are cut out of it right away on the thread that delivers the data (normally
+ * the serial event thread). Partial frames simply stay in the ring buffer until
+ * the rest of the bytes show up. There is a single producer, so no extra thread
+ * or pipe is needed between the port and the inbound ring, which hands the
+ * messages on to the port reader.
+ *
+ * Complete frames are copied into a frame slab that is shared by many messages.
+ * The messages are just read-only views into the slab, and the slab is dropped
+ * (and garbage collected once the last message referring to it is gone) when it
+ * fills up. Only the code that keeps a message around copies it, see
+ * Msg.detach().
+ *
+ * When the stream gets corrupted (typically by noise on the serial line), the
+ * factory drops into resync mode. Bytes are discarded until a candidate frame
+ * is found that also passes a closer look at its ACK/NACK byte and at the byte
+ * following it. A 0x15 found while resyncing is taken for noise rather than
+ * for a pure NACK, a real one is covered by the echo timeout of the port. A
+ * partial frame that is not completed within a short time is dropped, so a
+ * truncated frame cannot swallow the next good one. This is checked when more
+ * data comes in and, given a scheduler, also when none does. Discarded bytes,
+ * resync events and the time it took to resync are reported to the bridge
+ * handler.
+ *
+ * Optionally, extended messages from devices are checked for a valid checksum,
+ * and dropped (and counted) if they have none.
+ *
  * @author Bernd Pfrommer
  * @since 1.5.0
  */
 public class MsgFactory {
 	private static final Logger logger = LoggerFactory.getLogger(MsgFactory.class);
 	// no idea what the max msg length could be, but
-	// I doubt it'll ever be larger than 4k
-	private final static int MAX_MSG_LEN = 1024;
-	private PipedInputStream pipedInputStream = new PipedInputStream(MAX_MSG_LEN);
-	private BufferedInputStream buffer = new BufferedInputStream(pipedInputStream, MAX_MSG_LEN);
-	private PipedOutputStream pipedOutputStream = null;
+	// I doubt it'll ever be larger than 4k. Must be a power of two.
+	private final static int BUFFER_SIZE = 4096;
+	private final static int BUFFER_MASK = BUFFER_SIZE - 1;
+
+	private final static int SLAB_SIZE = 4096;
+
+	private final static long PARTIAL_FRAME_TIMEOUT_MILLIS = 250;
+
+	private final byte[] ring = new byte[BUFFER_SIZE];
+	private byte[] slab = new byte[SLAB_SIZE];
+	private int slabPos = 0;
+	// read and write positions, only ever incremented and masked on access
+	private int head = 0;
+	private int tail = 0;
 	private ZBPLMHandler handler;
-	private BlockingQueue<Msg> inboundQueue;
+	private InboundMsgSink inboundQueue;
+	// when the bytes being processed arrived
+	private long arrivedNanos = 0;
+
+	// a partial frame that sits in the buffer for longer than this is dropped
+	private long partialFrameTimeoutNanos = PARTIAL_FRAME_TIMEOUT_MILLIS * 1000000L;
+	private long lastDataNanos = 0;
+	// checks for a stale partial frame when no more data comes in
+	private volatile ScheduledExecutorService scheduler = null;
+	private ScheduledFuture<?> partialFrameCheck = null;
+	// resync state and corruption statistics
+	private boolean resyncing = false;
+	private long resyncStartNanos = 0;
+	private long lastResyncMillis = 0;
+	private long discardedBytes = 0;
+	private long resyncEvents = 0;
+	private boolean statsChanged = false;
+	// drop inbound extended messages without a valid checksum
+	private volatile boolean crcCheck = false;
+	private long crcErrors = 0;
+	private final ConcurrentHashMap<DeviceAddress, Boolean> crc2Devices = new ConcurrentHashMap<DeviceAddress, Boolean>();
 
 	/**
 	 * Constructor
 	 */
 	public MsgFactory(ZBPLMHandler handler) {
-		try {
-			this.handler = handler;
-			pipedOutputStream = new PipedOutputStream(pipedInputStream);
-		} catch (IOException e) {
-			logger.error("Unable to create Piped Output stream", e);
-		}
+		this.handler = handler;
 	}
 
 	/**
-	 * Adds incoming data to the data buffer. First call addData(), then call
-	 * processData()
+	 * Adds incoming data to the ring buffer and hands every message that could be
+	 * completed off to the inbound queue.
 	 * 
 	 * @param data data to be added
 	 * @param len  length of data to be added
 	 */
-	public void addData(byte[] data, int length) {
-		try {
+	public synchronized void addData(byte[] data, int length) {
+		if (handler != null) {
 			handler.logBytesReceived(length);
-			//logger.info("added {} bytes to the stream {} bytes left in input stream", length,
-				//	MAX_MSG_LEN - pipedInputStream.available());
-			pipedOutputStream.write(data, 0, length);
-		} catch (IOException e) {
-			logger.error("Unable to write data to the piped stream");
+		}
+		long now = System.nanoTime();
+		dropStalePartialFrame(now);
+		lastDataNanos = now;
+		arrivedNanos = now;
+		int offset = 0;
+		while (offset < length) {
+			// after processing, only a partial frame is left in the buffer, so there
+			// is always room to make progress here
+			int chunk = Math.min(length - offset, BUFFER_SIZE - (tail - head));
+			int pos = tail & BUFFER_MASK;
+			int first = Math.min(chunk, BUFFER_SIZE - pos);
+			System.arraycopy(data, offset, ring, pos, first);
+			System.arraycopy(data, offset + first, ring, 0, chunk - first);
+			tail += chunk;
+			offset += chunk;
+			processData();
+		}
+		reportStats();
+		if (tail != head) {
+			schedulePartialFrameCheck(partialFrameTimeoutNanos);
 		}
 	}
 
-	public void setInboundQueue(BlockingQueue<Msg> inboundQueue) {
-		this.inboundQueue = inboundQueue;
-
+	/**
+	 * Drops a partial frame if no data came in for it within the partial frame
+	 * timeout. The modem writes a frame in one go, so the rest of it is never
+	 * going to show up.
+	 * 
+	 * @param now the current nanoTime
+	 */
+	private void dropStalePartialFrame(long now) {
+		if (tail != head && now - lastDataNanos > partialFrameTimeoutNanos) {
+			logger.debug("dropping {} bytes of stale partial frame", tail - head);
+			discard(tail - head);
+		}
 	}
 
-	public void start() {
-		if (inboundQueue == null) {
-			logger.error("Inbound Queue must be set before starting the factory");
+	private void schedulePartialFrameCheck(long delayNanos) {
+		ScheduledExecutorService s = scheduler;
+		if (s != null && (partialFrameCheck == null || partialFrameCheck.isDone())) {
+			partialFrameCheck = s.schedule(this::checkPartialFrame, delayNanos + 1, TimeUnit.NANOSECONDS);
 		}
-		Runnable runnable = new Runnable() {
-
-			@Override
-			public void run() {
-				try {
-					processData();
-				} catch (IOException e) {
-					logger.error("Error while processing message, thread exiting", e);
-				}
-			}
-		};
-
-		Thread msgProcessingThread = new Thread(runnable, "MsgFactory Processor");
-		msgProcessingThread.start();
+	}
 
+	/**
+	 * Runs on the scheduler when a partial frame was left in the buffer
+	 */
+	private synchronized void checkPartialFrame() {
+		partialFrameCheck = null;
+		if (tail == head) {
+			return;
+		}
+		long now = System.nanoTime();
+		dropStalePartialFrame(now);
+		if (tail == head) {
+			reportStats();
+		} else {
+			// more data came in meanwhile, wait for the rest of the frame
+			schedulePartialFrameCheck(lastDataNanos + partialFrameTimeoutNanos - now);
+		}
 	}
 
-	public void stop() {
-		try {
-			pipedInputStream.close();
-		} catch (IOException e) {
-			logger.error("Error closing the piped input stream", e);
+	private void reportStats() {
+		if (handler != null) {
+			handler.logMsgBufferSize(tail - head);
+			if (statsChanged) {
+				handler.logResyncStats(discardedBytes, resyncEvents, lastResyncMillis);
+				handler.logCrcErrors(crcErrors);
+			}
 		}
+		statsChanged = false;
 	}
 
 	/**
-	 * After data has been added, this method processes it. processData() needs to
-	 * be called until it returns null, indicating that no more messages can be
-	 * formed from the data buffer.
+	 * Lets the factory drop a stale partial frame when no more data comes in.
+	 * Without a scheduler, it is only dropped when the next data arrives.
 	 * 
-	 * @return a valid message, or null if the message is not complete
-	 * @throws IOException if data was received with unknown command codes
+	 * @param scheduler runs the partial frame check, or null
 	 */
-	protected void processData() throws IOException {
+	public void setScheduler(ScheduledExecutorService scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	public void setInboundQueue(InboundMsgSink inboundQueue) {
+		this.inboundQueue = inboundQueue;
+
+	}
 
-		while (true) {
-			handler.logMsgBufferSize(buffer.available());
+	public synchronized void start() {
+		if (inboundQueue == null) {
+			logger.error("Inbound Queue must be set before starting the factory");
+		}
+		head = tail = 0;
+		resyncing = false;
+	}
 
-			byte header = 0x00;
-			// read through the data until we find a nack or a header
-			do {
-				// reset here so we can walk back in front of the header while parsing
-				buffer.mark(32); // we don't have any messages near this long yet
-				header = (byte) buffer.read();
-			} while (header != 0x15 && header != 0x02);
+	public synchronized void stop() {
+		head = tail = 0;
+		resyncing = false;
+		if (partialFrameCheck != null) {
+			partialFrameCheck.cancel(false);
+			partialFrameCheck = null;
+		}
+	}
 
+	/**
+	 * Cuts as many complete messages as possible out of the ring buffer and puts
+	 * them on the inbound queue. Garbage in front of a message is skipped, and a
+	 * partial message is left in the buffer until more data comes in.
+	 */
+	protected void processData() {
+		while (tail != head) {
+			int available = tail - head;
+			byte header = peek(0);
+			if (header == 0x15 && resyncing) {
+				logger.trace("ignoring 0x15 while resyncing");
+				discard(1);
+				continue;
+			}
 			if (header == 0x15) {
 				logger.trace("got pure nack!");
-				inboundQueue.add(Msg.makeMessage("PureNACK"));
+				head++;
+				emit(pureNack());
 				continue;
 			}
-
-			// Now see if we have enough data for a complete message.
-			// If not, we return null, and expect this method to be called again
-			// when more data has come in.
-			boolean isExtended = false;
-
-			// we have some data, but do we have enough to read the entire header?
-			byte command = (byte) buffer.read();
-			int headerLength = Msg.getHeaderLength(command);
-
-			if (headerLength < 0) {
-				//logger.warn("Got unknown command code {}", Integer.toHexString(command));
-				// move on to the next message
+			if (header != 0x02) {
+				// read through the data until we find a nack or a header
+				discard(1);
 				continue;
 			}
-
-			byte[] headerBytes = new byte[headerLength];
-			headerBytes[0] = header;
-			headerBytes[1] = command;
-			// and then get the rest of the header
-			if(headerLength > 2) {
-				buffer.read(headerBytes, 2, headerLength - 2);
+			if (available < 2) {
+				return;
 			}
-
-			isExtended = Msg.isExtended(headerBytes);
+			byte command = peek(1);
+			FrameSpec spec = FrameSpec.lookup(command);
+			if (spec == null) {
+				logger.trace("got unknown command code {}", Utils.getHexString(command));
+				discard(1);
+				continue;
+			}
+			// do we have enough to read the entire header?
+			int headerLength = spec.getHeaderLength();
+			if (available < headerLength) {
+				return;
+			}
+			// extended messages are longer, the last header byte says flags
+			boolean isExtended = headerLength > 2 && (peek(headerLength - 1) & 0x10) == 0x10;
 			logger.trace("header length expected: {} extended: {}", headerLength, isExtended);
 
-			int messageLength = Msg.getMessageLength(command, isExtended);
-
-			if (messageLength < 0) {
+			spec = FrameSpec.lookup(command, isExtended);
+			int messageLength = spec == null ? -1 : spec.getMessageLength();
+			if (messageLength < headerLength || messageLength > BUFFER_SIZE) {
 				logger.warn("Unable to find length for command {} isExtended {}", Utils.getHexString(command),
 						isExtended);
-				// onto the next message
+				discard(1);
+				continue;
+			}
+			if (available < messageLength) {
+				return;
+			}
+			if (resyncing && !isPlausible(spec)) {
+				logger.trace("rejecting candidate frame for command {} while resyncing",
+						Utils.getHexString(command));
+				discard(1);
 				continue;
 			}
 
-			// reset the mark as we're going to read or return
-			buffer.reset();
+			if (slabPos + messageLength > SLAB_SIZE) {
+				slab = new byte[SLAB_SIZE];
+				slabPos = 0;
+			}
+			int pos = head & BUFFER_MASK;
+			int first = Math.min(messageLength, BUFFER_SIZE - pos);
+			System.arraycopy(ring, pos, slab, slabPos, first);
+			System.arraycopy(ring, 0, slab, slabPos + first, messageLength - first);
+
+			int frame = slabPos;
+			head += messageLength;
+			slabPos += messageLength;
+			synced();
+			if (crcCheck && command == ExtendedMessageReceived.CMD && !hasValidCrc(frame)) {
+				crcErrors++;
+				statsChanged = true;
+				logger.debug("dropping extended msg with bad crc: {}",
+						Utils.getHexString(Arrays.copyOfRange(slab, frame, frame + messageLength)));
+				continue;
+			}
+			Msg msg = Msg.createMessage(slab, frame, spec);
+			logger.trace("bytes left {} created a message!! {}", tail - head, msg);
+			emit(msg);
+		}
+	}
 
-			byte[] messageBytes = new byte[messageLength];
-			// reset the buffer back to where we started, then grab the whole thing
-			int offset = 0;
-			int readBytes = 0;
-			while(offset < messageLength) {
-				readBytes = buffer.read(messageBytes, offset, messageLength - offset);
-				offset += readBytes;
+	/**
+	 * Checks a candidate frame found while resyncing more closely than usual. If
+	 * the message carries an ACK/NACK byte, it must hold one of the two legal
+	 * values, and if more data follows the frame, it has to start with a header or
+	 * a pure nack.
+	 * 
+	 * @param spec frame spec of the candidate
+	 * @return true if the candidate looks like a real frame
+	 */
+	private boolean isPlausible(FrameSpec spec) {
+		int messageLength = spec.getMessageLength();
+		int ackOffset = spec.getAckNackOffset();
+		if (ackOffset >= 0) {
+			byte ack = peek(ackOffset);
+			if (ack != 0x06 && ack != 0x15) {
+				return false;
+			}
+		}
+		if (tail - head > messageLength) {
+			byte next = peek(messageLength);
+			if (next != 0x02 && next != 0x15) {
+				return false;
 			}
+		}
+		return true;
+	}
+
+	/**
+	 * Throws away bytes at the head of the buffer, entering resync mode if we were
+	 * in sync so far
+	 * 
+	 * @param count number of bytes to drop
+	 */
+	private void discard(int count) {
+		if (!resyncing) {
+			resyncing = true;
+			resyncStartNanos = System.nanoTime();
+		}
+		head += count;
+		discardedBytes += count;
+		statsChanged = true;
+	}
+
+	/**
+	 * Called for every valid frame, ends a resync if one is going on
+	 */
+	private void synced() {
+		if (resyncing) {
+			resyncing = false;
+			resyncEvents++;
+			lastResyncMillis = (System.nanoTime() - resyncStartNanos) / 1000000L;
+			logger.debug("resynced after {} ms, {} bytes discarded so far", lastResyncMillis, discardedBytes);
+			statsChanged = true;
+		}
+	}
+
+	/**
+	 * Checks an extended message in the slab against the checksum its sender
+	 * uses
+	 * 
+	 * @param frame offset of the message in the slab
+	 * @return false if the checksum is bad, true if it is good or the sender is
+	 *         not known
+	 */
+	private boolean hasValidCrc(int frame) {
+		int from = frame + ExtendedMessageReceived.FROM_ADDRESS;
+		// the address is interned, so the lookup does not allocate
+		Boolean crc2 = crc2Devices.get(DeviceAddressFactory.fromBytes(slab, from));
+		if (crc2 == null) {
+			return true;
+		}
+		int cmd1 = frame + ExtendedMessageReceived.COMMAND1;
+		return crc2 ? Crc.isValidCrc2(slab, cmd1) : Crc.isValidCrc1(slab, cmd1);
+	}
+
+	/**
+	 * Turns checking the checksum of inbound extended messages on or off. Only
+	 * turn this on if all devices checksum their extended messages, as some older
+	 * ones leave the checksum bytes empty.
+	 * 
+	 * @param crcCheck true to drop extended messages with a bad checksum
+	 */
+	public void setCrcCheck(boolean crcCheck) {
+		this.crcCheck = crcCheck;
+	}
 
-			Msg msg = Msg.createMessage(messageBytes, messageLength, isExtended);
-			logger.trace("bytes left {} created a message!! {}", msg, buffer.available());
-			inboundQueue.add(msg);
+	/**
+	 * Records which checksum a device puts on its extended messages. Extended
+	 * messages from devices that are not recorded are not checked, since the
+	 * checksum that applies to them is not known.
+	 * 
+	 * @param address the device
+	 * @param crc2    true for i2cs devices, which use the 2-byte checksum, false
+	 *                for the older 1-byte checksum
+	 */
+	public void setCrc2(DeviceAddress address, boolean crc2) {
+		crc2Devices.put(address, crc2);
+	}
+
+	/**
+	 * Forgets the checksum of a device, its messages are no longer checked
+	 * 
+	 * @param address the device
+	 */
+	public void removeCrc(DeviceAddress address) {
+		crc2Devices.remove(address);
+	}
+
+	long getCrcErrors() {
+		return crcErrors;
+	}
+
+	long getDiscardedBytes() {
+		return discardedBytes;
+	}
+
+	long getResyncEvents() {
+		return resyncEvents;
+	}
+
+	boolean isResyncing() {
+		return resyncing;
+	}
+
+	void setPartialFrameTimeout(long millis) {
+		partialFrameTimeoutNanos = millis * 1000000L;
+	}
+
+	private byte peek(int index) {
+		return ring[(head + index) & BUFFER_MASK];
+	}
+
+	private void emit(Msg msg) {
+		if (msg != null && inboundQueue != null) {
+			try {
+				if (!inboundQueue.publish(msg, arrivedNanos)) {
+					logger.warn("the reader does not keep up, dropping {}", msg);
+				}
+			} catch (InterruptedException e) {
+				logger.warn("interrupted while waiting for room in the inbound queue, dropping {}", msg);
+				Thread.currentThread().interrupt();
+			}
 		}
+	}
 
+	private Msg pureNack() {
+		try {
+			return PureNACK.create().msg();
+		} catch (IOException e) {
+			logger.error("Unable to create pure nack message", e);
+			return null;
+		}
 	}
 
 	/**
@@ -223,26 +504,19 @@ public class MsgFactory {
 	 */
 	public static Msg makeStandardMessage(DeviceAddress address, byte flags, byte cmd1, byte cmd2, int group)
 			throws FieldException, IOException {
-		Msg m = Msg.makeMessage(SEND_STANDARD_MESSAGE);
 		DeviceAddress addr = null;
 		if (group != -1) {
 			flags |= 0xc0; // mark message as group message
 			// and stash the group number into the address
-			addr = new InsteonAddress((byte) 0, (byte) 0, (byte) (group & 0xff));
+			addr = InsteonAddress.of(group & 0xff);
 		} else {
 			addr = address;
 		}
-		m.setAddress(TO_ADDRESS, addr);
-		m.setByte(MESSAGE_FLAGS, flags);
-		m.setByte(COMMAND_1, cmd1);
-		m.setByte(COMMAND_2, cmd2);
-		return m;
+		return SendStandardMessage.create().toAddress(addr).messageFlags(flags).command1(cmd1).command2(cmd2).msg();
 	}
 
 	public static Msg makeX10Message(byte rawX10, byte X10Flag) throws FieldException, IOException {
-		Msg m = Msg.makeMessage("SendX10Message");
-		m.setByte("rawX10", rawX10);
-		m.setByte("X10Flag", X10Flag);
+		Msg m = SendX10Message.create().rawX10(rawX10).x10Flag(X10Flag).msg();
 		m.setQuietTime(300L);
 		return m;
 	}
@@ -275,12 +549,7 @@ public class MsgFactory {
 	 */
 	public static Msg makeExtendedMessage(DeviceAddress address, byte flags, byte cmd1, byte cmd2, byte[] data)
 			throws FieldException, IOException {
-		Msg m = Msg.makeMessage(SEND_EXTENDED_MESSAGE);
-		m.setAddress(TO_ADDRESS, address);
-		m.setByte(MESSAGE_FLAGS, (byte) (((flags & 0xff) | 0x10) & 0xff));
-		m.setByte(COMMAND_1, cmd1);
-		m.setByte(COMMAND_2, cmd2);
-		m.setUserData(data);
+		Msg m = extendedMessage(address, flags, cmd1, cmd2, data);
 		m.setCRC();
 		return m;
 	}
@@ -313,14 +582,19 @@ public class MsgFactory {
 	 */
 	public static Msg makeExtendedMessageCRC2(DeviceAddress address, byte flags, byte cmd1, byte cmd2, byte[] data)
 			throws FieldException, IOException {
-		Msg m = Msg.makeMessage(SEND_EXTENDED_MESSAGE);
-		m.setAddress(TO_ADDRESS, address);
-		m.setByte(MESSAGE_FLAGS, (byte) (((flags & 0xff) | 0x10) & 0xff));
-		m.setByte(COMMAND_1, cmd1);
-		m.setByte(COMMAND_2, cmd2);
-		m.setUserData(data);
+		Msg m = extendedMessage(address, flags, cmd1, cmd2, data);
 		m.setCRC2();
 		return m;
 	}
 
+	private static Msg extendedMessage(DeviceAddress address, byte flags, byte cmd1, byte cmd2, byte[] data)
+			throws IOException {
+		SendExtendedMessage m = SendExtendedMessage.create().toAddress(address)
+				.messageFlags((byte) (((flags & 0xff) | 0x10) & 0xff)).command1(cmd1).command2(cmd2);
+		for (int i = 0; i < data.length && i < SendExtendedMessage.USER_DATA_COUNT; i++) {
+			m.userData(i + 1, data[i]);
+		}
+		return m.msg();
+	}
+
 }
@@ -44,6 +44,8 @@ public enum MsgType {
     INVALID(0xff); // should never happen
 
     private static HashMap<Integer, MsgType> s_hash = new HashMap<Integer, MsgType>();
+    // indexed by the top three bits of the message flags
+    private static final MsgType[] s_byFlags = new MsgType[8];
 
     private byte m_byteValue = 0;
 
@@ -60,6 +62,9 @@ public enum MsgType {
         for (MsgType t : MsgType.values()) {
             Integer i = new Integer(t.getByteValue() & 0xff);
             s_hash.put(i, t);
+            if (t != INVALID) {
+                s_byFlags[(t.getByteValue() & 0xe0) >> 5] = t;
+            }
         }
     }
 
@@ -68,12 +73,18 @@ public enum MsgType {
     }
 
     public static MsgType s_fromValue(byte b) throws IllegalArgumentException {
-        Integer i = new Integer((b & 0xe0));
-        MsgType mt = s_hash.get(i);
-        if (mt == null) {
-            throw new IllegalArgumentException("msg type of byte value " + i + " not found");
-        }
-        return mt;
+        return fromFlags(b);
+    }
+
+    /**
+     * Finds the message type of a message flags byte without any lookup. All
+     * eight combinations of the type bits are defined, so this never fails.
+     * 
+     * @param flags the message flags
+     * @return the message type
+     */
+    public static MsgType fromFlags(int flags) {
+        return s_byFlags[(flags & 0xe0) >> 5];
     }
 
 }
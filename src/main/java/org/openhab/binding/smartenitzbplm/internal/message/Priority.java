@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.message;
+
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendStandardMessage;
+
+/**
+ * The lanes of the outbound queue, highest priority first. A message waiting
+ * in a lower lane for longer than the starvation limit of its lane is let
+ * through ahead of the higher lanes.
+ *
+ * @author jpowers
+ */
+public enum Priority {
+    /** commands from the user */
+    INTERACTIVE(Long.MAX_VALUE, 60000),
+    /** group broadcasts */
+    SCENE(2000, 60000),
+    /** queries following up on a message from a device */
+    REPLY(5000, 120000),
+    /** periodic status polls, the next poll makes an old one pointless */
+    POLL(30000, 300000),
+    /** modem database and configuration, the download depends on every one */
+    MAINTENANCE(60000, Long.MAX_VALUE),
+    /** id requests and linking */
+    DISCOVERY(60000, 120000);
+
+    private final long starvationMillis;
+    private final long timeToLiveMillis;
+
+    Priority(long starvationMillis, long timeToLiveMillis) {
+        this.starvationMillis = starvationMillis;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * @return how long a message may wait in this lane before it is let through
+     *         ahead of the higher lanes, in milliseconds
+     */
+    public long getStarvationMillis() {
+        return starvationMillis;
+    }
+
+    /**
+     * @return how long a message may wait in this lane before it is too stale
+     *         to be sent, in milliseconds
+     */
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    /**
+     * Guesses the lane of a message that nobody put in one
+     *
+     * @param msg the outbound message
+     * @return the lane
+     */
+    public static Priority classify(Msg msg) {
+        switch (msg.getCommandNumber()) {
+            case 0x62:
+                if (msg.isBroadcast()) {
+                    return SCENE;
+                }
+                byte cmd1 = msg.getByteAt(SendStandardMessage.COMMAND1);
+                if (cmd1 == 0x10) {
+                    return DISCOVERY;
+                }
+                return cmd1 == 0x19 ? POLL : INTERACTIVE;
+            case 0x61:
+                return SCENE;
+            case 0x63:
+                return INTERACTIVE;
+            case 0x64:
+            case 0x65:
+                return DISCOVERY;
+            default:
+                return MAINTENANCE;
+        }
+    }
+}
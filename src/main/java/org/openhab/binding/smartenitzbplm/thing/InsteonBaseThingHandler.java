@@ -21,6 +21,7 @@ import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.ZBPLMHandler;
 import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+import org.openhab.binding.smartenitzbplm.internal.message.Priority;
 import org.openhab.binding.smartenitzbplm.thing.config.InsteonBaseConfig;
 import org.openhab.binding.smartenitzbplm.thing.listener.InsteonMsgListener;
 import org.slf4j.Logger;
@@ -53,7 +54,7 @@ public abstract class InsteonBaseThingHandler extends BaseThingHandler implement
 
 	@Override
 	public void onMessage(Msg msg) {
-		if(this.address.equals(msg.getAddr(FROM_ADDRESS))) {
+		if (this.address.toInt() == msg.fromAddressInt()) {
 			pollSinceLastMessage = 0;
 			updateStatus(ThingStatus.ONLINE);
 		}
@@ -66,6 +67,7 @@ public abstract class InsteonBaseThingHandler extends BaseThingHandler implement
 		if (getBridge() != null) {
 			this.handler = (ZBPLMHandler) getBridge().getHandler();
 			this.handler.addInsteonMsgListener(this);
+			setChecksum(getConfigAs(InsteonBaseConfig.class).insteon_checksum);
 			init();
 		}
 
@@ -78,6 +80,7 @@ public abstract class InsteonBaseThingHandler extends BaseThingHandler implement
 			logger.info("Refreshing state");
 			try {
 				Msg msg = MsgFactory.makeStandardMessage(this.address, (byte) 0x0f, (byte) 0x19, (byte) 0x00);
+				msg.setPriority(Priority.INTERACTIVE);
 				handler.sendMsg(msg);
 
 			} catch (IOException | FieldException e) {
@@ -91,6 +94,24 @@ public abstract class InsteonBaseThingHandler extends BaseThingHandler implement
 		return address;
 	}
 
+	/**
+	 * Tells the modem which checksum the device puts on its extended messages.
+	 * Devices whose checksum is not configured are not checked.
+	 * 
+	 * @param checksum "crc1" for the 1-byte checksum, "crc2" for the 2-byte CRC
+	 *                 of i2cs devices
+	 */
+	private void setChecksum(String checksum) {
+		MsgFactory msgFactory = handler.getMsgFactory();
+		if ("crc2".equals(checksum)) {
+			msgFactory.setCrc2(address, true);
+		} else if ("crc1".equals(checksum)) {
+			msgFactory.setCrc2(address, false);
+		} else {
+			msgFactory.removeCrc(address);
+		}
+	}
+
 	/**
 	 * Base init asks for the insteon status
 	 */
@@ -105,6 +126,7 @@ public abstract class InsteonBaseThingHandler extends BaseThingHandler implement
 						updateStatus(ThingStatus.UNKNOWN);
 					}
 					Msg msg = MsgFactory.makeStandardMessage(address, (byte) 0x0f, (byte) 0x19, (byte) 0x00);
+					msg.setPriority(Priority.POLL);
 					handler.sendMsg(msg);
 					pollSinceLastMessage++;
 
@@ -122,6 +144,7 @@ public abstract class InsteonBaseThingHandler extends BaseThingHandler implement
 	public void dispose() {
 		super.dispose();
 		this.handler.removeInsteonMsgListener(this);
+		this.handler.getMsgFactory().removeCrc(address);
 	}
 
 	
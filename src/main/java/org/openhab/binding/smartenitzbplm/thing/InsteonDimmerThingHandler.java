@@ -1,8 +1,5 @@
 package org.openhab.binding.smartenitzbplm.thing;
 
-import static org.openhab.binding.smartenitzbplm.internal.SmartenItZBPLMBindingConstants.COMMAND_2;
-import static org.openhab.binding.smartenitzbplm.internal.SmartenItZBPLMBindingConstants.FROM_ADDRESS;
-import static org.openhab.binding.smartenitzbplm.internal.SmartenItZBPLMBindingConstants.STANDARD_MESSAGE_RECEIVED;
 import static org.openhab.binding.smartenitzbplm.internal.SmartenItZBPLMBindingConstants.SWITCH_LEVEL;
 
 import java.io.IOException;
@@ -14,6 +11,7 @@ import org.eclipse.smarthome.core.types.Command;
 import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+import org.openhab.binding.smartenitzbplm.internal.message.types.StandardMessageReceived;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,20 +52,23 @@ public class InsteonDimmerThingHandler extends InsteonSwitchThingHandler {
 	public void onMessage(Msg msg) {
 		super.onMessage(msg);
 		// check to see if its for me
-		if (!this.address.equals(msg.getAddr(FROM_ADDRESS))) {
+		if (this.address.toInt() != msg.fromAddressInt()) {
 			return;
 		}
-		try {
-			if (msg.getName().equals(STANDARD_MESSAGE_RECEIVED)) {
-				switchLevel = msg.getByte(COMMAND_2) & 0xFF;
-				double percentOn = ((double) switchLevel/MAX_LEVEL) * 100.0;
-				logger.info("setting level to {}", percentOn);
-				updateState(SWITCH_LEVEL,new PercentType((int)percentOn));
-				
+		if (StandardMessageReceived.matches(msg) && msg.isAllLinkCleanupAckOrNack()) {
+			// acknowledges a group command, command2 is the group, not the level. After
+			// an on the level is the on level of the link, which is not known here
+			byte cmd1 = StandardMessageReceived.of(msg).command1();
+			if (cmd1 == 0x13 || cmd1 == 0x14) {
+				switchLevel = 0;
+				updateState(SWITCH_LEVEL, new PercentType(0));
 			}
-		} catch (FieldException e) {
-			logger.error("Error getting on level ", e);
-			return;
+		} else if (StandardMessageReceived.matches(msg)) {
+			switchLevel = StandardMessageReceived.of(msg).command2() & 0xFF;
+			double percentOn = ((double) switchLevel/MAX_LEVEL) * 100.0;
+			logger.info("setting level to {}", percentOn);
+			updateState(SWITCH_LEVEL,new PercentType((int)percentOn));
+			
 		}
 
 		logger.info("got a message:" + msg.toString());
@@ -13,6 +13,8 @@ import org.eclipse.smarthome.core.types.Command;
 import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+import org.openhab.binding.smartenitzbplm.internal.message.types.ExtendedMessageReceived;
+import org.openhab.binding.smartenitzbplm.internal.message.types.StandardMessageReceived;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,24 +61,25 @@ public class InsteonSwitchThingHandler extends InsteonBaseThingHandler {
 	public void onMessage(Msg msg) {
 		super.onMessage(msg);
 		// check to see if its for me
-		if (!this.address.equals(msg.getAddr(FROM_ADDRESS))) {
+		if (this.address.toInt() != msg.fromAddressInt()) {
 			return;
 		}
-		try {
-			if (msg.getName().equals(STANDARD_MESSAGE_RECEIVED)) {
-				on = msg.getByte(COMMAND_2) != 0x00;
-				logger.info("setting onLevel to {}", on);
-				updateState(SWITCH_ONOFF, on ? OnOffType.ON : OnOffType.OFF);
-			}
+		if (StandardMessageReceived.matches(msg) && msg.isAllLinkCleanupAckOrNack()) {
+			// acknowledges a group command, command2 is the group, not the level
+			byte cmd1 = StandardMessageReceived.of(msg).command1();
+			on = cmd1 != 0x13 && cmd1 != 0x14;
+			logger.info("setting onLevel to {} after group command", on);
+			updateState(SWITCH_ONOFF, on ? OnOffType.ON : OnOffType.OFF);
+		} else if (StandardMessageReceived.matches(msg)) {
+			on = StandardMessageReceived.of(msg).command2() != 0x00;
+			logger.info("setting onLevel to {}", on);
+			updateState(SWITCH_ONOFF, on ? OnOffType.ON : OnOffType.OFF);
+		}
 
-			if (msg.getName().equals(EXTENDED_MESSAGE_RECIEVED)) {
-				byte ledBrightness = msg.getByte(USER_DATA_9);
-				updateState(SWITCH_LEVEL_LED, new PercentType(convertFromLedLevel(ledBrightness)));
+		if (ExtendedMessageReceived.matches(msg)) {
+			byte ledBrightness = ExtendedMessageReceived.of(msg).userData(9);
+			updateState(SWITCH_LEVEL_LED, new PercentType(convertFromLedLevel(ledBrightness)));
 
-			}
-		} catch (FieldException e) {
-			logger.error("Error getting on level ", e);
-			return;
 		}
 
 		logger.info("got a message:" + msg.toString());
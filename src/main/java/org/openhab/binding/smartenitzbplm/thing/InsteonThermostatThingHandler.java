@@ -14,6 +14,8 @@ import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
 import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+import org.openhab.binding.smartenitzbplm.internal.message.types.ExtendedMessageReceived;
+import org.openhab.binding.smartenitzbplm.internal.message.types.StandardMessageReceived;
 import org.openhab.binding.smartenitzbplm.internal.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,7 +60,7 @@ public class InsteonThermostatThingHandler extends InsteonBaseThingHandler {
 	public void onMessage(Msg msg) {
 		super.onMessage(msg);
 		// check to see if its for me
-		if (!this.address.equals(msg.getAddr(FROM_ADDRESS))) {
+		if (this.address.toInt() != msg.fromAddressInt()) {
 			return;
 		}
 
@@ -66,40 +68,36 @@ public class InsteonThermostatThingHandler extends InsteonBaseThingHandler {
 		pollSinceLastMessage = 0;
 		updateStatus(ThingStatus.ONLINE);
 
-		try {
-			if (msg.getName().equals(STANDARD_MESSAGE_RECEIVED)) {
+		if (StandardMessageReceived.matches(msg)) {
 
-			}
+		}
 
-			if (msg.getName().equals(EXTENDED_MESSAGE_RECIEVED) && msg.getByte(COMMAND_1) == (byte) 0x2e) {
-				int mode = msg.getByte(USER_DATA_6) & 0xff;
-				int coolPoint = msg.getByte(USER_DATA_7) & 0xff;
-				int humidity = msg.getByte(USER_DATA_8) & 0xff;
-				int temp = ((int) msg.getByte(USER_DATA_10)) & 0xff;
-				temp |= (((int) msg.getByte(USER_DATA_9)) & 0xff) << 8;
-				int status = msg.getByte(USER_DATA_11) & 0xff;
-				int heatPoint = msg.getByte(USER_DATA_12) & 0xff;
+		if (ExtendedMessageReceived.matches(msg) && ExtendedMessageReceived.of(msg).command1() == (byte) 0x2e) {
+			ExtendedMessageReceived ext = ExtendedMessageReceived.of(msg);
+			int mode = ext.userData(6) & 0xff;
+			int coolPoint = ext.userData(7) & 0xff;
+			int humidity = ext.userData(8) & 0xff;
+			int temp = ((int) ext.userData(10)) & 0xff;
+			temp |= (((int) ext.userData(9)) & 0xff) << 8;
+			int status = ext.userData(11) & 0xff;
+			int heatPoint = ext.userData(12) & 0xff;
 
-				double celsius = (double) temp * 0.1;
-				double fahrenheit = (9.0 / 5.0) * celsius + 32;
+			double celsius = (double) temp * 0.1;
+			double fahrenheit = (9.0 / 5.0) * celsius + 32;
 
-				int systemMode = mode & 0x0f >> 4;
-				int fanMode = mode & 0xf0 >> 0;
+			int systemMode = mode & 0x0f >> 4;
+			int fanMode = mode & 0xf0 >> 0;
 
-				logger.info("System mode {} running mode {}", Utils.getHexString(systemMode),
-						Utils.getHexString(status));
+			logger.info("System mode {} running mode {}", Utils.getHexString(systemMode),
+					Utils.getHexString(status));
 
-				updateState(THERMOSTAT_SYSTEMMODE, new DecimalType(systemMode));
-				updateState(THERMOSTAT_COOLING, new DecimalType(coolPoint));
-				updateState(THERMOSTAT_LOCALHUMIDITY, new PercentType(humidity));
-				updateState(THERMOSTAT_LOCALTEMP, new DecimalType(fahrenheit));
-				updateState(THERMOSTAT_HEATING, new DecimalType(heatPoint));
-				updateState(THERMOSTAT_RUNNIGNMODE, new DecimalType(status));
+			updateState(THERMOSTAT_SYSTEMMODE, new DecimalType(systemMode));
+			updateState(THERMOSTAT_COOLING, new DecimalType(coolPoint));
+			updateState(THERMOSTAT_LOCALHUMIDITY, new PercentType(humidity));
+			updateState(THERMOSTAT_LOCALTEMP, new DecimalType(fahrenheit));
+			updateState(THERMOSTAT_HEATING, new DecimalType(heatPoint));
+			updateState(THERMOSTAT_RUNNIGNMODE, new DecimalType(status));
 
-			}
-		} catch (FieldException e) {
-			logger.error("Error getting on level ", e);
-			return;
 		}
 
 	}
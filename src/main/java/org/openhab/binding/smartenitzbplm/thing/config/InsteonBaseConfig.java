@@ -2,5 +2,7 @@ package org.openhab.binding.smartenitzbplm.thing.config;
 
 public class InsteonBaseConfig {
 	public String insteon_address;
+	// "crc1", "crc2", or null if not known
+	public String insteon_checksum;
 	
 }
@@ -4,13 +4,13 @@ import static java.util.stream.Collectors.toSet;
 import static org.openhab.binding.smartenitzbplm.internal.SmartenItZBPLMBindingConstants.*;
 
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -22,11 +22,14 @@ import org.eclipse.smarthome.core.thing.ThingTypeUID;
 import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
 import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.ModemDBEntry;
 import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.Port;
+import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.ReplyMatcher;
 import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.ZBPLMHandler;
 import org.openhab.binding.smartenitzbplm.internal.message.FieldException;
 import org.openhab.binding.smartenitzbplm.internal.message.Msg;
 import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
-import org.openhab.binding.smartenitzbplm.thing.listener.InsteonMsgListener;
+import org.openhab.binding.smartenitzbplm.internal.message.types.CancelALLLinking;
+import org.openhab.binding.smartenitzbplm.internal.message.types.StandardMessageReceived;
+import org.openhab.binding.smartenitzbplm.internal.message.types.StartALLLinking;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Modified;
@@ -38,7 +41,7 @@ import org.slf4j.LoggerFactory;
 
 @Component(immediate = true, service = { DiscoveryService.class,
 		ZBPLMDiscoveryService.class }, configurationPid = "discovery.smartenitzbplm.device")
-public class ZBPLMDiscoveryService extends AbstractDiscoveryService implements InsteonMsgListener {
+public class ZBPLMDiscoveryService extends AbstractDiscoveryService {
 	private static final Logger logger = LoggerFactory.getLogger(ZBPLMDiscoveryService.class);
 
 	/**
@@ -46,17 +49,21 @@ public class ZBPLMDiscoveryService extends AbstractDiscoveryService implements I
 	 */
 	private final static int SEARCH_TIME = 60;
 
+	/**
+	 * How long to wait for the reply to an id request, in milliseconds
+	 */
+	private final static long REPLY_TIMEOUT = 10000;
+
 	private ZBPLMHandler handler = null;
 
 	private final Set<InsteonDiscoveryParticipant> participants = new CopyOnWriteArraySet<>();
 
-	private final BlockingQueue<Msg> deviceReplyQueue = new LinkedBlockingDeque<Msg>();
 
 	private final ExecutorService executor = ThreadPoolManager.getPool(COMMAND_POOL);
 	private final ScheduledExecutorService scheduledExecutor = ThreadPoolManager.getScheduledPool(SCHEDULED_POOL);
 
 	// The set of devices that we've already scanned (from the DB or from discovery
-	private final Set<InsteonDeviceInformation> previouslyScannedDevices = new HashSet<InsteonDeviceInformation>();
+	private final Set<InsteonDeviceInformation> previouslyScannedDevices = new CopyOnWriteArraySet<InsteonDeviceInformation>();
 
 	public ZBPLMDiscoveryService() throws IllegalArgumentException {
 		super(SEARCH_TIME);
@@ -107,9 +114,7 @@ public class ZBPLMDiscoveryService extends AbstractDiscoveryService implements I
 			public void run() {
 				try {
 					// Now set the controller in link mode
-					Msg msg = Msg.makeMessage(START_ALL_LINKING);
-					msg.setByte(LINK_CODE, (byte) 0x03);
-					msg.setByte(ALL_LINK_GROUP, (byte)-1);;
+					Msg msg = StartALLLinking.create().linkCode((byte) 0x03).allLinkGroup((byte) -1).msg();
 					handler.sendMsg(msg);
 					
 					// Recheck any of the previous DB entries to see if we have a
@@ -123,7 +128,7 @@ public class ZBPLMDiscoveryService extends AbstractDiscoveryService implements I
 
 					scheduleLinkStop();
 
-				} catch ( IOException | FieldException e) {
+				} catch (IOException e) {
 					logger.warn("Error while scanning DB for new handler:" + handler.toString(), e);
 				}
 
@@ -142,7 +147,7 @@ public class ZBPLMDiscoveryService extends AbstractDiscoveryService implements I
 			public void run() {
 				try {
 					logger.info("canceling linking");
-					Msg msg = Msg.makeMessage(CANCEL_ALL_LINKING);
+					Msg msg = CancelALLLinking.create().msg();
 					handler.sendMsg(msg);
 					// rescan the DB to see if we got anything
 					scanModemDB(handler);
@@ -177,38 +182,40 @@ public class ZBPLMDiscoveryService extends AbstractDiscoveryService implements I
 			return;
 		}
 
-		handler.addInsteonMsgListener(this);
+		Map<DeviceAddress, ModemDBEntry> entries = handler.getPort().getModemDBEntries();
 
-		try {
-			Map<DeviceAddress, ModemDBEntry> entries = handler.getPort().getModemDBEntries();
-
-			DeviceAddress modem = port.getAddress();
-			for (DeviceAddress address : entries.keySet()) {
-				if (address.equals(modem)) {
-					// No need to try to discover the modem..
-					continue;
-				}
-				logger.info("Sending discovery message to:" + address.toString());
-				Msg msg = MsgFactory.makeStandardMessage(address, (byte) 0x0f, (byte) 0x10, (byte) 0x00);
-				port.writeMessage(msg);
-
-				Msg reply = deviceReplyQueue.poll(10, TimeUnit.SECONDS);
-				if (reply != null) {
-					createDiscoveryResult(address, reply, handler);
-				}
+		// all the id requests are out at once, the replies are matched to the devices
+		// by the handler, so a device that does not answer holds up nobody
+		List<CompletableFuture<Void>> requests = new ArrayList<CompletableFuture<Void>>();
+		DeviceAddress modem = port.getAddress();
+		for (DeviceAddress address : entries.keySet()) {
+			if (address.equals(modem)) {
+				// No need to try to discover the modem..
+				continue;
 			}
-
-		} catch (FieldException e) {
-			logger.error("Error sending device type request", e);
-		} finally {
-			// port.removeListener(this);
+			logger.info("Sending discovery message to:" + address.toString());
+			Msg msg;
+			try {
+				msg = MsgFactory.makeStandardMessage(address, (byte) 0x0f, (byte) 0x10, (byte) 0x00);
+			} catch (FieldException e) {
+				logger.error("Error sending device type request", e);
+				continue;
+			}
+			requests.add(handler.sendAndAwait(msg, ReplyMatcher.idRequestReply(), REPLY_TIMEOUT)
+					.thenAcceptAsync(reply -> createDiscoveryResult(address, reply, handler), executor)
+					.exceptionally(e -> {
+						logger.info("No reply to discovery message from {}: {}", address, e.getMessage());
+						return null;
+					}));
 		}
-
+		CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[requests.size()]))
+				.thenRun(() -> logger.info("Finished scanning the {} devices of the modemDB", requests.size()));
 	}
 
-	private void createDiscoveryResult(DeviceAddress address, Msg msg, ZBPLMHandler handler) throws FieldException {
-		if (msg.isBroadcast() && msg.getByte(COMMAND_1) == 0x01) {
-			DeviceAddress toAddress = msg.getAddr(TO_ADDRESS);
+	private void createDiscoveryResult(DeviceAddress address, Msg msg, ZBPLMHandler handler) {
+		if (isIdRequestReply(msg)) {
+			// the broadcast carries the device type in the to address
+			DeviceAddress toAddress = StandardMessageReceived.of(msg).toAddress();
 
 			InsteonDeviceInformation deviceInformation = new InsteonDeviceInformation();
 			deviceInformation.setAddress(address);
@@ -239,32 +246,9 @@ public class ZBPLMDiscoveryService extends AbstractDiscoveryService implements I
 		}
 	}
 
-//	// Messages from the modem about new devices will come in here
-//	@Override
-//	public void msg(Msg msg, ZBPLMHandler fromPort) {
-//		try {
-//			if (msg.isBroadcast() && msg.getByte("command1") == 0x01) {
-//				deviceReplyQueue.offer(msg);
-//			}
-//		} catch (FieldException e) {
-//			// Just eat this in case we get a stray message
-//		}
-//	}
-
-	@Override
-	public DeviceAddress getAddress() {
-		return handler.getPort().getAddress();
-	}
-
-	@Override
-	public void onMessage(Msg msg) {
-		try {
-			if (msg.isBroadcast() && msg.getByte("command1") == 0x01) {
-				deviceReplyQueue.offer(msg);
-			}
-		} catch (FieldException e) {
-			// Just eat this in case we get a stray message
-		}
+	private static boolean isIdRequestReply(Msg msg) {
+		return StandardMessageReceived.matches(msg) && msg.isBroadcast()
+				&& StandardMessageReceived.of(msg).command1() == 0x01;
 	}
 
 }
@@ -0,0 +1,53 @@
+package org.openhab.binding.smartenitzbplm.internal.device;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+
+public class InsteonAddressTest {
+
+	@Test
+	public void testAddressesAreInterned() {
+		DeviceAddress a = DeviceAddressFactory.fromString("1A.2B.3C");
+		DeviceAddress b = DeviceAddressFactory.fromBytes(new byte[] { 0x00, 0x1a, 0x2b, 0x3c }, 1);
+		assertSame(a, b);
+		assertSame(a, InsteonAddress.of(0x1a2b3c));
+		assertEquals(0x1a2b3c, a.toInt());
+		assertEquals("1A.2B.3C", a.toString());
+		// addresses made with the constructor are still equal
+		assertEquals(a, new InsteonAddress((byte) 0x1a, (byte) 0x2b, (byte) 0x3c));
+		assertEquals(a.hashCode(), new InsteonAddress((byte) 0x1a, (byte) 0x2b, (byte) 0x3c).hashCode());
+	}
+
+	@Test
+	public void testInternTableGrows() {
+		for (int i = 0; i < 1000; i++) {
+			InsteonAddress a = InsteonAddress.of(0x100000 + i * 7);
+			assertSame(a, InsteonAddress.of(0x100000 + i * 7));
+			assertEquals(0x100000 + i * 7, a.toInt());
+		}
+	}
+
+	@Test
+	public void testPackedAddressesAreInsteon() {
+		DeviceAddress x10 = DeviceAddressFactory.fromString("A.1");
+		assertTrue(x10 instanceof X10Address);
+		assertSame(x10, X10Address.of(x10.getLowByte()));
+		assertTrue(DeviceAddressFactory.fromInt(x10.toInt()) instanceof InsteonAddress);
+		// the middle byte must not be lost
+		DeviceAddress a = DeviceAddressFactory.fromString("00.1A.00");
+		assertSame(a, DeviceAddressFactory.fromInt(a.toInt()));
+		assertSame(a, DeviceAddressFactory.fromBytes(new byte[] { 0x00, 0x1a, 0x00 }, 0));
+	}
+
+	@Test
+	public void testFromAddressInt() {
+		byte[] data = new byte[] { 0x02, 0x50, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x2b, 0x19, 0x00 };
+		Msg msg = Msg.createMessage(data, data.length, false);
+		assertEquals(0x112233, msg.fromAddressInt());
+		assertEquals(DeviceAddressFactory.fromString("11.22.33").toInt(), msg.fromAddressInt());
+		byte[] nack = new byte[] { 0x02, 0x15 };
+		assertEquals(-1, Msg.createMessage(nack, nack.length, false).fromAddressInt());
+	}
+}
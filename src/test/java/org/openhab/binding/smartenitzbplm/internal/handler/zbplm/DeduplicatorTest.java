@@ -0,0 +1,54 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+
+public class DeduplicatorTest {
+	private static final long MILLI = 1000000L;
+
+	// status reply from 11.22.33 with 3 hops left, and the copy with 1 hop left
+	private static final byte[] ORIGINAL = new byte[] { 0x02, 0x50, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x2f, 0x19,
+			0x00 };
+	private static final byte[] REPEATED = new byte[] { 0x02, 0x50, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x27, 0x19,
+			0x00 };
+	private static final byte[] OTHER = new byte[] { 0x02, 0x50, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x2f, 0x19,
+			0x01 };
+
+	private static Msg decode(byte[] bytes) {
+		MsgFactory factory = new MsgFactory(null);
+		InboundRing ring = new InboundRing(4);
+		factory.setInboundQueue(ring);
+		factory.addData(bytes, bytes.length);
+		return ring.poll();
+	}
+
+	@Test
+	public void testCopiesWithinTheWindowAreDropped() {
+		Deduplicator d = new Deduplicator();
+		assertFalse(d.isDuplicate(decode(ORIGINAL), 0));
+		assertTrue(d.isDuplicate(decode(REPEATED), 100 * MILLI));
+		assertFalse(d.isDuplicate(decode(OTHER), 100 * MILLI));
+		assertFalse(d.isDuplicate(decode(ORIGINAL), 600 * MILLI));
+		assertEquals(1, d.getDropped());
+	}
+
+	@Test
+	public void testForgetLetsTheNextAnswerThrough() {
+		Deduplicator d = new Deduplicator();
+		assertFalse(d.isDuplicate(decode(ORIGINAL), 0));
+		d.forget(0x112233);
+		assertFalse(d.isDuplicate(decode(ORIGINAL), 100 * MILLI));
+		assertTrue(d.isDuplicate(decode(ORIGINAL), 200 * MILLI));
+	}
+
+	@Test
+	public void testOnlyMessagesFromDevices() throws Exception {
+		Deduplicator d = new Deduplicator();
+		Msg info = Msg.makeMessage("GetIMInfo");
+		assertFalse(d.isDuplicate(info, 0));
+		assertFalse(d.isDuplicate(info, 0));
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
+import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.thing.listener.InsteonMsgListener;
+
+/**
+ * Compares handing messages to listeners with a thread and queue per listener,
+ * the way the handler used to, with the striped dispatcher on a pool of 5
+ * threads, the default size of a pool from the ThreadPoolManager. Each round
+ * sends one message to every listener at once, as a burst of traffic does, and
+ * measures the time from the dispatch to the listener running. The footprint
+ * is the number of threads, the stack address space they reserve at the
+ * default stack size of 1 MB, and the heap in use after a full GC.
+ *
+ * Not a unit test, run it by hand:
+ *
+ * <pre>
+ * java -cp ... org.openhab.binding.smartenitzbplm.internal.handler.zbplm.DispatchBenchmark [rounds]
+ * </pre>
+ *
+ * @author jpowers
+ */
+public class DispatchBenchmark {
+	private static final Msg MSG;
+	static {
+		byte[] data = { 0x02, 0x50, 0x20, 0x00, 0x01, 0x00, 0x00, 0x01, (byte) 0xcb, 0x11, 0x00 };
+		MSG = Msg.createMessage(data, data.length, false);
+	}
+
+	private static class Listener implements InsteonMsgListener {
+		private final DeviceAddress address;
+		private final int index;
+		private final long[] sent;
+		private final long[] latency;
+		private final int listeners;
+		private int round = 0;
+		private CountDownLatch done;
+
+		Listener(int index, int listeners, long[] sent, long[] latency) {
+			this.address = InsteonAddress.of(0x200000 + index);
+			this.index = index;
+			this.listeners = listeners;
+			this.sent = sent;
+			this.latency = latency;
+		}
+
+		@Override
+		public DeviceAddress getAddress() {
+			return address;
+		}
+
+		@Override
+		public void onMessage(Msg msg) {
+			int slot = round++ * listeners + index;
+			latency[slot] = System.nanoTime() - sent[slot];
+			done.countDown();
+		}
+	}
+
+	private interface Dispatch {
+		void dispatch(Listener listener, Msg msg);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		for (int listeners : new int[] { 50, 200, 1000 }) {
+			runThreadPerListener(listeners, rounds);
+			runStriped(listeners, rounds);
+		}
+	}
+
+	private static void runThreadPerListener(int listeners, int rounds) throws Exception {
+		long heap = usedHeap();
+		@SuppressWarnings("unchecked")
+		BlockingQueue<Msg>[] queues = new BlockingQueue[listeners];
+		Thread[] threads = new Thread[listeners];
+		Listener[] l = listeners(listeners, rounds);
+		for (int i = 0; i < listeners; i++) {
+			BlockingQueue<Msg> queue = new LinkedBlockingDeque<Msg>();
+			Listener listener = l[i];
+			queues[i] = queue;
+			threads[i] = new Thread(() -> {
+				try {
+					while (true) {
+						listener.onMessage(queue.take());
+					}
+				} catch (InterruptedException e) {
+					// done
+				}
+			}, listener.getAddress() + ": message thread");
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		run("thread per listener", l, rounds, heap, (listener, msg) -> queues[listener.index].offer(msg));
+		for (Thread t : threads) {
+			t.interrupt();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+	}
+
+	private static void runStriped(int listeners, int rounds) throws Exception {
+		long heap = usedHeap();
+		ExecutorService pool = Executors.newFixedThreadPool(5);
+		StripedDispatcher dispatcher = new StripedDispatcher(pool, 8);
+		run("striped", listeners(listeners, rounds), rounds, heap, dispatcher::dispatch);
+		pool.shutdown();
+	}
+
+	private static Listener[] listeners(int listeners, int rounds) {
+		long[] sent = new long[listeners * rounds];
+		long[] latency = new long[listeners * rounds];
+		Listener[] l = new Listener[listeners];
+		for (int i = 0; i < listeners; i++) {
+			l[i] = new Listener(i, listeners, sent, latency);
+		}
+		return l;
+	}
+
+	private static void run(String name, Listener[] l, int rounds, long heapBefore, Dispatch dispatch)
+			throws Exception {
+		int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+		long[] sent = l[0].sent;
+		// warm up, then measure
+		for (int r = 0; r < rounds; r++) {
+			CountDownLatch done = new CountDownLatch(l.length);
+			for (Listener listener : l) {
+				listener.done = done;
+			}
+			for (Listener listener : l) {
+				sent[r * l.length + listener.index] = System.nanoTime();
+				dispatch.dispatch(listener, MSG);
+			}
+			done.await();
+			if (r == 0) {
+				threads = ManagementFactory.getThreadMXBean().getThreadCount();
+			}
+		}
+		long heap = usedHeap() - heapBefore;
+		long[] latency = Arrays.copyOfRange(l[0].latency, l.length * (rounds / 10), l.length * rounds);
+		Arrays.sort(latency);
+		double mean = Arrays.stream(latency).average().orElse(0) / 1000.0;
+		System.out.printf("%4d listeners, %-19s: %4d threads (%4d MB stack reserved), %6d KB heap, "
+				+ "latency mean %7.1f us, p50 %7.1f us, p99 %8.1f us%n", l.length, name, threads, threads,
+				heap / 1024, mean, latency[latency.length / 2] / 1000.0, latency[latency.length * 99 / 100] / 1000.0);
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
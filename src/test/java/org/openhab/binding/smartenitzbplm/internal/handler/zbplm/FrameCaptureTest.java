@@ -0,0 +1,57 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+
+public class FrameCaptureTest {
+
+	private static final byte[] STANDARD = new byte[] { 0x02, 0x50, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x2b, 0x19,
+			0x00 };
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("zbplm-capture").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File f : FrameCapture.segments(directory)) {
+			f.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testCaptureAndReplay() throws Exception {
+		MsgFactory source = new MsgFactory(null);
+		InboundRing queue = new InboundRing(16);
+		source.setInboundQueue(queue);
+		// small segments, so the capture rolls over a few times
+		FrameCapture capture = new FrameCapture(directory, 256);
+		for (int i = 0; i < 40; i++) {
+			source.addData(STANDARD, STANDARD.length);
+			capture.record(FrameCapture.INBOUND, i, queue.poll());
+			capture.record(FrameCapture.OUTBOUND, i, Msg.makeMessage("GetIMInfo"));
+		}
+		capture.close();
+		assertTrue(FrameCapture.segments(directory).size() > 1);
+
+		ReplayIOStream replay = new ReplayIOStream(directory.getPath() + ",speed=max", new MsgFactory(null));
+		assertTrue(replay.open());
+		for (int i = 0; i < 40; i++) {
+			assertArrayEquals(STANDARD, replay.read().getData());
+		}
+		replay.close();
+		assertEquals(40, replay.getFramesReplayed());
+	}
+}
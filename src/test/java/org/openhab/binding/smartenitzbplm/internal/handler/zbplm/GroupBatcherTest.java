@@ -0,0 +1,170 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
+import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+import org.openhab.binding.smartenitzbplm.internal.message.Priority;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendALLLinkCommand;
+
+public class GroupBatcherTest {
+
+	private static Msg off(int id) throws Exception {
+		return MsgFactory.makeStandardMessage(InsteonAddress.of(id), (byte) 0x0f, (byte) 0x13, (byte) 0x00);
+	}
+
+	private static Msg on(int id) throws Exception {
+		return MsgFactory.makeStandardMessage(InsteonAddress.of(id), (byte) 0x0f, (byte) 0x11, (byte) 0xff);
+	}
+
+	private static void link(Map<DeviceAddress, ModemDBEntry> db, int id, int... groups) {
+		ModemDBEntry dbe = new ModemDBEntry(InsteonAddress.of(id));
+		for (int g : groups) {
+			dbe.addControls((byte) g);
+		}
+		db.put(InsteonAddress.of(id), dbe);
+	}
+
+	@Test
+	public void testGroupsCoverTargets() throws Exception {
+		Map<DeviceAddress, ModemDBEntry> db = new HashMap<DeviceAddress, ModemDBEntry>();
+		link(db, 1, 1, 2);
+		link(db, 2, 1, 2);
+		link(db, 3, 1);
+		link(db, 4, 2, 3);
+		link(db, 5, 3);
+		List<Msg> sent = new ArrayList<Msg>();
+		GroupBatcher batcher = new GroupBatcher(sent::add, null);
+		batcher.setModemDB(db);
+
+		LinkedHashMap<Integer, Msg> targets = new LinkedHashMap<Integer, Msg>();
+		for (int id = 1; id <= 4; id++) {
+			targets.put(id, off(id));
+		}
+		// group 3 would also switch 5 off, groups 1 and 2 overlap
+		List<Msg> out = batcher.batch((byte) 0x13, (byte) 0x00, targets);
+		assertEquals(2, out.size());
+		SendALLLinkCommand group = SendALLLinkCommand.of(out.get(0));
+		assertEquals(0x13, group.allLinkCommand());
+		assertEquals(Priority.INTERACTIVE, out.get(0).getPriority());
+		assertEquals(InsteonAddress.of(group.allLinkGroup() == 1 ? 4 : 3), out.get(1).getAddress("toAddress"));
+		assertEquals(2, batcher.getBatched());
+	}
+
+	@Test
+	public void testOnlyOnAndOffAreHeld() throws Exception {
+		Map<DeviceAddress, ModemDBEntry> db = new HashMap<DeviceAddress, ModemDBEntry>();
+		link(db, 1, 1);
+		link(db, 2);
+		GroupBatcher batcher = new GroupBatcher(m -> {
+		}, null);
+		assertFalse(batcher.offer(off(1)));
+		batcher.setModemDB(db);
+		assertFalse(batcher.offer(off(1)));
+		batcher.setWindow(100);
+		assertFalse(batcher.offer(off(2)));
+		assertFalse(batcher.offer(
+				MsgFactory.makeStandardMessage(InsteonAddress.of(1), (byte) 0x0f, (byte) 0x11, (byte) 0x80)));
+		Msg poll = MsgFactory.makeStandardMessage(InsteonAddress.of(1), (byte) 0x0f, (byte) 0x19, (byte) 0x00);
+		assertFalse(batcher.offer(poll));
+	}
+
+	@Test
+	public void testDeviceKeepsTheOrderOfItsCommands() throws Exception {
+		Map<DeviceAddress, ModemDBEntry> db = new HashMap<DeviceAddress, ModemDBEntry>();
+		// no group has only the targets as responders, so nothing is batched
+		link(db, 1, 1);
+		link(db, 2, 2);
+		link(db, 3, 1, 2);
+		List<Msg> sent = new ArrayList<Msg>();
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+		try {
+			GroupBatcher batcher = new GroupBatcher(sent::add, timer);
+			batcher.setModemDB(db);
+			batcher.setWindow(60000);
+
+			// a dim command to a device sends its held off first
+			Msg dim = MsgFactory.makeStandardMessage(InsteonAddress.of(1), (byte) 0x0f, (byte) 0x11, (byte) 0x80);
+			Msg off = off(1);
+			assertTrue(batcher.offer(off));
+			assertFalse(batcher.offer(dim));
+			assertEquals(1, sent.size());
+			assertSame(off, sent.get(0));
+			sent.clear();
+
+			// the newer on replaces the held off, and the window is shared
+			Msg on2 = on(2);
+			Msg on1 = on(1);
+			assertTrue(batcher.offer(on2));
+			assertTrue(batcher.offer(off(1)));
+			assertTrue(batcher.offer(on1));
+			batcher.flush();
+			assertEquals(2, sent.size());
+			assertSame(on2, sent.get(0));
+			assertSame(on1, sent.get(1));
+		} finally {
+			timer.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testNothingIsHeldWithoutAGroupToMatch() throws Exception {
+		Map<DeviceAddress, ModemDBEntry> db = new HashMap<DeviceAddress, ModemDBEntry>();
+		// group 1 has a single responder, a group command would not save anything
+		link(db, 1, 1);
+		link(db, 2, 2);
+		link(db, 3, 2);
+		GroupBatcher batcher = new GroupBatcher(m -> {
+		}, null);
+		batcher.setModemDB(db);
+		// batching is off by default
+		assertFalse(batcher.offer(off(2)));
+		batcher.setWindow(100);
+		assertFalse(batcher.offer(off(1)));
+	}
+
+	@Test
+	public void testRefusedCommandsAreCounted() throws Exception {
+		Map<DeviceAddress, ModemDBEntry> db = new HashMap<DeviceAddress, ModemDBEntry>();
+		link(db, 1, 1);
+		link(db, 2, 1, 2);
+		link(db, 3, 2);
+		List<Msg> refused = new ArrayList<Msg>();
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+		try {
+			GroupBatcher batcher = new GroupBatcher(new GroupBatcher.Sink() {
+				@Override
+				public void send(Msg msg) throws IOException {
+					throw new IOException("write queue is full");
+				}
+
+				@Override
+				public void failed(Msg msg, IOException e) {
+					refused.add(msg);
+				}
+			}, timer);
+			batcher.setModemDB(db);
+			batcher.setWindow(60000);
+			Msg off = off(1);
+			assertTrue(batcher.offer(off));
+			batcher.flush();
+			assertEquals(1, batcher.getFailed());
+			assertEquals(1, refused.size());
+			assertSame(off, refused.get(0));
+		} finally {
+			timer.shutdownNow();
+		}
+	}
+}
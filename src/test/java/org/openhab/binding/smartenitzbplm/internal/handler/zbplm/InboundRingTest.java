@@ -0,0 +1,97 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+
+public class InboundRingTest {
+
+	private static Msg msg() throws Exception {
+		return Msg.makeMessage("GetIMInfo");
+	}
+
+	@Test
+	public void testDrainTakesTheWholeBatch() throws Exception {
+		InboundRing ring = new InboundRing(5);
+		assertEquals(8, ring.getCapacity());
+		Msg[] sent = new Msg[3];
+		for (int i = 0; i < sent.length; i++) {
+			sent[i] = msg();
+			ring.publish(sent[i], i);
+		}
+		assertEquals(3, ring.size());
+		List<Long> sequences = new ArrayList<Long>();
+		List<Boolean> ends = new ArrayList<Boolean>();
+		int n = ring.drain((m, sequence, arrived, published, endOfBatch) -> {
+			assertSame(sent[(int) sequence], m);
+			assertEquals(sequence, arrived);
+			assertTrue(published >= arrived);
+			sequences.add(sequence);
+			ends.add(endOfBatch);
+		});
+		assertEquals(3, n);
+		assertEquals(3, sequences.size());
+		assertEquals(Long.valueOf(2), sequences.get(2));
+		assertFalse(ends.get(1));
+		assertTrue(ends.get(2));
+		assertTrue(ring.isEmpty());
+		assertNull(ring.poll());
+	}
+
+	@Test
+	public void testWrapsAround() throws Exception {
+		InboundRing ring = new InboundRing(4);
+		for (int i = 0; i < 10; i++) {
+			Msg m = msg();
+			ring.publish(m, 0);
+			assertSame(m, ring.take());
+		}
+		assertTrue(ring.isEmpty());
+	}
+
+	@Test
+	public void testFullRingDropsAfterTimeout() throws Exception {
+		InboundRing ring = new InboundRing(2);
+		assertTrue(ring.publish(msg(), 0));
+		assertTrue(ring.publish(msg(), 0));
+		// nobody reads, the writer gives up instead of blocking forever
+		assertFalse(ring.publish(msg(), 0));
+		assertEquals(1, ring.getDropped());
+		assertEquals(2, ring.size());
+	}
+
+	@Test
+	public void testProducerAndConsumerThreads() throws Exception {
+		for (InboundRing.WaitStrategy strategy : InboundRing.WaitStrategy.values()) {
+			InboundRing ring = new InboundRing(16);
+			ring.setWaitStrategy(strategy);
+			Msg m = msg();
+			int count = 10000;
+			Thread producer = new Thread(() -> {
+				try {
+					for (int i = 0; i < count; i++) {
+						ring.publish(m, 0);
+					}
+				} catch (InterruptedException e) {
+					// done
+				}
+			});
+			producer.start();
+			long[] expected = new long[1];
+			while (expected[0] < count) {
+				ring.drain((msg, sequence, arrived, published, endOfBatch) -> {
+					assertEquals(expected[0]++, sequence);
+				});
+			}
+			producer.join(5000);
+			assertFalse(producer.isAlive());
+			assertTrue(strategy.name(), ring.isEmpty());
+		}
+		assertEquals(InboundRing.WaitStrategy.YIELDING, InboundRing.WaitStrategy.parse(" Yielding"));
+		assertEquals(InboundRing.WaitStrategy.BLOCKING, InboundRing.WaitStrategy.parse(null));
+	}
+}
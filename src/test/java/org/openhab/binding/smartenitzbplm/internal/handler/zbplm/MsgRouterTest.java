@@ -0,0 +1,124 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.junit.Assert.*;
+import static org.openhab.binding.smartenitzbplm.internal.handler.zbplm.TestMessages.standardFrom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
+import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.thing.listener.InsteonMsgListener;
+
+public class MsgRouterTest {
+
+	private static class Recorder implements InsteonMsgListener {
+		private final DeviceAddress address;
+		private final List<Msg> received = new ArrayList<Msg>();
+
+		Recorder(int address) {
+			this.address = InsteonAddress.of(address);
+		}
+
+		@Override
+		public DeviceAddress getAddress() {
+			return address;
+		}
+
+		@Override
+		public void onMessage(Msg msg) {
+			received.add(msg);
+		}
+	}
+
+	private static Msg in(int from, int flags) {
+		return standardFrom(from, flags, 0x11, 0xff);
+	}
+
+	private static Msg imInfoReply() {
+		return TestMessages.in(0x02, 0x60, 0x44, 0x55, 0x66, 0x03, 0x15, 0x9e, 0x06);
+	}
+
+	private MsgRouter router;
+
+	@Before
+	public void setUp() {
+		// run the listeners right away, on the calling thread
+		router = new MsgRouter(new StripedDispatcher(Runnable::run, 4));
+	}
+
+	@Test
+	public void testMessagesGoToTheirDevice() {
+		Recorder a = new Recorder(0x112233);
+		Recorder b = new Recorder(0x112234);
+		Recorder a2 = new Recorder(0x112233);
+		router.add(a);
+		router.add(b);
+		router.add(a2);
+		Msg direct = in(0x112233, 0x2b);
+		router.route(direct);
+		assertEquals(1, a.received.size());
+		assertSame(direct, a.received.get(0));
+		assertEquals(1, a2.received.size());
+		assertTrue(b.received.isEmpty());
+
+		// broadcasts are routed by the device they are from as well
+		Msg broadcast = in(0x112234, 0x8b);
+		router.route(broadcast);
+		assertEquals(1, a.received.size());
+		assertEquals(1, b.received.size());
+		assertSame(broadcast, b.received.get(0));
+
+		router.route(in(0x999999, 0x2b));
+		assertEquals(1, a.received.size());
+		assertEquals(1, b.received.size());
+	}
+
+	@Test
+	public void testAllMessagesListeners() {
+		Recorder device = new Recorder(0x112233);
+		Recorder all = new Recorder(0x000000);
+		router.add(device);
+		router.addAllMessages(all);
+		router.route(in(0x112233, 0x2b));
+		router.route(in(0x999999, 0x2b));
+		// modem replies have no device, only the all messages listeners get them
+		router.route(imInfoReply());
+		assertEquals(1, device.received.size());
+		assertEquals(3, all.received.size());
+	}
+
+	@Test
+	public void testRemove() {
+		Recorder a = new Recorder(0x112233);
+		Recorder a2 = new Recorder(0x112233);
+		Recorder all = new Recorder(0x112233);
+		router.add(a);
+		router.add(a);
+		router.add(a2);
+		router.addAllMessages(all);
+		router.route(in(0x112233, 0x2b));
+		// added twice, still called once
+		assertEquals(1, a.received.size());
+
+		router.remove(a);
+		router.remove(all);
+		router.route(in(0x112233, 0x2b));
+		assertEquals(1, a.received.size());
+		assertEquals(1, all.received.size());
+		assertEquals(2, a2.received.size());
+
+		router.remove(a2);
+		router.remove(a2);
+		router.route(in(0x112233, 0x2b));
+		assertEquals(2, a2.received.size());
+
+		// a removed listener can come back
+		router.add(a);
+		router.route(in(0x112233, 0x2b));
+		assertEquals(2, a.received.size());
+	}
+}
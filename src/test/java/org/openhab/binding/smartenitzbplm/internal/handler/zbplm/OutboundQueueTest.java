@@ -0,0 +1,131 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+import org.openhab.binding.smartenitzbplm.internal.message.Priority;
+import org.openhab.binding.smartenitzbplm.internal.message.types.GetNextALLLinkRecord;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendStandardMessage;
+
+public class OutboundQueueTest {
+	private static final long SECOND = 1000000000L;
+
+	private static Msg standard(int id, int cmd1) throws Exception {
+		return MsgFactory.makeStandardMessage(InsteonAddress.of(id), (byte) 0x0f, (byte) cmd1, (byte) 0x00);
+	}
+
+	@Test
+	public void testClassify() throws Exception {
+		assertEquals(Priority.INTERACTIVE, standard(1, 0x11).getPriority());
+		assertEquals(Priority.POLL, standard(1, 0x19).getPriority());
+		assertEquals(Priority.DISCOVERY, standard(1, 0x10).getPriority());
+		assertEquals(Priority.MAINTENANCE, GetNextALLLinkRecord.create().msg().getPriority());
+		Msg reply = standard(1, 0x19);
+		reply.setPriority(Priority.REPLY);
+		assertEquals(Priority.REPLY, reply.getPriority());
+	}
+
+	@Test
+	public void testHigherLaneGoesFirst() throws Exception {
+		OutboundQueue queue = new OutboundQueue();
+		Msg poll = standard(1, 0x19);
+		Msg on = standard(2, 0x11);
+		assertEquals(1, queue.add(poll, Priority.POLL, 0));
+		assertEquals(1, queue.add(on, Priority.INTERACTIVE, 0));
+		assertSame(on, queue.poll(SECOND).getMsg());
+		assertSame(poll, queue.poll(SECOND).getMsg());
+		assertNull(queue.poll(SECOND));
+	}
+
+	@Test
+	public void testStarvedLaneGetsEveryOtherSlot() throws Exception {
+		OutboundQueue queue = new OutboundQueue();
+		for (int i = 0; i < 3; i++) {
+			queue.add(standard(i, 0x19), Priority.POLL, 0);
+			queue.add(standard(i, 0x11), Priority.INTERACTIVE, 40 * SECOND);
+		}
+		long now = 40 * SECOND; // the polls are 10 s overdue
+		assertEquals(Priority.POLL, queue.poll(now).getPriority());
+		assertEquals(Priority.INTERACTIVE, queue.poll(now).getPriority());
+		assertEquals(Priority.POLL, queue.poll(now).getPriority());
+		assertEquals(Priority.INTERACTIVE, queue.poll(now).getPriority());
+		assertEquals(Priority.POLL, queue.poll(now).getPriority());
+		assertEquals(Priority.INTERACTIVE, queue.poll(now).getPriority());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		OutboundQueue queue = new OutboundQueue();
+		queue.add(standard(1, 0x19), Priority.POLL, 0);
+		for (int level = 1; level <= 10; level++) {
+			queue.add(MsgFactory.makeExtendedMessage(InsteonAddress.of(2), (byte) 0x0f, (byte) 0x11, (byte) level),
+					Priority.INTERACTIVE, 0);
+		}
+		queue.add(standard(3, 0x11), Priority.INTERACTIVE, 0);
+		queue.add(standard(1, 0x19), Priority.POLL, 0);
+		assertEquals(3, queue.size());
+		assertEquals(10, queue.getCoalesced());
+
+		Msg level = queue.poll(0).getMsg();
+		assertEquals(10, level.getByteAt(SendStandardMessage.COMMAND2));
+		assertEquals(InsteonAddress.of(3), queue.poll(0).getMsg().getAddress("toAddress"));
+		assertEquals(0x19, queue.poll(0).getMsg().getByteAt(SendStandardMessage.COMMAND1));
+
+		// once taken, a command is no longer coalesced with
+		queue.add(standard(1, 0x19), Priority.POLL, 0);
+		assertEquals(1, queue.size());
+	}
+
+	@Test
+	public void testExpiredMessagesAreDropped() throws Exception {
+		OutboundQueue queue = new OutboundQueue();
+		queue.add(standard(1, 0x11), Priority.INTERACTIVE, 0);
+		queue.add(standard(2, 0x19), Priority.POLL, 0);
+		assertEquals(61 * SECOND, queue.oldestAge(61 * SECOND));
+		// the command is stale after a minute, the poll is not
+		assertEquals(Priority.POLL, queue.poll(61 * SECOND).getPriority());
+		assertEquals(1, queue.getExpired());
+		assertNull(queue.poll(61 * SECOND));
+	}
+
+	@Test
+	public void testOverflow() throws Exception {
+		OutboundQueue queue = new OutboundQueue();
+		queue.setLimit(2, OverflowPolicy.DROP_OLDEST);
+		queue.add(standard(1, 0x19), Priority.POLL, 0);
+		queue.add(standard(2, 0x19), Priority.POLL, 1);
+		// a command pushes out the oldest poll, a poll finds nothing lower to drop
+		assertEquals(1, queue.add(standard(3, 0x11), Priority.INTERACTIVE, 2));
+		assertEquals(OutboundQueue.REJECTED, queue.add(standard(4, 0x10), Priority.DISCOVERY, 3));
+		assertEquals(2, queue.size());
+		assertEquals(2, queue.getDrops());
+		assertEquals(InsteonAddress.of(3), queue.poll(4).getMsg().getAddress("toAddress"));
+		assertEquals(InsteonAddress.of(2), queue.poll(4).getMsg().getAddress("toAddress"));
+
+		queue.setLimit(1, OverflowPolicy.REJECT);
+		queue.add(standard(1, 0x19), Priority.POLL, 5);
+		assertEquals(OutboundQueue.REJECTED, queue.add(standard(2, 0x11), Priority.INTERACTIVE, 5));
+		assertEquals(OverflowPolicy.BLOCK, OverflowPolicy.parse("block"));
+		assertEquals(OverflowPolicy.DROP_OLDEST, OverflowPolicy.parse(null));
+	}
+
+	@Test
+	public void testMaintenanceIsNeverDropped() throws Exception {
+		OutboundQueue queue = new OutboundQueue();
+		// nanoTime() can be negative, a message without time to live still does not expire
+		Msg record = GetNextALLLinkRecord.create().msg();
+		queue.add(record, Priority.MAINTENANCE, -100 * SECOND);
+		assertSame(record, queue.poll(-SECOND).getMsg());
+		assertEquals(0, queue.getExpired());
+
+		queue.setLimit(1, OverflowPolicy.DROP_OLDEST);
+		queue.add(record, Priority.MAINTENANCE, 0);
+		assertEquals(OutboundQueue.REJECTED, queue.add(standard(1, 0x11), Priority.INTERACTIVE, 0));
+		assertSame(record, queue.poll(0).getMsg());
+		assertEquals(0, queue.getExpired());
+	}
+}
@@ -0,0 +1,54 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.junit.Assert.*;
+import static org.openhab.binding.smartenitzbplm.internal.handler.zbplm.TestMessages.in;
+
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddressFactory;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.types.GetIMInfo;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendStandardMessage;
+
+public class OutboundRequestTest {
+
+	private static OutboundRequest turnOn(String address) throws Exception {
+		return new OutboundRequest(SendStandardMessage.create().toAddress(DeviceAddressFactory.fromString(address))
+				.messageFlags((byte) 0x0f).command1((byte) 0x11).command2((byte) 0xff).msg(), 1);
+	}
+
+	@Test
+	public void testEchoIsMatchedByPayload() throws Exception {
+		OutboundRequest request = turnOn("11.22.33");
+		assertTrue(request.matches(in(0x02, 0x62, 0x11, 0x22, 0x33, 0x0f, 0x11, 0xff, 0x06)));
+		// echo of an earlier message to another device
+		assertFalse(request.matches(in(0x02, 0x62, 0x11, 0x22, 0x34, 0x0f, 0x11, 0xff, 0x06)));
+		// unsolicited message from the device
+		assertFalse(request.matches(in(0x02, 0x50, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x2b, 0x11, 0xff)));
+		assertTrue(request.matches(in(0x02, 0x15)));
+	}
+
+	@Test
+	public void testReplyWithOwnPayload() throws Exception {
+		OutboundRequest request = new OutboundRequest(GetIMInfo.create().msg(), 1);
+		Msg reply = in(0x02, 0x60, 0x44, 0x55, 0x66, 0x03, 0x15, 0x9b, 0x06);
+		assertTrue(request.matches(reply));
+		request.sent(null);
+		assertTrue(request.echo(reply));
+		assertEquals(OutboundRequest.Outcome.ACK, request.await());
+		assertFalse(request.echo(reply));
+	}
+
+	@Test
+	public void testNackAndDeadline() throws Exception {
+		OutboundRequest request = turnOn("11.22.33");
+		assertEquals(1, request.sent(null));
+		request.echo(in(0x02, 0x62, 0x11, 0x22, 0x33, 0x0f, 0x11, 0xff, 0x15));
+		assertEquals(OutboundRequest.Outcome.NACK, request.await());
+
+		assertEquals(2, request.sent(null));
+		request.expire(1); // timer of the first attempt
+		request.expire(2);
+		assertEquals(OutboundRequest.Outcome.TIMEOUT, request.await());
+		assertEquals(-1, request.getEchoLatency());
+	}
+}
@@ -0,0 +1,165 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.junit.Assert.*;
+import static org.openhab.binding.smartenitzbplm.internal.handler.zbplm.TestMessages.in;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+import org.openhab.binding.smartenitzbplm.internal.message.types.GetIMInfo;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendALLLinkCommand;
+
+public class PacerTest {
+	private static final long MILLI = 1000000L;
+	private static final int DEVICE = 0x112233;
+
+	/**
+	 * Time only moves when the pacer waits. A wait ends early when an event
+	 * scheduled within it runs, as if the reader had woken the pacer up.
+	 */
+	private static class FakeClock extends Pacer.Clock {
+		private long now = 0;
+		private final TreeMap<Long, Runnable> events = new TreeMap<Long, Runnable>();
+
+		void at(long millis, Runnable event) {
+			events.put(millis * MILLI, event);
+		}
+
+		void advance(long millis) {
+			now += millis * MILLI;
+		}
+
+		@Override
+		long nanoTime() {
+			return now;
+		}
+
+		@Override
+		void waitOn(Object monitor, long nanos) {
+			Map.Entry<Long, Runnable> next = events.firstEntry();
+			if (next != null && next.getKey() <= now + nanos) {
+				events.remove(next.getKey());
+				now = Math.max(now, next.getKey());
+				next.getValue().run();
+			} else {
+				now += nanos;
+			}
+		}
+	}
+
+	// ACK of direct from the device, 2 hops left
+	private static Msg ack() {
+		return in(0x02, 0x50, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x2b, 0x11, 0xff);
+	}
+
+	private static OutboundRequest turnOn() throws Exception {
+		return new OutboundRequest(
+				MsgFactory.makeStandardMessage(InsteonAddress.of(DEVICE), (byte) 0x0f, (byte) 0x11, (byte) 0xff), 1);
+	}
+
+	@Test
+	public void testModemCommandsWaitForTheEchoOnly() throws Exception {
+		FakeClock clock = new FakeClock();
+		Pacer pacer = new Pacer(clock);
+		OutboundRequest request = new OutboundRequest(GetIMInfo.create().msg(), 1);
+		pacer.open(request);
+		assertTrue(pacer.await(request, 500) < 500);
+
+		pacer.setAdaptive(false);
+		request = new OutboundRequest(GetIMInfo.create().msg(), 2);
+		pacer.open(request);
+		assertEquals(500, pacer.await(request, 500));
+	}
+
+	@Test
+	public void testSettleTimeIsLearned() throws Exception {
+		FakeClock clock = new FakeClock();
+		Pacer pacer = new Pacer(clock);
+		OutboundRequest first = turnOn();
+		pacer.open(first);
+		clock.at(100, () -> pacer.inbound(ack()));
+		// nothing learned yet, the full quiet time
+		assertEquals(1000, pacer.await(first, 1000));
+
+		OutboundRequest second = turnOn();
+		pacer.open(second);
+		clock.at(1100, () -> pacer.inbound(ack()));
+		// settled after mean + 2 deviations (200 ms), and the 2 hops left of the
+		// ACK plus one have run out (150 ms after it)
+		assertEquals(250, pacer.await(second, 1000));
+		assertEquals(1.0, pacer.getPenalty(Pacer.MsgClass.DIRECT), 0.0);
+		assertEquals(250.0, pacer.getQuietTime(), 0.0);
+	}
+
+	@Test
+	public void testDeviceThatDoesNotAnswerWaitsTheQuietTime() throws Exception {
+		FakeClock clock = new FakeClock();
+		Pacer pacer = new Pacer(clock);
+		OutboundRequest request = turnOn();
+		pacer.open(request);
+		assertEquals(800, pacer.await(request, 800));
+	}
+
+	@Test
+	public void testPenalties() throws Exception {
+		FakeClock clock = new FakeClock();
+		Pacer pacer = new Pacer(clock);
+		OutboundRequest request = turnOn();
+		pacer.retransmitting(request);
+		assertEquals(2.0, pacer.getPenalty(Pacer.MsgClass.DIRECT), 0.0);
+		for (int i = 0; i < 5; i++) {
+			pacer.retransmitting(request);
+		}
+		assertEquals(8.0, pacer.getPenalty(Pacer.MsgClass.DIRECT), 0.0);
+
+		// a clean answer lets the penalty decay
+		pacer.open(request);
+		clock.advance(100);
+		pacer.inbound(ack());
+		pacer.open(new OutboundRequest(GetIMInfo.create().msg(), 2));
+		assertEquals(6.4, pacer.getPenalty(Pacer.MsgClass.DIRECT), 1e-9);
+		// the other classes are not affected
+		assertEquals(1.0, pacer.getPenalty(Pacer.MsgClass.EXTENDED), 0.0);
+	}
+
+	@Test
+	public void testCloseReportsToTheBreakerOnce() throws Exception {
+		FakeClock clock = new FakeClock();
+		Pacer pacer = new Pacer(clock);
+		CircuitBreaker breaker = new CircuitBreaker();
+		pacer.setCircuitBreaker(breaker);
+		OutboundRequest modem = new OutboundRequest(GetIMInfo.create().msg(), 1);
+
+		// each unanswered message counts once, the circuit opens at the third
+		for (int i = 0; i < 2; i++) {
+			pacer.open(turnOn());
+			pacer.open(modem);
+		}
+		assertFalse(breaker.isOpen(DEVICE));
+		assertEquals(4.0, pacer.getPenalty(Pacer.MsgClass.DIRECT), 0.0);
+		pacer.open(turnOn());
+		pacer.open(modem);
+		assertTrue(breaker.isOpen(DEVICE));
+
+		// an answer closes it again
+		pacer.open(turnOn());
+		pacer.inbound(ack());
+		pacer.open(modem);
+		assertFalse(breaker.isOpen(DEVICE));
+	}
+
+	@Test
+	public void testGroupWaitsForTheCleanupReport() throws Exception {
+		FakeClock clock = new FakeClock();
+		Pacer pacer = new Pacer(clock);
+		OutboundRequest group = new OutboundRequest(SendALLLinkCommand.create().allLinkGroup((byte) 1)
+				.allLinkCommand((byte) 0x11).broadcastCommand2((byte) 0xff).msg(), 1);
+		pacer.open(group);
+		clock.at(300, () -> pacer.inbound(in(0x02, 0x58, 0x06)));
+		assertEquals(300, pacer.await(group, 2000));
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+
+/**
+ * Measures the throughput of direct messages through the simulated modem with
+ * fixed quiet times and with the adaptive pacer. Each round switches a scene
+ * of lights on and then off again, one direct message per light, using the
+ * quiet time the thing handlers send with. The flow control is the one of the
+ * port writer: one request in flight, retransmit on NACK.
+ *
+ * The simulator does not model collisions on the powerline, so this shows
+ * what the pacer gains when the line is clean, not that the learned settle
+ * times are long enough.
+ *
+ * Not a unit test, run it by hand:
+ *
+ * <pre>
+ * java -cp ... org.openhab.binding.smartenitzbplm.internal.handler.zbplm.PacingBenchmark [lights] [rounds] [simulator settings]
+ * </pre>
+ *
+ * @author jpowers
+ */
+public class PacingBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int lights = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		String sim = args.length > 2 ? args[2] : "ack=0.98,nak=0.01,latency=40,hops=3,seed=1";
+		run("fixed", lights, rounds, sim, false);
+		run("adaptive", lights, rounds, sim, true);
+	}
+
+	private static void run(String name, int lights, int rounds, String sim, boolean adaptive) throws Exception {
+		SimulatedIOStream stream = new SimulatedIOStream("devices=" + lights + "," + sim, new MsgFactory(null));
+		stream.open();
+		Pacer pacer = new Pacer();
+		pacer.setAdaptive(adaptive);
+		OutboundRequest[] inFlight = new OutboundRequest[1];
+
+		Thread reader = new Thread(() -> {
+			try {
+				while (true) {
+					Msg msg = stream.read();
+					OutboundRequest request = inFlight[0];
+					if (request != null && request.matches(msg) && request.echo(msg) && request.isAccepted()) {
+						pacer.open(request);
+					}
+					pacer.inbound(msg);
+				}
+			} catch (InterruptedException e) {
+				// done
+			}
+		}, "benchmark reader");
+		reader.setDaemon(true);
+		reader.start();
+
+		long sent = 0;
+		long retransmits = 0;
+		long quiet = 0;
+		long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			for (int i = 0; i < lights * 2; i++) {
+				byte cmd1 = i < lights ? (byte) 0x11 : (byte) 0x13;
+				int id = i % lights + 1;
+				Msg msg = MsgFactory.makeStandardMessage(InsteonAddress.of(0x200000 | id), (byte) 0x0f, cmd1,
+						(byte) 0xff);
+				OutboundRequest request = new OutboundRequest(msg, ++sent);
+				inFlight[0] = request;
+				request.sent(null);
+				stream.write(request.getFrame());
+				while (request.await() != OutboundRequest.Outcome.ACK && request.getAttempt() <= 3) {
+					pacer.retransmitting(request);
+					retransmits++;
+					request.sent(null);
+					stream.write(request.getFrame());
+				}
+				quiet += request.isAccepted() ? pacer.await(request, msg.getQuietTime())
+						: sleep(msg.getQuietTime());
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		stream.close();
+		reader.interrupt();
+		System.out.printf("%s: %d messages in %.1f s, %.2f msg/s, %.0f ms quiet per message, %d retransmits%n",
+				name, sent, elapsed / 1e9, sent * 1e9 / elapsed, (double) quiet / sent, retransmits);
+	}
+
+	private static long sleep(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+		return millis;
+	}
+}
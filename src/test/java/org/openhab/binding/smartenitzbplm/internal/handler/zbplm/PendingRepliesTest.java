@@ -0,0 +1,84 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.junit.Assert.*;
+import static org.openhab.binding.smartenitzbplm.internal.handler.zbplm.TestMessages.in;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+
+public class PendingRepliesTest {
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+	@Test
+	public void testRepliesGoToTheirDevice() throws Exception {
+		PendingReplies pending = new PendingReplies(timer);
+		CompletableFuture<Msg> first = pending.register(0x112233, ReplyMatcher.idRequestReply(), 10000);
+		CompletableFuture<Msg> second = pending.register(0x445566, ReplyMatcher.idRequestReply(), 10000);
+		CompletableFuture<Msg> ack = pending.register(0x445566, ReplyMatcher.ackOfDirect((byte) 0x11), 10000);
+		assertEquals(3, pending.size());
+
+		// a status change broadcast is not the answer to an id request
+		assertFalse(pending.complete(in(0x02, 0x50, 0x44, 0x55, 0x66, 0x00, 0x00, 0x01, 0xcb, 0x11, 0x00)));
+		Msg idReply = in(0x02, 0x50, 0x44, 0x55, 0x66, 0x01, 0x20, 0x41, 0x8b, 0x01, 0x00);
+		assertTrue(pending.complete(idReply));
+		assertSame(idReply, second.get());
+		assertFalse(pending.complete(idReply));
+		assertTrue(pending.complete(in(0x02, 0x50, 0x44, 0x55, 0x66, 0x99, 0x88, 0x77, 0x2b, 0x11, 0xff)));
+		assertTrue(ack.isDone());
+		assertFalse(first.isDone());
+		assertEquals(1, pending.size());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		PendingReplies pending = new PendingReplies(timer);
+		CompletableFuture<Msg> reply = pending.register(0x112233, ReplyMatcher.idRequestReply(), 10);
+		try {
+			reply.get();
+			fail("expected a timeout");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		awaitEmpty(pending);
+	}
+
+	@Test
+	public void testWaitStartsWhenTransmitted() throws Exception {
+		PendingReplies pending = new PendingReplies(timer);
+		Msg request = MsgFactory.makeStandardMessage(InsteonAddress.of(0x112233), (byte) 0x0f, (byte) 0x10,
+				(byte) 0x00);
+		CompletableFuture<Msg> reply = pending.register(request, 0x112233, ReplyMatcher.idRequestReply(), 10);
+		Thread.sleep(100);
+		// still in the queue, the lane's time to live has not passed
+		assertFalse(reply.isDone());
+		pending.transmitted(request);
+		try {
+			reply.get(5, TimeUnit.SECONDS);
+			fail("expected a timeout");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		awaitEmpty(pending);
+	}
+
+	/**
+	 * The request is removed by the thread that completes it, which may still be
+	 * at it when get() returns
+	 */
+	private static void awaitEmpty(PendingReplies pending) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pending.size() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(0, pending.size());
+	}
+}
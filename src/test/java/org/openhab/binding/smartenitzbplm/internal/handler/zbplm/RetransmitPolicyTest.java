@@ -0,0 +1,93 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.Pacer.MsgClass;
+import org.openhab.binding.smartenitzbplm.internal.message.Priority;
+
+public class RetransmitPolicyTest {
+	private static final long SECOND = 1000000000L;
+
+	@Test
+	public void testBackoff() {
+		BackoffPolicy policy = new BackoffPolicy(new Random(1));
+		long first = policy.nextDelay(MsgClass.DIRECT, 1, 0);
+		long second = policy.nextDelay(MsgClass.DIRECT, 2, 0);
+		long third = policy.nextDelay(MsgClass.DIRECT, 3, 0);
+		assertTrue(first >= 375 && first <= 625);
+		assertTrue(second >= 750 && second <= 1250);
+		assertTrue(third >= 1500 && third <= 2500);
+		assertEquals(RetransmitPolicy.GIVE_UP, policy.nextDelay(MsgClass.DIRECT, 4, 0));
+
+		policy.configure("direct=1/100/100, x10=0/0/0");
+		assertEquals(100, policy.nextDelay(MsgClass.DIRECT, 1, 0), 25);
+		assertEquals(RetransmitPolicy.GIVE_UP, policy.nextDelay(MsgClass.DIRECT, 2, 0));
+		assertEquals(RetransmitPolicy.GIVE_UP, policy.nextDelay(MsgClass.X10, 1, 0));
+		try {
+			policy.configure("direct=3/500");
+			fail("expected the spec to be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testBudget() {
+		BackoffPolicy policy = new BackoffPolicy(new Random(1));
+		policy.setBudget(2);
+		assertTrue(policy.nextDelay(MsgClass.MODEM, 1, 0) >= 0);
+		assertTrue(policy.nextDelay(MsgClass.MODEM, 1, SECOND) >= 0);
+		assertEquals(RetransmitPolicy.GIVE_UP, policy.nextDelay(MsgClass.MODEM, 1, 2 * SECOND));
+		// other classes have their own budget
+		assertTrue(policy.nextDelay(MsgClass.DIRECT, 1, 2 * SECOND) >= 0);
+		// the first retry has left the window
+		assertTrue(policy.nextDelay(MsgClass.MODEM, 1, 60 * SECOND) >= 0);
+	}
+
+	@Test
+	public void testCircuitBreaker() {
+		CircuitBreaker breaker = new CircuitBreaker();
+		for (int i = 0; i < 3; i++) {
+			assertTrue(breaker.allows(1, Priority.POLL, 0));
+			breaker.silent(1, 0);
+		}
+		assertTrue(breaker.isOpen(1));
+		assertEquals(1, breaker.getOpenCircuits());
+		assertFalse(breaker.allows(1, Priority.POLL, 1000));
+		assertTrue(breaker.allows(1, Priority.INTERACTIVE, 1000));
+		assertTrue(breaker.allows(2, Priority.POLL, 1000));
+
+		// one probe after the cool down, which goes unanswered
+		assertTrue(breaker.allows(1, Priority.POLL, 60000));
+		assertFalse(breaker.allows(1, Priority.POLL, 60000));
+		breaker.silent(1, 61000);
+		assertFalse(breaker.allows(1, Priority.POLL, 121000));
+		assertTrue(breaker.allows(1, Priority.POLL, 181000));
+		assertEquals(3, breaker.getDropped());
+
+		breaker.answered(1);
+		assertFalse(breaker.isOpen(1));
+		assertTrue(breaker.allows(1, Priority.POLL, 181000));
+	}
+
+	@Test
+	public void testLostProbe() {
+		CircuitBreaker breaker = new CircuitBreaker();
+		for (int i = 0; i < 3; i++) {
+			breaker.silent(1, 0);
+		}
+		// the modem gives up on the probe, another one goes out after the cool down
+		assertTrue(breaker.allows(1, Priority.POLL, 60000));
+		breaker.notSent(1, 70000);
+		assertFalse(breaker.allows(1, Priority.POLL, 100000));
+		assertTrue(breaker.allows(1, Priority.POLL, 130000));
+
+		// nobody reports on the probe, it is given up after a while
+		assertFalse(breaker.allows(1, Priority.POLL, 200000));
+		assertTrue(breaker.allows(1, Priority.POLL, 250000));
+		assertTrue(breaker.isOpen(1));
+	}
+}
@@ -0,0 +1,55 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.internal.message.MsgFactory;
+
+public class SimulatedIOStreamTest {
+
+	private SimulatedIOStream stream;
+
+	@Before
+	public void setUp() {
+		stream = new SimulatedIOStream("devices=3,latency=0,hops=0,seed=1", new MsgFactory(null));
+		assertTrue(stream.open());
+	}
+
+	@After
+	public void tearDown() {
+		stream.close();
+	}
+
+	@Test
+	public void testLinkDatabase() throws Exception {
+		stream.write(new byte[] { 0x02, 0x69 });
+		int records = 0;
+		while (true) {
+			Msg echo = stream.read();
+			if (echo.getByte("ACK/NACK") == 0x15) {
+				break;
+			}
+			Msg record = stream.read();
+			assertEquals("ALLLinkRecordResponse", record.getName());
+			records++;
+			stream.write(new byte[] { 0x02, 0x6a });
+		}
+		assertEquals(6, records);
+	}
+
+	@Test
+	public void testStatusRequest() throws Exception {
+		// turn device 20.00.02 on, then ask for its status
+		stream.write(new byte[] { 0x02, 0x62, 0x20, 0x00, 0x02, 0x0f, 0x11, (byte) 0x80 });
+		assertEquals(0x06, stream.read().getByte("ACK/NACK"));
+		assertEquals(0x11, stream.read().getByte("command1"));
+		stream.write(new byte[] { 0x02, 0x62, 0x20, 0x00, 0x02, 0x0f, 0x19, 0x00 });
+		assertEquals(0x06, stream.read().getByte("ACK/NACK"));
+		Msg status = stream.read();
+		assertEquals("StandardMessageReceived", status.getName());
+		assertEquals((byte) 0x80, status.getByte("command2"));
+	}
+}
@@ -0,0 +1,100 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import static org.junit.Assert.*;
+import static org.openhab.binding.smartenitzbplm.internal.handler.zbplm.TestMessages.standardFrom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddress;
+import org.openhab.binding.smartenitzbplm.internal.device.InsteonAddress;
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+import org.openhab.binding.smartenitzbplm.thing.listener.InsteonMsgListener;
+
+public class StripedDispatcherTest {
+
+	private static class Recorder implements InsteonMsgListener {
+		private final DeviceAddress address;
+		private final List<Msg> received = new ArrayList<Msg>();
+		private final CountDownLatch done;
+
+		Recorder(int address, CountDownLatch done) {
+			this.address = InsteonAddress.of(address);
+			this.done = done;
+		}
+
+		@Override
+		public DeviceAddress getAddress() {
+			return address;
+		}
+
+		@Override
+		public void onMessage(Msg msg) {
+			received.add(msg);
+			done.countDown();
+		}
+	}
+
+	private static Msg in(int from, int cmd2) {
+		return standardFrom(from, 0xcb, 0x11, cmd2);
+	}
+
+	@Test
+	public void testListenersGetTheirMessagesInOrder() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		StripedDispatcher dispatcher = new StripedDispatcher(pool, 4);
+		int listeners = 20;
+		int messages = 200;
+		CountDownLatch done = new CountDownLatch(listeners * messages);
+		List<Recorder> recorders = new ArrayList<Recorder>();
+		for (int i = 0; i < listeners; i++) {
+			recorders.add(new Recorder(0x200000 + i, done));
+		}
+		for (int m = 0; m < messages; m++) {
+			for (Recorder r : recorders) {
+				dispatcher.dispatch(r, in(r.getAddress().toInt(), m));
+			}
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (Recorder r : recorders) {
+			assertEquals(messages, r.received.size());
+			for (int m = 0; m < messages; m++) {
+				assertEquals((byte) m, r.received.get(m).getByteAt(10));
+			}
+		}
+		pool.shutdown();
+	}
+
+	@Test
+	public void testStripeRunsAgainAfterAnError() {
+		// runs the stripe right away, on the calling thread
+		StripedDispatcher dispatcher = new StripedDispatcher(Runnable::run, 1);
+		CountDownLatch done = new CountDownLatch(1);
+		Recorder recorder = new Recorder(0x200000, done);
+		InsteonMsgListener failing = new InsteonMsgListener() {
+			@Override
+			public DeviceAddress getAddress() {
+				return recorder.getAddress();
+			}
+
+			@Override
+			public void onMessage(Msg msg) {
+				throw new StackOverflowError();
+			}
+		};
+		try {
+			dispatcher.dispatch(failing, in(0x200000, 1));
+			fail("the error should reach the pool thread");
+		} catch (StackOverflowError e) {
+			// expected
+		}
+		dispatcher.dispatch(recorder, in(0x200000, 2));
+		assertEquals(0, done.getCount());
+		assertEquals((byte) 2, recorder.received.get(0).getByteAt(10));
+	}
+}
@@ -0,0 +1,31 @@
+package org.openhab.binding.smartenitzbplm.internal.handler.zbplm;
+
+import org.openhab.binding.smartenitzbplm.internal.message.Msg;
+
+/**
+ * Builds inbound messages for the tests
+ */
+final class TestMessages {
+
+	private TestMessages() {
+	}
+
+	/**
+	 * @param bytes the frame as received from the modem
+	 * @return the message
+	 */
+	static Msg in(int... bytes) {
+		byte[] data = new byte[bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			data[i] = (byte) bytes[i];
+		}
+		return Msg.createMessage(data, data.length, false);
+	}
+
+	/**
+	 * @return a standard message from a device to the modem at 00.00.01
+	 */
+	static Msg standardFrom(int from, int flags, int cmd1, int cmd2) {
+		return in(0x02, 0x50, from >> 16, from >> 8, from, 0x00, 0x00, 0x01, flags, cmd1, cmd2);
+	}
+}
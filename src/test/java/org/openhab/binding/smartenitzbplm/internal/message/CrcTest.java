@@ -0,0 +1,72 @@
+package org.openhab.binding.smartenitzbplm.internal.message;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddressFactory;
+
+public class CrcTest {
+
+	// the bit by bit implementation the tables replace
+	private static int crc2Reference(byte[] data, int offset) {
+		int crc = 0;
+		for (int loop = 0; loop < 14; loop++) {
+			int b = data[offset + loop] & 0xFF;
+			for (int bit = 0; bit < 8; bit++) {
+				int fb = b & 0x01;
+				if ((crc & 0x8000) == 0) {
+					fb = fb ^ 0x01;
+				}
+				if ((crc & 0x4000) == 0) {
+					fb = fb ^ 0x01;
+				}
+				if ((crc & 0x1000) == 0) {
+					fb = fb ^ 0x01;
+				}
+				if ((crc & 0x0008) == 0) {
+					fb = fb ^ 0x01;
+				}
+				crc = ((crc << 1) | fb) & 0xFFFF;
+				b = b >> 1;
+			}
+		}
+		return crc;
+	}
+
+	@Test
+	public void testCrc2MatchesReference() {
+		Random random = new Random(17);
+		byte[] data = new byte[20];
+		for (int i = 0; i < 1000; i++) {
+			random.nextBytes(data);
+			assertEquals(crc2Reference(data, 3), Crc.crc2(data, 3));
+		}
+	}
+
+	@Test
+	public void testCrc1() {
+		byte[] data = new byte[16];
+		data[0] = 0x2e;
+		data[1] = 0x00;
+		data[2] = 0x01;
+		assertEquals(0xd1, Crc.setCrc1(data, 0));
+		assertTrue(Crc.isValidCrc1(data, 0));
+		assertFalse(Crc.isValidCrc2(data, 0));
+		data[3] = 0x01;
+		assertFalse(Crc.isValidCrc1(data, 0));
+	}
+
+	@Test
+	public void testSetCrc2OnMessage() throws Exception {
+		Msg msg = MsgFactory.makeExtendedMessageCRC2(DeviceAddressFactory.fromString("11.22.33"), (byte) 0x1f,
+				(byte) 0x2e, (byte) 0x02);
+		byte[] data = msg.getData();
+		int crc = crc2Reference(data, 6);
+		assertEquals((byte) (crc >> 8), msg.getByte(Fields.USER_DATA13));
+		assertEquals((byte) crc, msg.getByte(Fields.USER_DATA14));
+		assertTrue(msg.hasValidCRC(true));
+		assertFalse(msg.hasValidCRC(false));
+	}
+}
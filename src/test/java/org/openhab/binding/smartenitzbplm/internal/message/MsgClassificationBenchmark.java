@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.smartenitzbplm.internal.message;
+
+import java.util.HashMap;
+
+/**
+ * Measures what it costs to classify a message the way the message dispatcher
+ * and handlers do, i.e. asking several of the isXXX() predicates in a row.
+ * "baseline" is the code Msg and MsgType had before the flags were cached,
+ * copied here: every predicate looks the messageFlags field up by name and
+ * maps the type bits through a HashMap keyed by boxed Integers. "cached" uses
+ * the predicates of Msg.
+ *
+ * Not a unit test, run it by hand:
+ *
+ * <pre>
+ * java -cp ... org.openhab.binding.smartenitzbplm.internal.message.MsgClassificationBenchmark
+ * </pre>
+ *
+ * @author jpowers
+ */
+public class MsgClassificationBenchmark {
+	private static final int MESSAGES = 1024;
+	private static final int ROUNDS = 2000;
+
+	private static int sink = 0;
+
+	// MsgType.s_hash and s_fromValue() as they were
+	private static final HashMap<Integer, MsgType> s_hash = new HashMap<Integer, MsgType>();
+
+	static {
+		int[] values = new int[] { 0x80, 0x00, 0x20, 0xa0, 0xc0, 0x40, 0x60, 0xe0, 0xff };
+		MsgType[] types = new MsgType[] { MsgType.BROADCAST, MsgType.DIRECT, MsgType.ACK_OF_DIRECT,
+				MsgType.NACK_OF_DIRECT, MsgType.ALL_LINK_BROADCAST, MsgType.ALL_LINK_CLEANUP,
+				MsgType.ALL_LINK_CLEANUP_ACK, MsgType.ALL_LINK_CLEANUP_NACK, MsgType.INVALID };
+		for (int i = 0; i < values.length; i++) {
+			s_hash.put(Integer.valueOf(values[i]), types[i]);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Msg[] msgs = new Msg[MESSAGES];
+		byte[] flags = new byte[] { 0x2b, (byte) 0xcf, 0x4b, 0x0f, (byte) 0x8b, 0x6f };
+		for (int i = 0; i < MESSAGES; i++) {
+			byte[] data = new byte[] { 0x02, 0x50, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, flags[i % flags.length], 0x11,
+					0x00 };
+			msgs[i] = Msg.createMessage(data, data.length, false);
+		}
+		for (int warmup = 0; warmup < 5; warmup++) {
+			run("baseline", msgs, true, false);
+			run("cached", msgs, false, false);
+		}
+		run("baseline", msgs, true, true);
+		run("cached", msgs, false, true);
+		System.out.println("(" + sink + ")");
+	}
+
+	private static void run(String name, Msg[] msgs, boolean baseline, boolean print) throws Exception {
+		long start = System.nanoTime();
+		for (int r = 0; r < ROUNDS; r++) {
+			for (Msg msg : msgs) {
+				sink += baseline ? classifyBaseline(msg) : classifyCached(msg);
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		if (print) {
+			System.out.printf("%s: %.1f ns/msg%n", name, (double) elapsed / ((long) ROUNDS * msgs.length));
+		}
+	}
+
+	private static int classifyCached(Msg msg) throws FieldException {
+		int c = 0;
+		if (msg.isBroadcast()) {
+			c |= 1;
+		}
+		if (msg.isCleanup()) {
+			c |= 2;
+		}
+		if (msg.isAllLink()) {
+			c |= 4;
+		}
+		if (msg.isAckOfDirect()) {
+			c |= 8;
+		}
+		if (msg.isAllLinkCleanupAckOrNack()) {
+			c |= 16;
+		}
+		return c + msg.getHopsLeft();
+	}
+
+	private static int classifyBaseline(Msg msg) throws FieldException {
+		int c = 0;
+		if (is(msg, MsgType.ALL_LINK_BROADCAST) || is(msg, MsgType.BROADCAST)) {
+			c |= 1;
+		}
+		if (is(msg, MsgType.ALL_LINK_CLEANUP)) {
+			c |= 2;
+		}
+		if (is(msg, MsgType.ALL_LINK_BROADCAST) || is(msg, MsgType.ALL_LINK_CLEANUP)) {
+			c |= 4;
+		}
+		if (is(msg, MsgType.ACK_OF_DIRECT)) {
+			c |= 8;
+		}
+		if (is(msg, MsgType.ALL_LINK_CLEANUP_ACK) || is(msg, MsgType.ALL_LINK_CLEANUP_NACK)) {
+			c |= 16;
+		}
+		return c + ((flags(msg) & 0x0c) >> 2);
+	}
+
+	// Msg.isOfType() as it was
+	private static boolean is(Msg msg, MsgType mt) throws FieldException {
+		return s_fromValue(flags(msg)) == mt;
+	}
+
+	// Msg.getByte("messageFlags") as it was
+	private static byte flags(Msg msg) throws FieldException {
+		return msg.getDefinition().getField("messageFlags").getByte(msg.getData());
+	}
+
+	private static MsgType s_fromValue(byte b) throws IllegalArgumentException {
+		Integer i = Integer.valueOf(b & 0xe0);
+		MsgType mt = s_hash.get(i);
+		if (mt == null) {
+			throw new IllegalArgumentException("msg type of byte value " + i + " not found");
+		}
+		return mt;
+	}
+}
@@ -0,0 +1,192 @@
+package org.openhab.binding.smartenitzbplm.internal.message;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddressFactory;
+import org.openhab.binding.smartenitzbplm.internal.handler.zbplm.InboundRing;
+
+public class MsgFactoryTest {
+
+	private static final byte[] STANDARD = new byte[] { 0x02, 0x50, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x2b, 0x19,
+			0x00 };
+
+	private InboundRing queue;
+	private MsgFactory factory;
+
+	@Before
+	public void setUp() {
+		queue = new InboundRing(1024);
+		factory = new MsgFactory(null);
+		factory.setInboundQueue(queue);
+		factory.start();
+	}
+
+	@Test
+	public void testSplitFrame() throws Exception {
+		factory.addData(STANDARD, 4);
+		assertTrue(queue.isEmpty());
+		byte[] rest = new byte[STANDARD.length - 4];
+		System.arraycopy(STANDARD, 4, rest, 0, rest.length);
+		factory.addData(rest, rest.length);
+		Msg msg = queue.poll();
+		assertNotNull(msg);
+		assertEquals("StandardMessageReceived", msg.getName());
+		assertArrayEquals(STANDARD, msg.getData());
+	}
+
+	@Test
+	public void testGarbageAndPureNack() throws Exception {
+		byte[] data = new byte[STANDARD.length + 3];
+		data[0] = 0x7f;
+		data[1] = 0x15;
+		data[2] = 0x33;
+		System.arraycopy(STANDARD, 0, data, 3, STANDARD.length);
+		factory.addData(data, data.length);
+		// the 0x15 is part of the garbage, not a nack
+		assertArrayEquals(STANDARD, queue.poll().getData());
+		assertNull(queue.poll());
+		assertEquals(3, factory.getDiscardedBytes());
+
+		// back in sync, a nack is a nack again
+		factory.addData(new byte[] { 0x15 }, 1);
+		assertTrue(queue.poll().isPureNack());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void testResyncRejectsFalseHeader() throws Exception {
+		// looks like a SendALLLinkCommandReply, but has a bad ACK/NACK byte
+		byte[] garbage = new byte[] { 0x7f, 0x02, 0x61, 0x01, 0x11, 0x00, 0x42 };
+		byte[] data = new byte[garbage.length + STANDARD.length];
+		System.arraycopy(garbage, 0, data, 0, garbage.length);
+		System.arraycopy(STANDARD, 0, data, garbage.length, STANDARD.length);
+		factory.addData(data, data.length);
+		assertArrayEquals(STANDARD, queue.poll().getData());
+		assertNull(queue.poll());
+		assertEquals(garbage.length, factory.getDiscardedBytes());
+		assertEquals(1, factory.getResyncEvents());
+		assertFalse(factory.isResyncing());
+	}
+
+	@Test
+	public void testStalePartialFrameIsDropped() throws Exception {
+		factory.setPartialFrameTimeout(1);
+		factory.addData(STANDARD, 5);
+		Thread.sleep(20);
+		factory.addData(STANDARD, STANDARD.length);
+		assertArrayEquals(STANDARD, queue.poll().getData());
+		assertNull(queue.poll());
+		assertEquals(5, factory.getDiscardedBytes());
+		assertEquals(1, factory.getResyncEvents());
+	}
+
+	@Test
+	public void testStalePartialFrameIsDroppedWithoutNewData() throws Exception {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		try {
+			factory.setScheduler(scheduler);
+			factory.setPartialFrameTimeout(1);
+			factory.addData(STANDARD, 5);
+			long deadline = System.currentTimeMillis() + 5000;
+			while (factory.getDiscardedBytes() < 5 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(5, factory.getDiscardedBytes());
+			factory.addData(STANDARD, STANDARD.length);
+			assertArrayEquals(STANDARD, queue.poll().getData());
+			assertNull(queue.poll());
+			assertEquals(1, factory.getResyncEvents());
+		} finally {
+			scheduler.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testWrapAround() throws Exception {
+		// push enough frames through to wrap the ring buffer several times
+		for (int i = 0; i < 1000; i++) {
+			factory.addData(STANDARD, STANDARD.length);
+			assertArrayEquals(STANDARD, queue.poll().getData());
+		}
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void testChunkLargerThanBuffer() throws Exception {
+		byte[] data = new byte[STANDARD.length * 500];
+		for (int i = 0; i < 500; i++) {
+			System.arraycopy(STANDARD, 0, data, i * STANDARD.length, STANDARD.length);
+		}
+		factory.addData(data, data.length);
+		assertEquals(500, queue.size());
+	}
+
+	@Test
+	public void testMessagesAreSlabViews() throws Exception {
+		factory.addData(STANDARD, STANDARD.length);
+		factory.addData(STANDARD, STANDARD.length);
+		Msg first = queue.poll();
+		Msg second = queue.poll();
+		assertTrue(second.isView());
+		assertEquals((byte) 0x19, second.getByte("command1"));
+		try {
+			second.setByte("command2", (byte) 0x7f);
+			fail("a view must be read-only");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		// detaching gives a writable copy, the views are untouched
+		Msg copy = second.detach();
+		assertNotSame(second, copy);
+		assertFalse(copy.isView());
+		assertSame(copy, copy.detach());
+		copy.setByte("command2", (byte) 0x7f);
+		assertTrue(second.isView());
+		assertEquals((byte) 0x00, second.getByte("command2"));
+		assertEquals((byte) 0x00, first.getByte("command2"));
+	}
+
+	@Test
+	public void testBadCrcIsDropped() throws Exception {
+		byte[] ext = new byte[25];
+		ext[0] = 0x02;
+		ext[1] = 0x51;
+		ext[8] = 0x1b; // direct, extended
+		ext[9] = 0x2e;
+		ext[12] = 0x55;
+		ext[2] = 0x11;
+		ext[3] = 0x22;
+		ext[4] = 0x33;
+		Crc.setCrc2(ext, 9);
+		factory.setCrcCheck(true);
+		// the sender's checksum is not known, nothing is checked
+		factory.addData(ext, ext.length);
+		assertNotNull(queue.poll());
+
+		factory.setCrc2(DeviceAddressFactory.fromString("11.22.33"), true);
+		factory.addData(ext, ext.length);
+		assertNotNull(queue.poll());
+
+		ext[12] = 0x56; // corrupted on the way
+		factory.addData(ext, ext.length);
+		factory.addData(STANDARD, STANDARD.length);
+		assertEquals("StandardMessageReceived", queue.poll().getName());
+		assertNull(queue.poll());
+		assertEquals(1, factory.getCrcErrors());
+
+		// an i2 device is only checked against the 1-byte checksum
+		ext[12] = 0x55;
+		factory.setCrc2(DeviceAddressFactory.fromString("11.22.33"), false);
+		factory.addData(ext, ext.length);
+		assertNull(queue.poll());
+		Crc.setCrc1(ext, 9);
+		factory.addData(ext, ext.length);
+		assertNotNull(queue.poll());
+		assertEquals(2, factory.getCrcErrors());
+	}
+}
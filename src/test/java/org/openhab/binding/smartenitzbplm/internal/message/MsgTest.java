@@ -0,0 +1,97 @@
+package org.openhab.binding.smartenitzbplm.internal.message;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class MsgTest {
+
+	private static final byte[] STANDARD = new byte[] { 0x02, 0x50, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x2b, 0x19,
+			0x00 };
+
+	private static Msg standard() {
+		return Msg.createMessage(STANDARD, STANDARD.length, false);
+	}
+
+	@Test
+	public void testSlotAccessMatchesNames() throws Exception {
+		Msg msg = standard();
+		assertEquals(msg.getByte("command1"), msg.getByte(Fields.COMMAND1));
+		assertEquals(msg.getByte("messageFlags"), msg.getByte(Fields.MESSAGE_FLAGS));
+		assertEquals(msg.getAddress("fromAddress"), msg.getAddress(Fields.FROM_ADDRESS));
+		assertEquals("11.22.33", msg.getAddress(Fields.FROM_ADDRESS).toString());
+	}
+
+	@Test
+	public void testSlotAccessChecksField() throws Exception {
+		Msg msg = standard();
+		try {
+			msg.getByte(Fields.USER_DATA1);
+			fail("standard message has no user data");
+		} catch (FieldException e) {
+			// expected
+		}
+		try {
+			msg.getByte(Fields.FROM_ADDRESS);
+			fail("address is not a byte");
+		} catch (FieldException e) {
+			// expected
+		}
+		assertNull(msg.getAddr(Fields.LINK_ADDR));
+	}
+
+	@Test
+	public void testCreateMessageCopiesTheBytes() throws Exception {
+		byte[] data = STANDARD.clone();
+		Msg msg = Msg.createMessage(data, data.length, false);
+		msg.setByte(Fields.COMMAND2, (byte) 0x7f);
+		assertEquals((byte) 0x00, data[10]);
+		data[9] = 0x11;
+		assertEquals((byte) 0x19, msg.getByte(Fields.COMMAND1));
+	}
+
+	@Test
+	public void testDetachCopiesView() throws Exception {
+		byte[] slab = new byte[STANDARD.length + 4];
+		System.arraycopy(STANDARD, 0, slab, 4, STANDARD.length);
+		Msg view = Msg.createMessage(slab, 4, STANDARD.length, false);
+		assertArrayEquals(STANDARD, view.getData());
+		Msg msg = view.detach();
+		msg.setByte(Fields.COMMAND2, (byte) 0x7f);
+		assertEquals((byte) 0x7f, msg.getByte(Fields.COMMAND2));
+		assertEquals((byte) 0x00, view.getByte(Fields.COMMAND2));
+		assertEquals((byte) 0x00, slab[14]);
+	}
+
+	@Test
+	public void testClassificationFollowsFlags() throws Exception {
+		Msg msg = standard();
+		// 0x2b: ACK of direct, standard, 2 hops left, 3 max hops
+		assertEquals(MsgType.ACK_OF_DIRECT, msg.getType());
+		assertTrue(msg.isAckOfDirect());
+		assertFalse(msg.isBroadcast());
+		assertFalse(msg.isExtended());
+		assertEquals(2, msg.getHopsLeft());
+		assertEquals(3, msg.getMaxHops());
+
+		msg.setByte(Fields.MESSAGE_FLAGS, (byte) 0xcf);
+		assertTrue(msg.isBroadcast());
+		assertTrue(msg.isAllLink());
+		assertFalse(msg.isAckOfDirect());
+		assertEquals(3, msg.getHopsLeft());
+	}
+
+	@Test
+	public void testClassificationWithoutFlags() throws Exception {
+		Msg msg = Msg.createMessage(new byte[] { 0x02, 0x58, 0x06 }, 3, false);
+		assertNull(msg.getType());
+		assertFalse(msg.isBroadcast());
+		assertFalse(msg.isExtended());
+		try {
+			msg.getHopsLeft();
+			fail("message has no flags");
+		} catch (FieldException e) {
+			// expected
+		}
+	}
+}
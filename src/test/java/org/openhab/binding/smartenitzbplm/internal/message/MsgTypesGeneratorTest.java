@@ -0,0 +1,68 @@
+package org.openhab.binding.smartenitzbplm.internal.message;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.openhab.binding.smartenitzbplm.internal.device.DeviceAddressFactory;
+import org.openhab.binding.smartenitzbplm.internal.message.types.ExtendedMessageReceived;
+import org.openhab.binding.smartenitzbplm.internal.message.types.SendStandardMessage;
+
+public class MsgTypesGeneratorTest {
+
+	@Test
+	public void testTemplatesMatchRuntimeDefinitions() throws Exception {
+		List<MsgTypesGenerator.Template> templates = MsgTypesGenerator
+				.readTemplates(new File("src/main/resources/msg_definitions.xml"));
+		assertEquals(Msg.getTemplates().size(), templates.size());
+		for (MsgTypesGenerator.Template t : templates) {
+			Msg m = Msg.makeMessage(t.name);
+			assertEquals(t.name, m.getLength(), t.length);
+			assertEquals(t.name, m.getHeaderLength(), t.headerLength);
+			assertEquals(t.name, m.getCommandNumber(), t.command);
+			assertEquals(t.name, m.getDirection() == Msg.Direction.TO_MODEM, t.toModem);
+			Map<String, Field> fields = m.getDefinition().getFields();
+			assertEquals(t.name, fields.size(), t.fields.size());
+			for (MsgTypesGenerator.FieldDef f : t.fields) {
+				Field field = fields.get(f.name);
+				assertNotNull(t.name + "." + f.name, field);
+				assertEquals(t.name + "." + f.name, field.getOffset(), f.offset);
+				assertEquals(t.name + "." + f.name, field.getType() == DataType.ADDRESS, f.address);
+			}
+		}
+		assertEquals(templates.size(), MsgTypesGenerator.generateAll(templates).size());
+	}
+
+	@Test
+	public void testIdentifiers() {
+		assertEquals("imAddress", MsgTypesGenerator.identifier("IMAddress"));
+		assertEquals("allLinkGroup", MsgTypesGenerator.identifier("ALLLinkGroup"));
+		assertEquals("ackNack", MsgTypesGenerator.identifier("ACK/NACK"));
+		assertEquals("x10Flag", MsgTypesGenerator.identifier("X10Flag"));
+		assertEquals("X10_FLAG", MsgTypesGenerator.constant("x10Flag"));
+		assertEquals("USER_DATA1", MsgTypesGenerator.constant("userData1"));
+	}
+
+	@Test
+	public void testTypedAccessMatchesFields() throws Exception {
+		SendStandardMessage s = SendStandardMessage.create().toAddress(DeviceAddressFactory.fromString("11.22.33"))
+				.messageFlags((byte) 0x0f).command1((byte) 0x11).command2((byte) 0xff);
+		Msg msg = s.msg();
+		assertEquals("11.22.33", msg.getAddress(Fields.TO_ADDRESS).toString());
+		assertEquals((byte) 0x11, msg.getByte(Fields.COMMAND1));
+		assertEquals((byte) 0xff, msg.getByte(Fields.COMMAND2));
+
+		byte[] data = new byte[ExtendedMessageReceived.LENGTH];
+		data[0] = 0x02;
+		data[1] = ExtendedMessageReceived.CMD;
+		data[8] = 0x10;
+		data[24] = 0x42;
+		Msg in = Msg.createMessage(data, data.length, true);
+		assertTrue(ExtendedMessageReceived.matches(in));
+		assertFalse(SendStandardMessage.matches(in));
+		assertEquals(in.getByte("userData14"), ExtendedMessageReceived.of(in).userData(14));
+	}
+}